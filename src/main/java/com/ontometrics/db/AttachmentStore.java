@@ -0,0 +1,219 @@
+package com.ontometrics.db;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ids of YouTrack attachments (image files) linked from Slack messages, see
+ * {@link com.ontometrics.integrations.youtrack.YouTrackImageServlet}. Entries expire after the time to live and
+ * the number of entries is limited, the oldest entries are removed first.
+ * <p>
+ * Id of the attachment is random (ids are served by public servlet, so they must not be derivable from file ids)
+ * and minted once per file: the reverse index keeps ids by file id, so every file is stored once however many
+ * times it is linked. Linking the file again renews its entry, file gets a new id once its entry is removed.
+ * </p>
+ * <p>
+ * Creation order is kept in memory, creation times are stored in a separate map. Entries stored before creation
+ * times were kept are considered to be created when they are loaded, entries stored before the reverse index was
+ * kept are not reused.
+ * </p>
+ * AttachmentStore.java
+ */
+public class AttachmentStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(AttachmentStore.class);
+
+    private final Map<String, String> store;
+    private final Map<String, String> ids;
+    private final Map<String, Long> createdTimes;
+    private final GroupCommitter committer;
+    private final long ttl;
+    private final int maxEntries;
+
+    /**
+     * Creation time of the entries by id in creation order
+     */
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>();
+
+    private final AtomicLong expired = new AtomicLong();
+    private final AtomicLong evicted = new AtomicLong();
+
+    /**
+     * @param store        persistent map which keeps file ids by attachment id
+     * @param ids          persistent map which keeps attachment ids by file id
+     * @param createdTimes persistent map which keeps creation times of the entries
+     * @param committer    commits removal of expired entries
+     * @param ttl          time (in milliseconds) after which entry expires, 0 keeps entries until they are evicted
+     * @param maxEntries   maximum number of entries, 0 means unlimited
+     */
+    public AttachmentStore(Map<String, String> store, Map<String, String> ids, Map<String, Long> createdTimes,
+                           GroupCommitter committer, long ttl, int maxEntries) {
+        this.store = store;
+        this.ids = ids;
+        this.createdTimes = createdTimes;
+        this.committer = committer;
+        this.ttl = ttl;
+        this.maxEntries = maxEntries;
+        load();
+    }
+
+    private synchronized void load() {
+        long now = System.currentTimeMillis();
+        List<Map.Entry<String, Long>> loaded = new ArrayList<>(store.size());
+        boolean changed = false;
+        for (String id : store.keySet()) {
+            Long createdTime = createdTimes.get(id);
+            if (createdTime == null) {
+                createdTime = now;
+                createdTimes.put(id, createdTime);
+                changed = true;
+            }
+            loaded.add(new AbstractMap.SimpleImmutableEntry<>(id, createdTime));
+        }
+        Collections.sort(loaded, new Comparator<Map.Entry<String, Long>>() {
+            @Override
+            public int compare(Map.Entry<String, Long> e1, Map.Entry<String, Long> e2) {
+                return e1.getValue().compareTo(e2.getValue());
+            }
+        });
+        for (Map.Entry<String, Long> entry : loaded) {
+            entries.put(entry.getKey(), entry.getValue());
+        }
+        //times and ids of entries which are not in the store any more
+        changed |= createdTimes.keySet().retainAll(entries.keySet());
+        changed |= ids.values().retainAll(entries.keySet());
+        int removed = removeExpired(now) + evict();
+        logger.info("Attachment store contains {} entries, {} expired or evicted entries removed", entries.size(),
+                removed);
+        if (changed || removed > 0) {
+            committer.awaitCommit();
+        }
+    }
+
+    /**
+     * Stores the attachment unless it is stored already and renews its entry, changes are committed with the next
+     * commit of the committer
+     *
+     * @param fileId YouTrack file id of the attachment
+     * @return id of the attachment
+     */
+    public synchronized String add(String fileId) {
+        long now = System.currentTimeMillis();
+        String id = ids.get(fileId);
+        if (id == null || !entries.containsKey(id)) {
+            id = UUID.randomUUID().toString();
+            store.put(id, fileId);
+            ids.put(fileId, id);
+        }
+        createdTimes.put(id, now);
+        entries.remove(id);
+        entries.put(id, now);
+        evict();
+        return id;
+    }
+
+    /**
+     * @return YouTrack file id of the attachment or null if there is no such attachment or it has expired
+     */
+    public String get(String id) {
+        synchronized (this) {
+            Long createdTime = entries.get(id);
+            if (createdTime == null || isExpired(createdTime, System.currentTimeMillis())) {
+                return null;
+            }
+        }
+        return store.get(id);
+    }
+
+    /**
+     * Removes expired entries
+     *
+     * @return number of removed entries
+     */
+    public int expire() {
+        int removed;
+        synchronized (this) {
+            removed = removeExpired(System.currentTimeMillis());
+        }
+        if (removed > 0) {
+            logger.debug("Removed {} expired attachments", removed);
+            committer.changed();
+        }
+        return removed;
+    }
+
+    private int removeExpired(long now) {
+        int removed = 0;
+        Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Long> entry = iterator.next();
+            if (!isExpired(entry.getValue(), now)) {
+                break;
+            }
+            iterator.remove();
+            remove(entry.getKey());
+            removed++;
+        }
+        expired.addAndGet(removed);
+        return removed;
+    }
+
+    private int evict() {
+        int removed = 0;
+        Iterator<String> iterator = entries.keySet().iterator();
+        while (maxEntries > 0 && entries.size() > maxEntries) {
+            String id = iterator.next();
+            iterator.remove();
+            remove(id);
+            removed++;
+        }
+        evicted.addAndGet(removed);
+        return removed;
+    }
+
+    private void remove(String id) {
+        String fileId = store.remove(id);
+        createdTimes.remove(id);
+        if (fileId != null && id.equals(ids.get(fileId))) {
+            ids.remove(fileId);
+        }
+    }
+
+    private boolean isExpired(long createdTime, long now) {
+        return ttl > 0 && now - createdTime >= ttl;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return number of entries removed because they have expired
+     */
+    public long getExpired() {
+        return expired.get();
+    }
+
+    /**
+     * @return number of entries removed because of the entry limit
+     */
+    public long getEvicted() {
+        return evicted.get();
+    }
+
+    @Override
+    public String toString() {
+        return "entries: " + size() + ", expired: " + getExpired() + ", evicted: " + getEvicted();
+    }
+}
@@ -0,0 +1,227 @@
+package com.ontometrics.db;
+
+import org.mapdb.DB;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Commits changes of the {@link org.mapdb.DB} in groups: writers report their changes with {@link #changed()}
+ * or {@link #awaitCommit()} and a single background thread commits all changes reported so far, so
+ * concurrent (or rapid) writes share one commit instead of syncing the store after every write.
+ * <p>
+ * The thread waits up to commit delay after the first change to let more changes join the commit, or until the
+ * batch of changes is full.
+ * </p>
+ * <p>
+ * Changes reported before {@link #close()} are committed by it, reporting a change after that throws
+ * {@link IllegalStateException} instead of waiting for a commit which will never be done.
+ * </p>
+ * GroupCommitter.java
+ */
+public class GroupCommitter {
+
+    private static final Logger logger = LoggerFactory.getLogger(GroupCommitter.class);
+
+    private final DB db;
+    private final long commitDelay;
+    private final int maxBatch;
+    private final Thread committer;
+
+    private final Object lock = new Object();
+    /**
+     * Number of reported changes
+     */
+    private long changes;
+    /**
+     * Number of changes covered by finished commits
+     */
+    private long committedChanges;
+    /**
+     * Number of changes covered by the last failed commit
+     */
+    private long failedChanges;
+    private Exception failure;
+    private volatile boolean closed;
+    /**
+     * Set once the committer thread exits
+     */
+    private boolean finished;
+
+    private final AtomicLong commits = new AtomicLong();
+
+    /**
+     * @param db          database to commit
+     * @param commitDelay maximum time (in milliseconds) the change waits for other changes to be committed together
+     * @param name        name of the committer thread
+     */
+    public GroupCommitter(DB db, long commitDelay, String name) {
+        this(db, commitDelay, 0, name);
+    }
+
+    /**
+     * @param db          database to commit
+     * @param commitDelay maximum time (in milliseconds) the change waits for other changes to be committed together
+     * @param maxBatch    number of changes which are committed without waiting for the rest of commit delay,
+     *                    0 means unlimited
+     * @param name        name of the committer thread
+     */
+    public GroupCommitter(DB db, long commitDelay, int maxBatch, String name) {
+        this.db = db;
+        this.commitDelay = commitDelay;
+        this.maxBatch = maxBatch;
+        committer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    commitChanges();
+                } finally {
+                    synchronized (lock) {
+                        finished = true;
+                        lock.notifyAll();
+                    }
+                }
+            }
+        }, name);
+        committer.setDaemon(true);
+        committer.start();
+    }
+
+    /**
+     * Reports a change which should be committed soon, does not wait for the commit
+     *
+     * @throws IllegalStateException if the committer is closed
+     */
+    public void changed() {
+        synchronized (lock) {
+            checkOpen();
+            changes++;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Reports a change and waits until it is committed together with all the changes reported before
+     *
+     * @throws RuntimeException      if the commit fails
+     * @throws IllegalStateException if the committer is closed or its thread stops before the change is committed
+     */
+    public void awaitCommit() {
+        synchronized (lock) {
+            checkOpen();
+            long change = ++changes;
+            lock.notifyAll();
+            while (committedChanges < change) {
+                if (finished) {
+                    throw new IllegalStateException("Committer " + committer.getName()
+                            + " stopped before changes were committed");
+                }
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("Interrupted while waiting for commit", e);
+                }
+            }
+            if (failure != null && failedChanges >= change) {
+                throw new RuntimeException("Failed to commit changes", failure);
+            }
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Committer " + committer.getName() + " is closed");
+        }
+    }
+
+    /**
+     * @return number of commits done
+     */
+    public long getCommits() {
+        return commits.get();
+    }
+
+    /**
+     * Commits pending changes and stops the committer
+     */
+    public void close() {
+        synchronized (lock) {
+            closed = true;
+            lock.notifyAll();
+        }
+        try {
+            committer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void commitChanges() {
+        while (true) {
+            synchronized (lock) {
+                while (changes == committedChanges && !closed) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        //closing
+                        closed = true;
+                    }
+                }
+                if (changes == committedChanges) {
+                    return;
+                }
+            }
+            if (!closed && commitDelay > 0) {
+                awaitBatch();
+            }
+            commit();
+        }
+    }
+
+    /**
+     * Waits until commit delay passes, the batch is full or the committer is closed
+     */
+    private void awaitBatch() {
+        long deadline = System.currentTimeMillis() + commitDelay;
+        synchronized (lock) {
+            while (!closed && (maxBatch <= 0 || changes - committedChanges < maxBatch)) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return;
+                }
+                try {
+                    lock.wait(remaining);
+                } catch (InterruptedException e) {
+                    closed = true;
+                }
+            }
+        }
+    }
+
+    private void commit() {
+        long target;
+        long committed;
+        synchronized (lock) {
+            target = changes;
+            committed = committedChanges;
+        }
+        Exception commitFailure = null;
+        try {
+            db.commit();
+            commits.incrementAndGet();
+        } catch (Exception ex) {
+            logger.error("Failed to commit " + (target - committed) + " changes", ex);
+            commitFailure = ex;
+        }
+        synchronized (lock) {
+            if (commitFailure != null) {
+                failure = commitFailure;
+                failedChanges = target;
+            }
+            committedChanges = target;
+            lock.notifyAll();
+        }
+    }
+}
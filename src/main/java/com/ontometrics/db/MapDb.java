@@ -1,22 +1,95 @@
 package com.ontometrics.db;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.ontometrics.integrations.configuration.ConfigurationFactory;
+import org.apache.commons.configuration.Configuration;
 import org.mapdb.DB;
-import org.mapdb.DBMaker;
+import org.mapdb.Serializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Instance of mapDB
+ * <p>
+ * Store is opened in the {@link com.ontometrics.db.StorageMode} set by "PROP.DB_STORAGE_MODE", WAL by default so
+ * commits of checkpoints and outbox survive a crash. Changes are committed in groups by {@link GroupCommitter}.
+ * The store is closed by {@link #close()} on shutdown of the application, or by JVM shutdown hook if the
+ * application is not shut down properly.
+ * </p>
+ * <p>
+ * Expired attachments are removed every minute, the store file is compacted in the background at the compaction
+ * interval if something was removed since the last compaction. Compaction is not scheduled in WAL modes, MapDB
+ * does not compact stores with write-ahead log (see {@link StorageMode#isCompactable()}).
+ * </p>
  */
 public class MapDb {
-    private static final MapDb instance = new MapDb();
+    private static final Logger logger = LoggerFactory.getLogger(MapDb.class);
+
     private static final String DB_NAME = "app_db";
     private static final String ATTACHMENT_MAP = "attachments";
+    private static final String ATTACHMENT_TIME_MAP = "attachment_times";
+    private static final String ATTACHMENT_ID_MAP = "attachment_ids";
+    private static final String HTTP_CACHE_MAP = "http_cache";
+    private static final String SLACK_OUTBOX_MAP = "slack_outbox";
+    private static final String CHECKPOINT_MAP = "checkpoints";
+    private static final String SEEN_SESSION_MAP = "seen_sessions";
+    private static final long EXPIRATION_INTERVAL = TimeUnit.MINUTES.toMillis(1);
+    /**
+     * How the store file is accessed, see {@link com.ontometrics.db.StorageMode}
+     */
+    public static final String PROP_DB_STORAGE_MODE = "PROP.DB_STORAGE_MODE";
+    /**
+     * Maximum time (in milliseconds) changes wait to be committed together with other changes
+     */
+    public static final String PROP_DB_COMMIT_DELAY = "PROP.DB_COMMIT_DELAY";
+    /**
+     * Number of changes which are committed without waiting for the commit delay, 0 means unlimited
+     */
+    public static final String PROP_DB_COMMIT_BATCH = "PROP.DB_COMMIT_BATCH";
+    /**
+     * Time (in days) after which attachment ids expire and images of older messages are not shown any more,
+     * 0 keeps them until they are evicted
+     */
+    public static final String PROP_ATTACHMENT_TTL = "PROP.ATTACHMENT_TTL";
+    /**
+     * Maximum number of stored attachment ids, the oldest ones are evicted first, 0 means unlimited
+     */
+    public static final String PROP_ATTACHMENT_MAX_ENTRIES = "PROP.ATTACHMENT_MAX_ENTRIES";
+    /**
+     * Interval (in hours) of compacting the store file, 0 disables compaction
+     */
+    public static final String PROP_DB_COMPACTION_INTERVAL = "PROP.DB_COMPACTION_INTERVAL";
+
+    //created after the constants it uses are initialized
+    private static final MapDb instance = new MapDb();
 
+    private final File file;
+    private final StorageMode storageMode;
+    private final Thread shutdownHook;
+    private final Object closeLock = new Object();
+    private boolean closed;
     private DB db;
-    private Map<String, String> attachmentMap;
+    private GroupCommitter groupCommitter;
+    private AttachmentStore attachmentStore;
+    private Map<String, byte[]> httpCacheMap;
+    private ConcurrentNavigableMap<Long, byte[]> slackOutboxMap;
+    private Map<String, Long> checkpointMap;
+    private Map<Long, Long> seenSessionMap;
+    private final ScheduledExecutorService maintenanceExecutor;
+    private final long compactionInterval;
+    private volatile long lastCompactionTime;
+    private volatile long compactionDueTime;
+    /**
+     * Number of attachments removed before the last compaction
+     */
+    private volatile long removedBeforeCompaction;
 
     public static MapDb instance() {
         return instance;
@@ -24,20 +97,189 @@ public class MapDb {
 
     @SuppressWarnings("unchecked")
     private MapDb() {
-        String dataDir = ConfigurationFactory.get().getString("PROP.APP_DATA_DIR");
-        db = DBMaker.fileDB(new File(dataDir, DB_NAME)).make();
-        attachmentMap = (Map<String, String>)db.hashMap(ATTACHMENT_MAP).createOrOpen();
+        Configuration configuration = ConfigurationFactory.get();
+        file = new File(configuration.getString("PROP.APP_DATA_DIR"), DB_NAME);
+        storageMode = StorageMode.parse(configuration.getString(PROP_DB_STORAGE_MODE, "wal"));
+        logger.info("Opening database {} in {} mode", file.getAbsolutePath(), storageMode);
+        if (storageMode == StorageMode.FILE) {
+            logger.warn("Database is not transactional in {} mode: checkpoints and Slack outbox may be lost "
+                    + "or corrupted if the application is killed without shutdown", storageMode);
+        }
+        db = storageMode.open(file);
+        httpCacheMap = db.hashMap(HTTP_CACHE_MAP, Serializer.STRING, Serializer.BYTE_ARRAY).createOrOpen();
+        slackOutboxMap = db.treeMap(SLACK_OUTBOX_MAP, Serializer.LONG, Serializer.BYTE_ARRAY).createOrOpen();
+        checkpointMap = db.hashMap(CHECKPOINT_MAP, Serializer.STRING, Serializer.LONG).createOrOpen();
+        seenSessionMap = db.hashMap(SEEN_SESSION_MAP, Serializer.LONG, Serializer.LONG).counterEnable().createOrOpen();
+        groupCommitter = new GroupCommitter(db, configuration.getLong(PROP_DB_COMMIT_DELAY, 20),
+                configuration.getInt(PROP_DB_COMMIT_BATCH, 100), "db-committer");
+        attachmentStore = new AttachmentStore((Map<String, String>) db.hashMap(ATTACHMENT_MAP).createOrOpen(),
+                db.hashMap(ATTACHMENT_ID_MAP, Serializer.STRING, Serializer.STRING).createOrOpen(),
+                db.hashMap(ATTACHMENT_TIME_MAP, Serializer.STRING, Serializer.LONG).createOrOpen(), groupCommitter,
+                TimeUnit.DAYS.toMillis(configuration.getInt(PROP_ATTACHMENT_TTL, 365)),
+                configuration.getInt(PROP_ATTACHMENT_MAX_ENTRIES, 100000));
+        long compactionInterval = TimeUnit.HOURS.toMillis(configuration.getInt(PROP_DB_COMPACTION_INTERVAL, 24));
+        if (compactionInterval > 0 && !storageMode.isCompactable()) {
+            logger.info("Database file is not compacted in {} mode, space of removed entries is reused", storageMode);
+            compactionInterval = 0;
+        }
+        this.compactionInterval = compactionInterval;
+        compactionDueTime = System.currentTimeMillis() + compactionInterval;
+
+        maintenanceExecutor = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("db-maintenance").setDaemon(true).build());
+        maintenanceExecutor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                maintain();
+            }
+        }, EXPIRATION_INTERVAL, EXPIRATION_INTERVAL, TimeUnit.MILLISECONDS);
+
+        shutdownHook = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                close();
+            }
+        }, "db-shutdown");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    /**
+     * Removes expired attachments and compacts the store when it's time to
+     */
+    private void maintain() {
+        try {
+            attachmentStore.expire();
+            if (compactionInterval > 0 && System.currentTimeMillis() >= compactionDueTime
+                    && getRemovedAttachments() > removedBeforeCompaction) {
+                compact();
+            }
+        } catch (Exception ex) {
+            logger.error("Failed to maintain the database", ex);
+        }
+    }
+
+    /**
+     * Commits pending changes and reclaims space of removed entries in the store file, does nothing if the store is
+     * not compactable in its storage mode
+     */
+    public synchronized void compact() {
+        if (!storageMode.isCompactable()) {
+            return;
+        }
+        long fileSize = getFileSize();
+        long startTime = System.currentTimeMillis();
+        long removedAttachments = getRemovedAttachments();
+        groupCommitter.awaitCommit();
+        db.getStore().compact();
+        lastCompactionTime = System.currentTimeMillis();
+        compactionDueTime = lastCompactionTime + compactionInterval;
+        removedBeforeCompaction = removedAttachments;
+        logger.info("Compacted database in {} ms, file size {} -> {} bytes, attachments: {}",
+                lastCompactionTime - startTime, fileSize, getFileSize(), attachmentStore);
+    }
+
+    private long getRemovedAttachments() {
+        return attachmentStore.getExpired() + attachmentStore.getEvicted();
     }
 
     public DB getDb() {
         return db;
     }
 
-    public Map<String, String> getAttachmentMap() {
-        return attachmentMap;
+    /**
+     * @return committer which should be notified about changes instead of committing the db directly
+     */
+    public GroupCommitter getGroupCommitter() {
+        return groupCommitter;
+    }
+
+    /**
+     * @return YouTrack file ids by ids of attachments linked from Slack messages
+     */
+    public AttachmentStore getAttachmentStore() {
+        return attachmentStore;
+    }
+
+    /**
+     * @return cached http responses by url, see {@link com.ontometrics.integrations.sources.HttpResponseCache}
+     */
+    public Map<String, byte[]> getHttpCacheMap() {
+        return httpCacheMap;
+    }
+
+    /**
+     * @return formatted Slack messages by id, see {@link com.ontometrics.integrations.configuration.SlackOutbox}
+     */
+    public ConcurrentNavigableMap<Long, byte[]> getSlackOutboxMap() {
+        return slackOutboxMap;
+    }
+
+    /**
+     * @param destination name of the additional destination messages are mirrored to
+     * @return formatted messages of the destination by id, see
+     * {@link com.ontometrics.integrations.configuration.SlackOutbox}
+     */
+    public ConcurrentNavigableMap<Long, byte[]> getSlackOutboxMap(String destination) {
+        return db.treeMap(SLACK_OUTBOX_MAP + "_" + destination, Serializer.LONG, Serializer.BYTE_ARRAY).createOrOpen();
+    }
+
+    /**
+     * @return last processed event date (in milliseconds) by project, see
+     * {@link com.ontometrics.integrations.configuration.EventProcessorConfiguration}
+     */
+    public Map<String, Long> getCheckpointMap() {
+        return checkpointMap;
+    }
+
+    /**
+     * @return update time of posted edit sessions by session hash, see
+     * {@link com.ontometrics.integrations.sources.SeenSessionIndex}
+     */
+    public Map<Long, Long> getSeenSessionMap() {
+        return seenSessionMap;
+    }
+
+    /**
+     * @return size (in bytes) of the store file
+     */
+    public long getFileSize() {
+        return file.length();
+    }
+
+    /**
+     * @return time of the last compaction of the store file, 0 if it has not been compacted since start
+     */
+    public long getLastCompactionTime() {
+        return lastCompactionTime;
+    }
+
+    public StorageMode getStorageMode() {
+        return storageMode;
     }
 
+    /**
+     * Stops maintenance, commits pending changes and closes the store, does nothing if it's closed already
+     */
     public void close() {
-        db.close();
+        synchronized (closeLock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            } catch (IllegalStateException ex) {
+                //JVM is shutting down, the hook is running
+            }
+            maintenanceExecutor.shutdownNow();
+            try {
+                maintenanceExecutor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            logger.info("Closing database, file size: {} bytes, attachments: {}", getFileSize(), attachmentStore);
+            groupCommitter.close();
+            db.close();
+        }
     }
 }
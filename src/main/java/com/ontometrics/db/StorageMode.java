@@ -0,0 +1,69 @@
+package com.ontometrics.db;
+
+import org.mapdb.DB;
+import org.mapdb.DBMaker;
+
+import java.io.File;
+
+/**
+ * How the store file of {@link com.ontometrics.db.MapDb} is accessed, set by "PROP.DB_STORAGE_MODE"
+ * StorageMode.java
+ */
+public enum StorageMode {
+    /**
+     * Store file is written in place, it may be corrupted if the process stops without closing the store
+     */
+    FILE,
+    /**
+     * Changes are written to write-ahead log on commit and replayed after crash, so the store keeps the last commit
+     */
+    WAL,
+    /**
+     * Store file is memory-mapped (unless JVM does not support unmapping it), changes are written to write-ahead
+     * log as in WAL mode
+     */
+    MMAP_WAL;
+
+    /**
+     * @param value name of the mode in any case with "-" instead of "_", e.g. "mmap-wal"
+     */
+    public static StorageMode parse(String value) {
+        return valueOf(value.trim().replace('-', '_').toUpperCase());
+    }
+
+    /**
+     * @return database stored in the file which is accessed in this mode
+     */
+    public DB open(File file) {
+        DBMaker.Maker maker = DBMaker.fileDB(file);
+        switch (this) {
+            case MMAP_WAL:
+                maker.fileMmapEnableIfSupported().transactionEnable();
+                if (isCleanerHackSupported()) {
+                    //unmaps files on close instead of waiting for GC
+                    maker.cleanerHackEnable();
+                }
+                break;
+            case WAL:
+                maker.transactionEnable();
+                break;
+            default:
+        }
+        return maker.make();
+    }
+
+    /**
+     * @return true if space of removed entries is reclaimed by compaction of the store, MapDB does not compact stores
+     * with write-ahead log (space of removed entries is only reused by new ones)
+     */
+    public boolean isCompactable() {
+        return this == FILE;
+    }
+
+    /**
+     * @return true if JVM lets MapDB unmap buffers (Java 8 and older), later versions do not export the cleaner
+     */
+    private static boolean isCleanerHackSupported() {
+        return System.getProperty("java.specification.version", "").startsWith("1.");
+    }
+}
@@ -34,6 +34,11 @@ public interface ChatServer {
      */
     void post(IssueEditSession issueEditSession);
 
+    /**
+     * Waits until messages posted so far will not be lost: they are either delivered or stored to be delivered later
+     */
+    void flush();
+
     /**
      * Provides a list of the Users that are members of our chat server team.
      *
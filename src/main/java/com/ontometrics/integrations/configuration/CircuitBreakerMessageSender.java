@@ -0,0 +1,465 @@
+package com.ontometrics.integrations.configuration;
+
+import com.ontometrics.util.BadResponseException;
+import com.ontometrics.util.TokenBucket;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link com.ontometrics.integrations.configuration.MessageSender} which stops posting messages to the chat server
+ * which keeps failing, so senders do not wait for connection and read timeouts while the server is down.
+ * <p>
+ * Breaker opens after the number of consecutive failed posts, post which takes longer than the slow post
+ * threshold counts as failed. While the breaker is open messages are appended to the
+ * {@link com.ontometrics.integrations.configuration.SpillFile} and reported as sent. After the cooldown
+ * the first spilled message is posted as a probe: breaker stays open if it fails, otherwise spilled messages
+ * are drained at the drain rate. Messages sent while spilled messages are drained are spilled as well, so
+ * messages are posted in order they were sent, breaker is closed once the spill file is drained.
+ * </p>
+ * <p>
+ * Messages the queue has no room for may be spilled by {@link #overflowSender()} as well. The closed breaker drains
+ * them at the drain rate and keeps posting other messages right away, so they may overtake the spilled ones.
+ * </p>
+ * <p>
+ * Messages rejected because of rate limit
+ * ({@link com.ontometrics.integrations.configuration.SlackRateLimitException}) do not count as failed, neither do
+ * messages Slack rejects for good (any other 4xx response, e.g. invalid payload or unknown channel): Slack is up,
+ * posting them again does not help. Such spilled messages are logged and skipped, so they do not hold up the
+ * messages spilled after them.
+ * Delivery is at-least-once: spilled messages which were drained before a restart are posted again after it.
+ * </p>
+ * CircuitBreakerMessageSender.java
+ */
+public class CircuitBreakerMessageSender implements MessageSender {
+
+    private static final Logger log = LoggerFactory.getLogger(CircuitBreakerMessageSender.class);
+
+    /**
+     * Number of consecutive failed posts to Slack which opens the circuit breaker, 0 disables the breaker
+     */
+    public static final String PROP_SLACK_BREAKER_FAILURES = "PROP.SLACK_BREAKER_FAILURES";
+    /**
+     * Time (in seconds) of posting a message to Slack after which the post counts as failed
+     */
+    public static final String PROP_SLACK_BREAKER_SLOW_POST = "PROP.SLACK_BREAKER_SLOW_POST";
+    /**
+     * Time (in seconds) the breaker stays open before it is probed
+     */
+    public static final String PROP_SLACK_BREAKER_COOLDOWN = "PROP.SLACK_BREAKER_COOLDOWN";
+    /**
+     * Maximum number of spilled messages per second posted to Slack once the breaker is closed
+     */
+    public static final String PROP_SLACK_BREAKER_DRAIN_RATE = "PROP.SLACK_BREAKER_DRAIN_RATE";
+
+    public enum State {
+        /**
+         * Messages are posted right away
+         */
+        CLOSED,
+        /**
+         * Messages are spilled, spill file is probed after the cooldown
+         */
+        OPEN,
+        /**
+         * Messages are spilled, spill file is drained at the drain rate
+         */
+        DRAINING
+    }
+
+    private final MessageSender messageSender;
+    private final SpillFile spillFile;
+    private final int failureThreshold;
+    private final long slowPostThreshold;
+    private final long cooldown;
+    private final double drainRate;
+    private final Thread drainer;
+
+    private final Object lock = new Object();
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    /**
+     * Position of the first spilled message which has not been posted yet
+     */
+    private long drainPosition;
+    private int backlog;
+    private volatile boolean closed;
+
+    private final AtomicLong opened = new AtomicLong();
+    private final AtomicLong spilled = new AtomicLong();
+    private final AtomicLong drained = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    public CircuitBreakerMessageSender(Builder builder) throws IOException {
+        if (builder.messageSender == null || builder.spillFile == null) {
+            throw new IllegalArgumentException("You must provide messageSender and spillFile.");
+        }
+        messageSender = builder.messageSender;
+        failureThreshold = Math.max(1, builder.failureThreshold);
+        slowPostThreshold = builder.slowPostThreshold;
+        cooldown = builder.cooldown;
+        drainRate = builder.drainRate;
+        spillFile = new SpillFile(builder.spillFile);
+        backlog = spillFile.size();
+        if (backlog > 0) {
+            //messages spilled before restart are drained first
+            state = State.OPEN;
+        }
+        drainer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                drain();
+            }
+        }, builder.name + "-breaker");
+        drainer.setDaemon(true);
+        drainer.start();
+    }
+
+    public static class Builder {
+
+        private MessageSender messageSender;
+        private File spillFile;
+        private String name = "chat";
+        private int failureThreshold = 5;
+        private long slowPostThreshold = 10 * 1000;
+        private long cooldown = 30 * 1000;
+        private double drainRate = 1;
+
+        /**
+         * @param messageSender sender which posts messages to the chat server
+         * @return this, for chaining
+         */
+        public Builder messageSender(MessageSender messageSender) {
+            this.messageSender = messageSender;
+            return this;
+        }
+
+        /**
+         * @param spillFile file messages are appended to while the breaker is open
+         * @return this, for chaining
+         */
+        public Builder spillFile(File spillFile) {
+            this.spillFile = spillFile;
+            return this;
+        }
+
+        /**
+         * @param name name of the breaker, used in the name of the drainer thread
+         * @return this, for chaining
+         */
+        public Builder name(String name) {
+            this.name = name;
+            return this;
+        }
+
+        /**
+         * @param failureThreshold number of consecutive failed posts which opens the breaker
+         * @return this, for chaining
+         */
+        public Builder failureThreshold(int failureThreshold) {
+            this.failureThreshold = failureThreshold;
+            return this;
+        }
+
+        /**
+         * @param slowPostThreshold time (in milliseconds) of the post after which it counts as failed
+         * @return this, for chaining
+         */
+        public Builder slowPostThreshold(long slowPostThreshold) {
+            this.slowPostThreshold = slowPostThreshold;
+            return this;
+        }
+
+        /**
+         * @param cooldown time (in milliseconds) the breaker stays open before it is probed
+         * @return this, for chaining
+         */
+        public Builder cooldown(long cooldown) {
+            this.cooldown = cooldown;
+            return this;
+        }
+
+        /**
+         * @param drainRate maximum number of spilled messages posted per second
+         * @return this, for chaining
+         */
+        public Builder drainRate(double drainRate) {
+            this.drainRate = drainRate;
+            return this;
+        }
+
+        public CircuitBreakerMessageSender build() throws IOException {
+            return new CircuitBreakerMessageSender(this);
+        }
+    }
+
+    /**
+     * Posts the message or spills it if the breaker is not closed
+     *
+     * @throws IOException if the message is not posted or it fails to spill the message
+     */
+    @Override
+    public void send(SlackMessage message) throws IOException {
+        synchronized (lock) {
+            if (state != State.CLOSED) {
+                spill(message);
+                return;
+            }
+        }
+        long startTime = System.currentTimeMillis();
+        try {
+            messageSender.send(message);
+        } catch (IOException | RuntimeException ex) {
+            if (!isRejected(ex)) {
+                failed();
+            }
+            throw ex;
+        }
+        if (System.currentTimeMillis() - startTime > slowPostThreshold) {
+            log.warn("Posting message about {} took {} ms", message.getSubject(), System.currentTimeMillis() - startTime);
+            failed();
+        } else {
+            synchronized (lock) {
+                consecutiveFailures = 0;
+            }
+        }
+    }
+
+    /**
+     * @return sender which spills messages regardless of the state of the breaker, closed breaker starts draining
+     * them right away and stays closed (messages sent meanwhile are posted directly)
+     */
+    public MessageSender overflowSender() {
+        return new MessageSender() {
+            @Override
+            public void send(SlackMessage message) throws IOException {
+                synchronized (lock) {
+                    spill(message);
+                    lock.notifyAll();
+                }
+            }
+        };
+    }
+
+    private void spill(SlackMessage message) throws IOException {
+        spillFile.append(message);
+        backlog++;
+        spilled.incrementAndGet();
+        log.debug("Spilled message about {} to {}", message.getSubject(), spillFile);
+    }
+
+    /**
+     * @return true if Slack rejected the message itself (any 4xx response but 429), which does not mean that Slack
+     * is down and posting the message again does not help
+     */
+    private static boolean isRejected(Exception ex) {
+        if (!(ex instanceof BadResponseException) || ex instanceof SlackRateLimitException) {
+            return false;
+        }
+        int statusCode = ((BadResponseException) ex).getStatusCode();
+        return statusCode >= 400 && statusCode < 500;
+    }
+
+    private void failed() {
+        synchronized (lock) {
+            if (++consecutiveFailures >= failureThreshold && state == State.CLOSED) {
+                log.warn("Circuit breaker is open after {} failures, messages will be spilled to {} for at least {} ms",
+                        consecutiveFailures, spillFile, cooldown);
+                open();
+            }
+        }
+    }
+
+    /**
+     * Opens the breaker (or restarts the cooldown of the open breaker), should be called holding the lock
+     */
+    private void open() {
+        if (state != State.OPEN) {
+            opened.incrementAndGet();
+        }
+        state = State.OPEN;
+        openedAt = System.currentTimeMillis();
+        lock.notifyAll();
+    }
+
+    /**
+     * Probes the chat server once cooldown of the open breaker is over and posts spilled messages in order
+     * they were spilled
+     */
+    private void drain() {
+        TokenBucket tokenBucket = new TokenBucket(drainRate, 1, System.currentTimeMillis());
+        while (!closed) {
+            try {
+                long position;
+                synchronized (lock) {
+                    long wait = waitTime(System.currentTimeMillis());
+                    if (wait > 0) {
+                        lock.wait(wait);
+                        continue;
+                    }
+                    position = drainPosition;
+                }
+                SpillFile.Record record = spillFile.read(position);
+                if (record == null) {
+                    drained();
+                    continue;
+                }
+                long delay = tokenBucket.tryAcquire(System.currentTimeMillis());
+                if (delay > 0) {
+                    Thread.sleep(delay);
+                    continue;
+                }
+                post(record);
+            } catch (InterruptedException e) {
+                return;
+            } catch (IOException ex) {
+                log.error("Failed to read spilled messages from " + spillFile, ex);
+                synchronized (lock) {
+                    open();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return time to wait before next message may be drained, 0 if it may be drained now
+     */
+    private long waitTime(long now) {
+        switch (state) {
+            case CLOSED:
+                //overflow messages are drained (and the file truncated), otherwise wait until the breaker opens
+                //or messages overflow
+                return backlog > 0 || drainPosition > 0 ? 0 : Long.MAX_VALUE;
+            case OPEN:
+                return Math.max(0, openedAt + cooldown - now);
+            default:
+                return 0;
+        }
+    }
+
+    private void post(SpillFile.Record record) throws InterruptedException {
+        SlackMessage message = record.message;
+        boolean skipped = false;
+        try {
+            messageSender.send(message);
+        } catch (SlackRateLimitException ex) {
+            log.info("Draining of spilled messages is rate limited, next message will be posted in {} ms",
+                    ex.getRetryAfter());
+            Thread.sleep(ex.getRetryAfter());
+            return;
+        } catch (Exception ex) {
+            if (!isRejected(ex)) {
+                synchronized (lock) {
+                    if (state == State.OPEN) {
+                        log.info("Circuit breaker stays open, probe failed: {}", ex.toString());
+                    } else {
+                        log.warn("Failed to post spilled message about " + message.getSubject() + ", opening circuit breaker", ex);
+                    }
+                    open();
+                }
+                return;
+            }
+            rejected.incrementAndGet();
+            skipped = true;
+            log.error("Slack rejected spilled message about " + message.getSubject() + ", the message is skipped", ex);
+        }
+        if (!skipped) {
+            drained.incrementAndGet();
+        }
+        synchronized (lock) {
+            if (state == State.OPEN) {
+                log.info("Probe succeeded, draining {} spilled messages at {} messages per second", backlog, drainRate);
+                state = State.DRAINING;
+            }
+            drainPosition = record.next;
+            backlog--;
+        }
+    }
+
+    /**
+     * Closes the breaker if all spilled messages have been posted, truncates the spill file
+     */
+    private void drained() throws IOException {
+        synchronized (lock) {
+            if (spillFile.read(drainPosition) != null) {
+                //message was spilled meanwhile
+                return;
+            }
+            spillFile.truncate();
+            drainPosition = 0;
+            backlog = 0;
+            if (state == State.CLOSED) {
+                log.debug("Overflow messages spilled to {} are drained", spillFile);
+                return;
+            }
+            if (state == State.OPEN) {
+                //nothing to probe with, next message is posted directly
+                log.info("Circuit breaker is closed after cooldown");
+            } else {
+                log.info("Circuit breaker is closed, spilled messages are drained");
+            }
+            state = State.CLOSED;
+            consecutiveFailures = 0;
+        }
+    }
+
+    public State getState() {
+        synchronized (lock) {
+            return state;
+        }
+    }
+
+    /**
+     * @return number of spilled messages which have not been posted yet
+     */
+    public int getBacklog() {
+        synchronized (lock) {
+            return backlog;
+        }
+    }
+
+    /**
+     * @return number of times the breaker was opened
+     */
+    public long getOpened() {
+        return opened.get();
+    }
+
+    public long getSpilled() {
+        return spilled.get();
+    }
+
+    /**
+     * @return number of spilled messages posted once the breaker was closed
+     */
+    public long getDrained() {
+        return drained.get();
+    }
+
+    /**
+     * @return number of spilled messages Slack rejected for good, they were skipped
+     */
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    /**
+     * Stops draining spilled messages, they are drained after restart
+     */
+    public void close() {
+        closed = true;
+        drainer.interrupt();
+        try {
+            drainer.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        log.info("Circuit breaker closed in state {}, opened: {}, spilled: {}, drained: {}, rejected: {}, backlog: {}",
+                getState(), opened.get(), spilled.get(), drained.get(), rejected.get(), getBacklog());
+        spillFile.close();
+    }
+}
@@ -0,0 +1,234 @@
+package com.ontometrics.integrations.configuration;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.ontometrics.integrations.events.Issue;
+import com.ontometrics.integrations.events.IssueEditSession;
+import com.ontometrics.integrations.sources.ChannelMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link com.ontometrics.integrations.configuration.ChatServer} which posts every message to several destinations
+ * (e.g. two Slack workspaces and an archive webhook), each with its own channel mapping.
+ * <p>
+ * Every destination is posted to by its own thread, in order messages were posted, so a destination which waits
+ * for free space in its queue (see {@link com.ontometrics.integrations.configuration.QueuedMessageSender}) does not
+ * delay the others and posting thread does not wait for any of them. Failure of a destination is logged and
+ * counted, the message is still posted to other destinations.
+ * </p>
+ * <p>
+ * {@link #flush()} waits until messages posted by the calling thread are handed to every destination and flushes
+ * all destinations, so last processed date is saved only once messages are stored by every destination. Failure
+ * is re-thrown by flush if a message could not be posted to any destination.
+ * </p>
+ * CompositeChatServer.java
+ */
+public class CompositeChatServer implements ChatServer {
+
+    private static final Logger log = LoggerFactory.getLogger(CompositeChatServer.class);
+
+    private final Map<String, ChatServer> destinations;
+    private final Map<String, ExecutorService> executors = new LinkedHashMap<>();
+    private final Map<String, AtomicLong> failures = new LinkedHashMap<>();
+    /**
+     * Messages posted by the thread since it flushed last time
+     */
+    private final ThreadLocal<List<Delivery>> pending = new ThreadLocal<List<Delivery>>() {
+        @Override
+        protected List<Delivery> initialValue() {
+            return new ArrayList<>();
+        }
+    };
+
+    /**
+     * @param destinations chat servers by destination name, the first one is the primary destination
+     */
+    public CompositeChatServer(Map<String, ? extends ChatServer> destinations) {
+        if (destinations.isEmpty()) {
+            throw new IllegalArgumentException("You must provide at least one destination.");
+        }
+        this.destinations = Collections.unmodifiableMap(new LinkedHashMap<>(destinations));
+        for (String destination : destinations.keySet()) {
+            failures.put(destination, new AtomicLong());
+            executors.put(destination, Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+                    .setNameFormat(destination + "-poster").setDaemon(true).build()));
+        }
+    }
+
+    @Override
+    public void postIssueCreation(final Issue issue) {
+        forEachDestination(new Post() {
+            @Override
+            public void to(ChatServer chatServer) {
+                chatServer.postIssueCreation(issue);
+            }
+        }, issue);
+    }
+
+    @Override
+    public void post(final IssueEditSession issueEditSession) {
+        forEachDestination(new Post() {
+            @Override
+            public void to(ChatServer chatServer) {
+                chatServer.post(issueEditSession);
+            }
+        }, issueEditSession.getIssue());
+    }
+
+    /**
+     * Hands the message to threads of all destinations, does not wait for them
+     */
+    private void forEachDestination(final Post post, final Issue issue) {
+        final Delivery delivery = new Delivery(destinations.size());
+        for (final Map.Entry<String, ChatServer> destination : destinations.entrySet()) {
+            executors.get(destination.getKey()).execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        post.to(destination.getValue());
+                        delivery.done(null);
+                    } catch (RuntimeException ex) {
+                        failures.get(destination.getKey()).incrementAndGet();
+                        log.error("Failed to post message about " + issue.getPrefix() + "-" + issue.getId() + " to "
+                                + destination.getKey(), ex);
+                        delivery.done(ex);
+                    }
+                }
+            });
+        }
+        pending.get().add(delivery);
+    }
+
+    /**
+     * Waits until messages posted by this thread are handed to every destination and flushes all destinations
+     *
+     * @throws RuntimeException failure of the first message which could not be posted to any destination
+     */
+    @Override
+    public void flush() {
+        List<Delivery> deliveries = pending.get();
+        RuntimeException failure = null;
+        try {
+            for (Delivery delivery : deliveries) {
+                RuntimeException deliveryFailure = delivery.await();
+                if (failure == null) {
+                    failure = deliveryFailure;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for messages to be posted", e);
+        } finally {
+            deliveries.clear();
+        }
+        for (ChatServer chatServer : destinations.values()) {
+            chatServer.flush();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Stops accepting new messages and waits until posted messages are handed to destinations
+     *
+     * @param timeout maximum time (in milliseconds) to wait, threads of destinations are interrupted after that
+     * @return true if all messages were handed to destinations in time
+     */
+    public boolean close(long timeout) {
+        long deadline = System.currentTimeMillis() + timeout;
+        boolean drained = true;
+        for (Map.Entry<String, ExecutorService> executor : executors.entrySet()) {
+            executor.getValue().shutdown();
+            try {
+                if (!executor.getValue().awaitTermination(Math.max(1, deadline - System.currentTimeMillis()),
+                        TimeUnit.MILLISECONDS)) {
+                    log.warn("Interrupting messages which were not posted to {} on shutdown", executor.getKey());
+                    drained = false;
+                    executor.getValue().shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                drained = false;
+                executor.getValue().shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+        return drained;
+    }
+
+    /**
+     * @return channel mapper of the primary destination
+     */
+    @Override
+    public ChannelMapper getChannelMapper() {
+        return destinations.values().iterator().next().getChannelMapper();
+    }
+
+    /**
+     * @return chat servers by destination name
+     */
+    public Map<String, ChatServer> getDestinations() {
+        return destinations;
+    }
+
+    /**
+     * @return number of messages which could not be posted by destination
+     */
+    public Map<String, Long> getFailures() {
+        Map<String, Long> result = new TreeMap<>();
+        for (Map.Entry<String, AtomicLong> failure : failures.entrySet()) {
+            result.put(failure.getKey(), failure.getValue().get());
+        }
+        return result;
+    }
+
+    private interface Post {
+        void to(ChatServer chatServer);
+    }
+
+    /**
+     * Message handed to all destinations
+     */
+    private static class Delivery {
+        private final CountDownLatch remaining;
+        private final AtomicInteger posted = new AtomicInteger();
+        private volatile RuntimeException failure;
+
+        private Delivery(int destinations) {
+            remaining = new CountDownLatch(destinations);
+        }
+
+        /**
+         * @param failure failure of the destination, null if the message was posted
+         */
+        private void done(RuntimeException failure) {
+            if (failure == null) {
+                posted.incrementAndGet();
+            } else if (this.failure == null) {
+                this.failure = failure;
+            }
+            remaining.countDown();
+        }
+
+        /**
+         * @return failure if message could not be posted to any destination, null otherwise
+         */
+        private RuntimeException await() throws InterruptedException {
+            remaining.await();
+            return posted.get() == 0 ? failure : null;
+        }
+    }
+}
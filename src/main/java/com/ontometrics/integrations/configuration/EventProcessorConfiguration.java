@@ -1,5 +1,7 @@
 package com.ontometrics.integrations.configuration;
 
+import com.ontometrics.db.GroupCommitter;
+import com.ontometrics.db.MapDb;
 import com.ontometrics.util.DateBuilder;
 import org.apache.commons.configuration.ConfigurationException;
 import org.apache.commons.configuration.PropertiesConfiguration;
@@ -8,11 +10,22 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.util.Date;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * EventProcessorConfiguration.java
  * Organize access (read/write) to properties/state required for processing of input/output streams
- *
+ * <p>
+ * Last processed event dates (checkpoints) of the projects are kept in memory and stored in
+ * {@link com.ontometrics.db.MapDb#getCheckpointMap()}. Saved dates are committed together by {@link #commit()}
+ * once per polling cycle, the commit is atomic unless the store is opened in
+ * {@link com.ontometrics.db.StorageMode#FILE} mode. Checkpoints of older versions (lastEvent.properties) are
+ * migrated on first start.
+ * </p>
  */
 public class EventProcessorConfiguration {
     private static final Logger logger = LoggerFactory.getLogger(EventProcessorConfiguration.class);
@@ -20,10 +33,17 @@ public class EventProcessorConfiguration {
     private static final EventProcessorConfiguration instance = new EventProcessorConfiguration();
 
     private static final String LAST_EVENT_DATE = "last.event.date";
+    private static final String LAST_EVENT_FILE = "lastEvent.properties";
 
     public static final String PROP_ISSUE_HISTORY_WINDOW = "PROP.ISSUE_HISTORY_WINDOW";
 
-    private PropertiesConfiguration lastEventConfiguration;
+    /**
+     * Checkpoints by project, the same as stored ones plus saved but not committed yet
+     */
+    private final ConcurrentMap<String, Long> checkpoints = new ConcurrentHashMap<>();
+    private Map<String, Long> checkpointStore;
+    private GroupCommitter committer;
+    private final AtomicBoolean changed = new AtomicBoolean();
 
     //being used in tests to override value from properties
     private Integer issueHistoryWindowInMinutes;
@@ -32,15 +52,48 @@ public class EventProcessorConfiguration {
         initialize();
     }
 
-    private void initialize() throws ConfigurationAccessError {
+    private synchronized void initialize() throws ConfigurationAccessError {
+        checkpointStore = MapDb.instance().getCheckpointMap();
+        committer = MapDb.instance().getGroupCommitter();
+        File dataDir = new File(ConfigurationFactory.get().getString("PROP.APP_DATA_DIR", "."));
+        migrate(new File(dataDir, LAST_EVENT_FILE));
+        checkpoints.clear();
+        checkpoints.putAll(checkpointStore);
+        changed.set(false);
+        logger.info("Initialized EventProcessorConfiguration with checkpoints of {} projects", checkpoints.size());
+    }
+
+    /**
+     * Moves checkpoints from the properties file to the store (unless stored ones are later) and renames the file,
+     * so it is migrated only once
+     */
+    private void migrate(File file) throws ConfigurationAccessError {
+        if (!file.exists()) {
+            return;
+        }
+        logger.info("Going to migrate checkpoints from file {}", file.getAbsolutePath());
         try {
-            File dataDir = new File(ConfigurationFactory.get().getString("PROP.APP_DATA_DIR", "."));
-            File file = new File(dataDir, "lastEvent.properties");
-            logger.info("Going to load properties from file {}", file.getAbsolutePath());
-            lastEventConfiguration = new PropertiesConfiguration(file);
-            logger.info("Initialized EventProcessorConfiguration");
-        } catch (ConfigurationException e) {
-            throw new ConfigurationAccessError("Failed to access properties", e);
+            PropertiesConfiguration lastEventConfiguration = new PropertiesConfiguration(file);
+            Iterator<String> keys = lastEventConfiguration.getKeys(LAST_EVENT_DATE);
+            while (keys.hasNext()) {
+                String key = keys.next();
+                long lastEventDate = lastEventConfiguration.getLong(key, 0);
+                if (key.length() <= LAST_EVENT_DATE.length() + 1 || lastEventDate <= 0) {
+                    continue;
+                }
+                String project = key.substring(LAST_EVENT_DATE.length() + 1);
+                Long storedDate = checkpointStore.get(project);
+                if (storedDate == null || storedDate < lastEventDate) {
+                    checkpointStore.put(project, lastEventDate);
+                }
+            }
+            committer.awaitCommit();
+        } catch (ConfigurationException | RuntimeException e) {
+            throw new ConfigurationAccessError("Failed to migrate checkpoints from " + file.getAbsolutePath(), e);
+        }
+        File migratedFile = new File(file.getParentFile(), file.getName() + ".migrated");
+        if (!file.renameTo(migratedFile)) {
+            logger.warn("Failed to rename migrated file {}, it will be migrated again", file.getAbsolutePath());
         }
     }
 
@@ -53,7 +106,7 @@ public class EventProcessorConfiguration {
      * @return last event processed (issue) or null if not available for specified project
      */
     public Date loadLastProcessedDate(String project) {
-        Long lastEventDate = lastEventConfiguration.getLong(getProjectLastEventDateKey(project), null);
+        Long lastEventDate = checkpoints.get(project);
         if (lastEventDate != null && lastEventDate > 0) {
             return new Date(lastEventDate);
         }
@@ -62,16 +115,43 @@ public class EventProcessorConfiguration {
 
 
 
-    public void saveLastProcessedEventDate(Date lastProcessedEventDate, String project) throws ConfigurationException {
-        Date currentLastProcessedDate = loadLastProcessedDate(project);
-        if (currentLastProcessedDate  == null || currentLastProcessedDate.before(lastProcessedEventDate)) {
-            lastEventConfiguration.setProperty(getProjectLastEventDateKey(project), lastProcessedEventDate.getTime());
-            lastEventConfiguration.save();
+    /**
+     * Saves last processed date of the project unless the saved one is later.
+     * Saved date is stored right away but it is committed by {@link #commit()}.
+     */
+    public void saveLastProcessedEventDate(Date lastProcessedEventDate, String project) {
+        long lastEventDate = lastProcessedEventDate.getTime();
+        while (true) {
+            Long currentLastEventDate = checkpoints.putIfAbsent(project, lastEventDate);
+            if (currentLastEventDate == null) {
+                break;
+            }
+            if (currentLastEventDate >= lastEventDate) {
+                return;
+            }
+            if (checkpoints.replace(project, currentLastEventDate, lastEventDate)) {
+                break;
+            }
+        }
+        synchronized (this) {
+            //projects are saved concurrently, the latest date wins
+            Long storedDate = checkpointStore.get(project);
+            if (storedDate == null || storedDate < lastEventDate) {
+                checkpointStore.put(project, lastEventDate);
+            }
         }
+        changed.set(true);
     }
 
-    private String getProjectLastEventDateKey(String project) {
-        return LAST_EVENT_DATE+"."+project;
+    /**
+     * Commits all checkpoints saved since the last commit at once, waits for the commit
+     *
+     * @throws RuntimeException if the commit fails
+     */
+    public void commit() {
+        if (changed.getAndSet(false)) {
+            committer.awaitCommit();
+        }
     }
 
     /**
@@ -96,9 +176,11 @@ public class EventProcessorConfiguration {
         return new DateBuilder().addMinutes(-getIssueHistoryWindowInMinutes()).build();
     }
 
-    public void clear() throws ConfigurationException {
-        lastEventConfiguration.clear();
-        lastEventConfiguration.save();
+    public synchronized void clear() {
+        checkpoints.clear();
+        checkpointStore.clear();
+        changed.set(false);
+        committer.awaitCommit();
     }
 
     public int getIssueHistoryWindowInMinutes() {
@@ -110,7 +192,7 @@ public class EventProcessorConfiguration {
     }
 
     /**
-     * Disposes itself and re-initializes
+     * Re-initializes checkpoints from the store
      */
     public void reload() {
         initialize();
@@ -0,0 +1,16 @@
+package com.ontometrics.integrations.configuration;
+
+import java.io.IOException;
+
+/**
+ * Delivers formatted messages to Slack
+ * MessageSender.java
+ */
+public interface MessageSender {
+
+    /**
+     * @param message message to deliver
+     * @throws IOException if message could not be delivered
+     */
+    void send(SlackMessage message) throws IOException;
+}
@@ -0,0 +1,160 @@
+package com.ontometrics.integrations.configuration;
+
+import com.ontometrics.util.LatencyHistogram;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Histograms (per project) of the time between an edit in YouTrack and acknowledgement of its message by Slack,
+ * broken down into {@link Stage}s. Stages of a message add up to its total latency.
+ * <p>
+ * Event listener reports every poll of the project with {@link #polled(String, long, long, long)}, chat server
+ * starts a {@link com.ontometrics.integrations.configuration.NotificationTrace} for every message of the poll
+ * and the trace is recorded once Slack accepts the message. Messages sent again after restart are not recorded.
+ * </p>
+ * <p>
+ * Every destination a message is posted to traces its own copy of the message, so histograms of messages traced
+ * with a destination are kept by project and destination (e.g. "ASOC to archive").
+ * </p>
+ * NotificationLatency.java
+ */
+public class NotificationLatency {
+
+    public enum Stage {
+        /**
+         * From the edit to the start of the poll which found it
+         */
+        POLL,
+        /**
+         * Waiting for YouTrack responses: from the start of the poll to the end of extraction, except parsing
+         */
+        FETCH,
+        /**
+         * Reading and parsing YouTrack responses
+         */
+        PARSE,
+        /**
+         * From the end of extraction to queueing the message: sorting, merging and formatting
+         * (of this and preceding messages of the poll) and storing the message in the outbox
+         */
+        FORMAT,
+        /**
+         * Waiting in the queue for rate limit, retries and the sender thread
+         */
+        QUEUE,
+        /**
+         * Posting the message to Slack
+         */
+        SEND,
+        /**
+         * From the edit to acknowledgement of the message by Slack
+         */
+        TOTAL
+    }
+
+    private final ConcurrentMap<String, Poll> polls = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Map<Stage, LatencyHistogram>> histograms = new ConcurrentHashMap<>();
+
+    /**
+     * Poll of the project, the same project is not polled concurrently
+     */
+    static class Poll {
+        final long startTime;
+        final long extractedTime;
+        final long parseTime;
+
+        private Poll(long startTime, long extractedTime, long parseTime) {
+            this.startTime = startTime;
+            this.extractedTime = extractedTime;
+            this.parseTime = parseTime;
+        }
+    }
+
+    /**
+     * Reports the poll of the project, messages posted after that are attributed to this poll
+     *
+     * @param project       project key (issue prefix)
+     * @param startTime     start time of the poll
+     * @param extractedTime time edit sessions of the project were extracted
+     * @param parseTime     time (in milliseconds) spent reading and parsing YouTrack responses
+     */
+    public void polled(String project, long startTime, long extractedTime, long parseTime) {
+        polls.put(project, new Poll(startTime, extractedTime, Math.min(parseTime, extractedTime - startTime)));
+    }
+
+    /**
+     * @param project     project key (issue prefix)
+     * @param editTime    time of the edit the message is about
+     * @return trace of the message, null if the project has not been polled or edit time is not known
+     */
+    public NotificationTrace startTrace(String project, Long editTime) {
+        return startTrace(null, project, editTime);
+    }
+
+    /**
+     * @param destination name of the destination the message is posted to, null if it is not distinguished
+     * @param project     project key (issue prefix)
+     * @param editTime    time of the edit the message is about
+     * @return trace of the message, null if the project has not been polled or edit time is not known
+     */
+    public NotificationTrace startTrace(String destination, String project, Long editTime) {
+        Poll poll = polls.get(project);
+        if (poll == null || editTime == null) {
+            return null;
+        }
+        return new NotificationTrace(this, destination, project, editTime, poll);
+    }
+
+    void record(NotificationTrace trace) {
+        String key = trace.getDestination() == null ? trace.getProject()
+                : trace.getProject() + " to " + trace.getDestination();
+        Map<Stage, LatencyHistogram> projectHistograms = histograms.get(key);
+        if (projectHistograms == null) {
+            projectHistograms = new EnumMap<>(Stage.class);
+            for (Stage stage : Stage.values()) {
+                projectHistograms.put(stage, new LatencyHistogram());
+            }
+            histograms.putIfAbsent(key, Collections.unmodifiableMap(projectHistograms));
+            projectHistograms = histograms.get(key);
+        }
+        for (Stage stage : Stage.values()) {
+            projectHistograms.get(stage).record(trace.getDuration(stage));
+        }
+    }
+
+    /**
+     * @return histograms of the stages by project, or by project and destination if messages were traced
+     * with destination
+     */
+    public Map<String, Map<Stage, LatencyHistogram>> getHistograms() {
+        return new TreeMap<>(histograms);
+    }
+
+    /**
+     * @return p50/p95/p99 of every stage by project
+     */
+    @Override
+    public String toString() {
+        StringBuilder s = new StringBuilder();
+        for (Map.Entry<String, Map<Stage, LatencyHistogram>> project : getHistograms().entrySet()) {
+            s.append(System.lineSeparator()).append(project.getKey()).append(" (")
+                    .append(project.getValue().get(Stage.TOTAL).getCount()).append(" messages):");
+            for (Map.Entry<Stage, LatencyHistogram> stage : project.getValue().entrySet()) {
+                LatencyHistogram histogram = stage.getValue();
+                s.append(' ').append(stage.getKey().name().toLowerCase())
+                        .append(" p50/p95/p99 ").append(histogram.getPercentile(50))
+                        .append('/').append(histogram.getPercentile(95))
+                        .append('/').append(histogram.getPercentile(99)).append(" ms");
+                if (stage.getKey() != Stage.TOTAL) {
+                    s.append(',');
+                }
+            }
+        }
+        return s.toString();
+    }
+}
@@ -0,0 +1,84 @@
+package com.ontometrics.integrations.configuration;
+
+/**
+ * Times of a message passing through the stages of
+ * {@link com.ontometrics.integrations.configuration.NotificationLatency}, recorded to it once the message is
+ * acknowledged. Trace is not persisted with the message.
+ * NotificationTrace.java
+ */
+public class NotificationTrace {
+
+    private final NotificationLatency latency;
+    private final String destination;
+    private final String project;
+    private final long editTime;
+    private final NotificationLatency.Poll poll;
+    private volatile long queuedTime;
+    private volatile long dequeuedTime;
+    private volatile long acknowledgedTime;
+
+    NotificationTrace(NotificationLatency latency, String destination, String project, long editTime,
+                      NotificationLatency.Poll poll) {
+        this.latency = latency;
+        this.destination = destination;
+        this.project = project;
+        this.editTime = editTime;
+        this.poll = poll;
+    }
+
+    /**
+     * @return name of the destination the message is posted to, null if it is not distinguished
+     */
+    public String getDestination() {
+        return destination;
+    }
+
+    public String getProject() {
+        return project;
+    }
+
+    void queued(long time) {
+        queuedTime = time;
+    }
+
+    /**
+     * Called on every attempt to deliver the message, so retries count as waiting in the queue
+     */
+    void dequeued(long time) {
+        dequeuedTime = time;
+    }
+
+    void acknowledged(long time) {
+        if (queuedTime == 0 || acknowledgedTime != 0) {
+            return;
+        }
+        acknowledgedTime = time;
+        if (dequeuedTime == 0) {
+            //sent without the queue
+            dequeuedTime = queuedTime;
+        }
+        latency.record(this);
+    }
+
+    /**
+     * @return time (in milliseconds) the message spent in the stage
+     */
+    public long getDuration(NotificationLatency.Stage stage) {
+        switch (stage) {
+            case POLL:
+                return poll.startTime - editTime;
+            case FETCH:
+                return poll.extractedTime - poll.startTime - poll.parseTime;
+            case PARSE:
+                return poll.parseTime;
+            case FORMAT:
+                return queuedTime - poll.extractedTime;
+            case QUEUE:
+                return dequeuedTime - queuedTime;
+            case SEND:
+                return acknowledgedTime - dequeuedTime;
+            default:
+                return acknowledgedTime - editTime;
+        }
+    }
+}
@@ -0,0 +1,711 @@
+package com.ontometrics.integrations.configuration;
+
+import com.ontometrics.util.LatencyHistogram;
+import com.ontometrics.util.TokenBucket;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * {@link com.ontometrics.integrations.configuration.MessageSender} which queues messages in memory and delivers
+ * them with the underlying sender by dedicated sender threads, so slow chat server does not slow down extraction
+ * of the events.
+ * <p>
+ * Every channel is served by a single sender (chosen by the hash of the channel name), so messages of the
+ * channel are delivered in order they were sent. Each sender has a bounded queue, what happens when
+ * the queue is full is decided by the {@link OverflowPolicy}. Messages taken for delivery keep their slots in the
+ * queue until they are delivered or given up, so messages returned to the queue for retry never take it over its
+ * capacity.
+ * </p>
+ * <p>
+ * Sender paces messages of every channel with a token bucket (if rate limit is set) and delivers the message
+ * of the channel which is ready first, so channel waiting for its turn does not hold up other channels. Channel
+ * is parked for the time requested by {@link com.ontometrics.integrations.configuration.SlackRateLimitException}
+ * and for growing (jittered) delay after other failures, the message is delivered again after that. Message
+ * which fails max attempts times is logged and counted as failed (message kept in
+ * {@link com.ontometrics.integrations.configuration.SlackOutbox} is sent again after restart).
+ * </p>
+ * <p>
+ * If batch size is set, consecutive messages waiting in the queue of the channel are combined into a single
+ * message (see {@link com.ontometrics.integrations.configuration.SlackMessageBatch}) delivered with one request,
+ * so the backlog of busy channel is drained in fewer requests.
+ * </p>
+ * QueuedMessageSender.java
+ */
+public class QueuedMessageSender implements MessageSender {
+
+    private static final Logger log = LoggerFactory.getLogger(QueuedMessageSender.class);
+
+    /**
+     * Number of threads posting messages to Slack
+     */
+    public static final String PROP_SLACK_SENDER_THREADS = "PROP.SLACK_SENDER_THREADS";
+    /**
+     * Maximum number of messages waiting to be posted to Slack
+     */
+    public static final String PROP_SLACK_QUEUE_CAPACITY = "PROP.SLACK_QUEUE_CAPACITY";
+    /**
+     * What to do with a message when the queue is full: "block" or "spill"
+     */
+    public static final String PROP_SLACK_QUEUE_OVERFLOW = "PROP.SLACK_QUEUE_OVERFLOW";
+    /**
+     * Maximum number of messages per second posted to a Slack channel, 0 disables the limit
+     */
+    public static final String PROP_SLACK_RATE_LIMIT = "PROP.SLACK_RATE_LIMIT";
+    /**
+     * Number of messages which may be posted to a Slack channel at once after it was idle
+     */
+    public static final String PROP_SLACK_RATE_BURST = "PROP.SLACK_RATE_BURST";
+    /**
+     * Number of attempts to post a message to Slack before giving up
+     */
+    public static final String PROP_SLACK_MAX_ATTEMPTS = "PROP.SLACK_MAX_ATTEMPTS";
+    /**
+     * Maximum number of messages of a Slack channel combined into a single post, 1 disables batching
+     */
+    public static final String PROP_SLACK_BATCH_SIZE = "PROP.SLACK_BATCH_SIZE";
+
+    private static final long POLL_INTERVAL = 500;
+    private static final long MAX_RETRY_DELAY = 60 * 1000;
+
+    /**
+     * Handling of the message sent when the queue of the channel is full
+     */
+    public enum OverflowPolicy {
+        /**
+         * Sending thread waits for a free slot in the queue
+         */
+        BLOCK,
+        /**
+         * Message is handed to overflow sender right away, sending thread does not wait, but the message may be
+         * delivered out of order
+         */
+        SPILL
+    }
+
+    private final MessageSender messageSender;
+    private final MessageSender overflowSender;
+    private final OverflowPolicy overflowPolicy;
+    private final double rateLimit;
+    private final int rateBurst;
+    private final int maxAttempts;
+    private final long retryDelay;
+    private final int maxBatchSize;
+    private final List<Sender> senders;
+
+    private volatile boolean closed;
+
+    private final LatencyHistogram deliveryLatency = new LatencyHistogram();
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong retried = new AtomicLong();
+    private final AtomicLong rateLimited = new AtomicLong();
+    private final AtomicLong spilled = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    public QueuedMessageSender(Builder builder) {
+        if (builder.messageSender == null) {
+            throw new IllegalArgumentException("You must provide messageSender.");
+        }
+        if (builder.overflowPolicy == OverflowPolicy.SPILL && builder.overflowSender == null) {
+            throw new IllegalArgumentException("You must provide overflowSender to spill messages.");
+        }
+        if (builder.senderThreads <= 0 || builder.capacity < builder.senderThreads) {
+            throw new IllegalArgumentException("Queue capacity " + builder.capacity
+                    + " should not be less than number of sender threads " + builder.senderThreads);
+        }
+        messageSender = builder.messageSender;
+        overflowSender = builder.overflowSender;
+        overflowPolicy = builder.overflowPolicy;
+        rateLimit = builder.rateLimit;
+        rateBurst = Math.max(1, builder.rateBurst);
+        maxAttempts = Math.max(1, builder.maxAttempts);
+        retryDelay = builder.retryDelay;
+        maxBatchSize = Math.max(1, builder.maxBatchSize);
+        senders = new ArrayList<>(builder.senderThreads);
+        for (int i = 0; i < builder.senderThreads; i++) {
+            Sender sender = new Sender(builder.name + "-sender-" + i, builder.capacity / builder.senderThreads);
+            senders.add(sender);
+            sender.start();
+        }
+    }
+
+    public static class Builder {
+
+        private MessageSender messageSender;
+        private MessageSender overflowSender;
+        private String name = "chat";
+        private int senderThreads = 2;
+        private int capacity = 1000;
+        private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+        private double rateLimit;
+        private int rateBurst = 1;
+        private int maxAttempts = 1;
+        private long retryDelay = 1000;
+        private int maxBatchSize = 1;
+
+        /**
+         * @param messageSender sender which delivers messages
+         * @return this, for chaining
+         */
+        public Builder messageSender(MessageSender messageSender) {
+            this.messageSender = messageSender;
+            return this;
+        }
+
+        /**
+         * @param name name of the queue, used in names of the sender threads
+         * @return this, for chaining
+         */
+        public Builder name(String name) {
+            this.name = name;
+            return this;
+        }
+
+        public Builder senderThreads(int senderThreads) {
+            this.senderThreads = senderThreads;
+            return this;
+        }
+
+        /**
+         * @param capacity maximum number of queued messages, split evenly between the senders
+         * @return this, for chaining
+         */
+        public Builder capacity(int capacity) {
+            this.capacity = capacity;
+            return this;
+        }
+
+        public Builder overflowPolicy(OverflowPolicy overflowPolicy) {
+            this.overflowPolicy = overflowPolicy;
+            return this;
+        }
+
+        /**
+         * @param overflowSender sender which receives messages spilled from the full queue, required with
+         *                       {@link OverflowPolicy#SPILL} policy
+         * @return this, for chaining
+         */
+        public Builder overflowSender(MessageSender overflowSender) {
+            this.overflowSender = overflowSender;
+            return this;
+        }
+
+        /**
+         * @param rateLimit maximum number of messages per second delivered to a channel, 0 (default) means no limit
+         * @param burst     number of messages which may be delivered to a channel at once after it was idle
+         * @return this, for chaining
+         */
+        public Builder rateLimit(double rateLimit, int burst) {
+            this.rateLimit = rateLimit;
+            this.rateBurst = burst;
+            return this;
+        }
+
+        /**
+         * @param maxAttempts number of attempts to deliver a message, by default failed messages are not retried.
+         *                    Messages rejected because of rate limit are retried until delivered.
+         * @return this, for chaining
+         */
+        public Builder maxAttempts(int maxAttempts) {
+            this.maxAttempts = maxAttempts;
+            return this;
+        }
+
+        /**
+         * @param retryDelay delay (in milliseconds) before the second attempt, it doubles with every next attempt
+         * @return this, for chaining
+         */
+        public Builder retryDelay(long retryDelay) {
+            this.retryDelay = retryDelay;
+            return this;
+        }
+
+        /**
+         * @param maxBatchSize maximum number of queued messages of a channel combined into a single message,
+         *                     by default messages are delivered one by one
+         * @return this, for chaining
+         */
+        public Builder maxBatchSize(int maxBatchSize) {
+            this.maxBatchSize = maxBatchSize;
+            return this;
+        }
+
+        public QueuedMessageSender build() {
+            return new QueuedMessageSender(this);
+        }
+    }
+
+    /**
+     * Queues the message, waits for a free slot or spills the message if the queue of its sender is full
+     */
+    @Override
+    public void send(SlackMessage message) {
+        if (closed) {
+            throw new IllegalStateException("Message queue is closed");
+        }
+        boolean queued;
+        try {
+            queued = senderOf(message.getChannel()).offer(new Delivery(message), overflowPolicy == OverflowPolicy.BLOCK);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for free space in the queue of channel "
+                    + message.getChannel(), e);
+        }
+        if (!queued) {
+            spill(message);
+        }
+    }
+
+    private void spill(SlackMessage message) {
+        spilled.incrementAndGet();
+        log.debug("Queue of channel {} is full, spilling message about {}", message.getChannel(), message.getSubject());
+        try {
+            overflowSender.send(message);
+        } catch (Exception ex) {
+            dropped.incrementAndGet();
+            log.error("Failed to spill message about " + message.getSubject(), ex);
+        }
+    }
+
+    private Sender senderOf(String channel) {
+        int hash = channel == null ? 0 : channel.hashCode();
+        return senders.get((hash & Integer.MAX_VALUE) % senders.size());
+    }
+
+    /**
+     * @return number of messages waiting to be delivered (including the ones being delivered)
+     */
+    public int getDepth() {
+        int depth = 0;
+        for (Sender sender : senders) {
+            depth += sender.size();
+        }
+        return depth;
+    }
+
+    /**
+     * @return number of messages waiting to be delivered by channel
+     */
+    public Map<String, Integer> getChannelDepths() {
+        Map<String, Integer> depths = new TreeMap<>();
+        for (Sender sender : senders) {
+            sender.collectStats(depths, null);
+        }
+        return depths;
+    }
+
+    /**
+     * @return total time (in milliseconds) messages of the channel spent waiting for their turn to be delivered
+     * (because of rate limit, Retry-After or retry delay) by channel
+     */
+    public Map<String, Long> getThrottleTimes() {
+        Map<String, Long> throttleTimes = new TreeMap<>();
+        for (Sender sender : senders) {
+            sender.collectStats(null, throttleTimes);
+        }
+        return throttleTimes;
+    }
+
+    /**
+     * @return time between queueing the message and its delivery (successful or not)
+     */
+    public LatencyHistogram getDeliveryLatency() {
+        return deliveryLatency;
+    }
+
+    public long getDelivered() {
+        return delivered.get();
+    }
+
+    /**
+     * @return number of requests made to deliver the messages (including failed ones)
+     */
+    public long getRequests() {
+        return requests.get();
+    }
+
+    /**
+     * @return average number of messages delivered by a single request
+     */
+    public double getMessagesPerRequest() {
+        long requestCount = requests.get();
+        return requestCount == 0 ? 0 : (double) (delivered.get() + failed.get()) / requestCount;
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * @return number of delivery attempts repeated after failure
+     */
+    public long getRetried() {
+        return retried.get();
+    }
+
+    /**
+     * @return number of messages rejected because of rate limit
+     */
+    public long getRateLimited() {
+        return rateLimited.get();
+    }
+
+    /**
+     * @return number of messages handed to overflow sender because the queue was full
+     */
+    public long getSpilled() {
+        return spilled.get();
+    }
+
+    /**
+     * @return number of messages overflow sender failed to take
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Stops accepting new messages and waits until queued messages are delivered
+     *
+     * @param timeout maximum time (in milliseconds) to wait, senders are interrupted after that
+     * @return true if all messages were delivered in time
+     */
+    public boolean close(long timeout) {
+        closed = true;
+        long deadline = System.currentTimeMillis() + timeout;
+        boolean drained = true;
+        for (Sender sender : senders) {
+            try {
+                sender.join(Math.max(1, deadline - System.currentTimeMillis()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (sender.isAlive()) {
+                drained = false;
+                sender.interrupt();
+            }
+        }
+        log.info("Message queue closed with {} undelivered messages, {}, throttle times: {}", getDepth(), this,
+                getThrottleTimes());
+        return drained;
+    }
+
+    @Override
+    public String toString() {
+        return "depth: " + getDepth() + ", delivered: " + delivered.get() + ", failed: " + failed.get()
+                + ", requests: " + requests.get()
+                + ", messages per request: " + String.format("%.2f", getMessagesPerRequest())
+                + ", retried: " + retried.get() + ", rate limited: " + rateLimited.get()
+                + ", spilled: " + spilled.get() + ", dropped: " + dropped.get()
+                + ", delivery latency: [" + deliveryLatency + "]";
+    }
+
+    /**
+     * @return delay before next attempt: exponentially growing retry delay with +/-50% jitter
+     */
+    private long retryDelay(int attempts) {
+        long delay = Math.min(MAX_RETRY_DELAY, retryDelay << Math.min(attempts - 1, 16));
+        return delay / 2 + ThreadLocalRandom.current().nextLong(delay + 1);
+    }
+
+    /**
+     * @return Retry-After delay with up to 10% of jitter added, so parked channels do not wake up all at once
+     */
+    private static long retryAfterDelay(long retryAfter) {
+        return retryAfter + ThreadLocalRandom.current().nextLong(retryAfter / 10 + 1);
+    }
+
+    private static class Delivery {
+        private final SlackMessage message;
+        private final long enqueueTime = System.currentTimeMillis();
+        private int attempts;
+
+        private Delivery(SlackMessage message) {
+            this.message = message;
+        }
+    }
+
+    /**
+     * Messages of the channel waiting to be delivered, guarded by the lock of the sender
+     */
+    private class ChannelQueue {
+        private final String channel;
+        private final ArrayDeque<Delivery> deliveries = new ArrayDeque<>();
+        private final TokenBucket tokenBucket;
+        private long parkedUntil;
+        /**
+         * Time the first message of the queue became ready to be delivered
+         */
+        private long headSince;
+        private long throttleTime;
+
+        private ChannelQueue(String channel, long now) {
+            this.channel = channel;
+            tokenBucket = rateLimit > 0 ? new TokenBucket(rateLimit, rateBurst, now) : null;
+        }
+
+        /**
+         * @return 0 if the first message may be delivered now (token is taken), otherwise time to wait
+         */
+        private long tryAcquire(long now) {
+            if (parkedUntil > now) {
+                return parkedUntil - now;
+            }
+            return tokenBucket == null ? 0 : tokenBucket.tryAcquire(now);
+        }
+
+        private void add(Delivery delivery, long now) {
+            if (deliveries.isEmpty()) {
+                headSince = now;
+            }
+            deliveries.addLast(delivery);
+        }
+
+        private Delivery poll(long now) {
+            throttleTime += now - headSince;
+            return deliveries.pollFirst();
+        }
+
+        /**
+         * Takes the first message and following messages which can be combined with it into a single message
+         *
+         * @return deliveries of the batch in order they were queued
+         */
+        private List<Delivery> pollBatch(long now) {
+            Delivery first = poll(now);
+            if (maxBatchSize == 1 || deliveries.isEmpty()) {
+                return Collections.singletonList(first);
+            }
+            SlackMessageBatch batch = new SlackMessageBatch(maxBatchSize);
+            batch.add(first.message);
+            List<Delivery> polled = new ArrayList<>();
+            polled.add(first);
+            while (!deliveries.isEmpty() && batch.add(deliveries.peekFirst().message)) {
+                polled.add(deliveries.pollFirst());
+            }
+            return polled;
+        }
+
+        /**
+         * Returns the messages to the head of the queue (keeping their order) and parks the channel, the messages
+         * kept their slots while they were delivered
+         */
+        private void retry(List<Delivery> polled, long now, long delay) {
+            for (int i = polled.size() - 1; i >= 0; i--) {
+                deliveries.addFirst(polled.get(i));
+            }
+            parkedUntil = now + delay;
+            headSince = now;
+        }
+
+        private void attempted(long now) {
+            headSince = now;
+        }
+    }
+
+    private class Sender extends Thread {
+        private final int capacity;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition notEmpty = lock.newCondition();
+        private final Condition notFull = lock.newCondition();
+        /**
+         * Queues of the channels served by the sender, channel which was served last goes to the end
+         */
+        private final LinkedHashMap<String, ChannelQueue> channels = new LinkedHashMap<>();
+        /**
+         * Number of queued messages and messages being delivered
+         */
+        private int size;
+
+        private Sender(String name, int capacity) {
+            super(name);
+            setDaemon(true);
+            this.capacity = capacity;
+        }
+
+        private boolean offer(Delivery delivery, boolean wait) throws InterruptedException {
+            lock.lockInterruptibly();
+            try {
+                while (size >= capacity) {
+                    if (!wait) {
+                        return false;
+                    }
+                    notFull.await();
+                }
+                long now = System.currentTimeMillis();
+                String channel = delivery.message.getChannel();
+                ChannelQueue channelQueue = channels.get(channel);
+                if (channelQueue == null) {
+                    channelQueue = new ChannelQueue(channel, now);
+                    channels.put(channel, channelQueue);
+                }
+                channelQueue.add(delivery, now);
+                size++;
+                notEmpty.signal();
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private int size() {
+            lock.lock();
+            try {
+                return size;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void collectStats(Map<String, Integer> depths, Map<String, Long> throttleTimes) {
+            lock.lock();
+            try {
+                for (ChannelQueue channelQueue : channels.values()) {
+                    if (depths != null) {
+                        depths.put(channelQueue.channel, channelQueue.deliveries.size());
+                    }
+                    if (throttleTimes != null) {
+                        throttleTimes.put(channelQueue.channel, channelQueue.throttleTime);
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                ChannelQueue channelQueue;
+                List<Delivery> polled;
+                lock.lock();
+                try {
+                    channelQueue = awaitReadyChannel();
+                    if (channelQueue == null) {
+                        return;
+                    }
+                    polled = channelQueue.pollBatch(System.currentTimeMillis());
+                    //channel goes to the end, so other ready channels are served first next time
+                    channels.remove(channelQueue.channel);
+                    channels.put(channelQueue.channel, channelQueue);
+                } finally {
+                    lock.unlock();
+                }
+                deliver(channelQueue, polled);
+            }
+        }
+
+        /**
+         * @return channel which message may be delivered now, null if sender is closed and has nothing to deliver
+         * or it was interrupted
+         */
+        private ChannelQueue awaitReadyChannel() {
+            while (!closed || size > 0) {
+                long now = System.currentTimeMillis();
+                long wait = POLL_INTERVAL;
+                Iterator<ChannelQueue> iterator = channels.values().iterator();
+                while (iterator.hasNext()) {
+                    ChannelQueue channelQueue = iterator.next();
+                    if (channelQueue.deliveries.isEmpty()) {
+                        continue;
+                    }
+                    long delay = channelQueue.tryAcquire(now);
+                    if (delay == 0) {
+                        return channelQueue;
+                    }
+                    wait = Math.min(wait, delay);
+                }
+                try {
+                    notEmpty.await(wait, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    return null;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * @param polled messages of the channel delivered with a single request
+         */
+        private void deliver(ChannelQueue channelQueue, List<Delivery> polled) {
+            SlackMessage message = toMessage(polled);
+            Delivery delivery = polled.get(0);
+            long delay = -1;
+            try {
+                requests.incrementAndGet();
+                message.dequeued(System.currentTimeMillis());
+                messageSender.send(message);
+                delivered.addAndGet(polled.size());
+                recordLatency(polled);
+                log.debug("Delivered message about {} to channel {}, queue: {}", message.getSubject(),
+                        message.getChannel(), QueuedMessageSender.this);
+            } catch (SlackRateLimitException ex) {
+                rateLimited.incrementAndGet();
+                delay = retryAfterDelay(ex.getRetryAfter());
+                log.info("Channel {} is rate limited, message about {} will be posted again in {} ms",
+                        message.getChannel(), message.getSubject(), delay);
+            } catch (Exception ex) {
+                for (Delivery polledDelivery : polled) {
+                    polledDelivery.attempts++;
+                }
+                if (delivery.attempts < maxAttempts) {
+                    retried.incrementAndGet();
+                    delay = retryDelay(delivery.attempts);
+                    log.warn("Failed to post message about " + message.getSubject() + " to channel "
+                            + message.getChannel() + ", will try again in " + delay + " ms", ex);
+                } else {
+                    failed.addAndGet(polled.size());
+                    recordLatency(polled);
+                    log.error("Failed to post message about " + message.getSubject() + " to channel "
+                            + message.getChannel(), ex);
+                }
+            }
+
+            lock.lock();
+            try {
+                long now = System.currentTimeMillis();
+                if (delay >= 0) {
+                    channelQueue.retry(polled, now, delay);
+                } else {
+                    channelQueue.attempted(now);
+                    size -= polled.size();
+                    notFull.signalAll();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private SlackMessage toMessage(List<Delivery> polled) {
+            if (polled.size() == 1) {
+                return polled.get(0).message;
+            }
+            SlackMessageBatch batch = new SlackMessageBatch(polled.size());
+            for (Delivery delivery : polled) {
+                batch.add(delivery.message);
+            }
+            return batch.toMessage();
+        }
+
+        private void recordLatency(List<Delivery> polled) {
+            for (Delivery delivery : polled) {
+                deliveryLatency.recordSince(delivery.enqueueTime);
+            }
+        }
+    }
+}
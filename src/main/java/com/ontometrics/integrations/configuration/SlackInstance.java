@@ -1,9 +1,5 @@
 package com.ontometrics.integrations.configuration;
 
-import com.fasterxml.jackson.databind.node.ArrayNode;
-import com.fasterxml.jackson.databind.node.JsonNodeFactory;
-import com.fasterxml.jackson.databind.node.ObjectNode;
-import com.google.common.base.Function;
 import com.google.common.base.Predicate;
 import com.google.common.base.Predicates;
 import com.google.common.collect.ImmutableList;
@@ -18,13 +14,13 @@ import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 
-import javax.ws.rs.client.*;
-import javax.ws.rs.core.MediaType;
-import javax.ws.rs.core.Response;
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
 import java.util.List;
-import java.util.UUID;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -38,33 +34,79 @@ public class SlackInstance implements ChatServer {
 
     private Logger log = getLogger(SlackInstance.class);
 
-    private static final String USERNAME_KEY = "username";
-    private static final String ICON_URL_KEY = "icon_url";
-    private static final String USERNAME = "YouTrack";
     public static final String DEFAULT_ICON_URL = "https://www.jetbrains.com/youtrack/tools/img/youtrack.png";
-    private static final String BASE_URL = "https://hooks.slack.com";
-    private static final String TEXT_KEY = "text";
-    private static final String LINK_NAMES_KEY = "link_names";
-    private static final String CHANNEL_KEY = "channel";
 
     private final ChannelMapper channelMapper;
-    private final String iconUrl;
+    private final SlackPayloadWriter payloadWriter;
+    private final MessageSender messageSender;
+    private final SlackOutbox outbox;
+    private final NotificationLatency notificationLatency;
+    private final String destination;
     private static final String[] IMAGE_EXTENSIONS = new String[]{"jpg", "jpeg", "gif", "png", "bmp"};
 
     public SlackInstance(Builder builder) {
         channelMapper = builder.channelMapper;
-        iconUrl = builder.icon;
+        payloadWriter = new SlackPayloadWriter(builder.icon);
+        messageSender = builder.messageSender != null ? builder.messageSender : new SlackWebhookClient();
+        outbox = builder.outbox;
+        notificationLatency = builder.notificationLatency;
+        destination = builder.destination;
     }
 
     public static class Builder {
 
         private ChannelMapper channelMapper;
         private String icon;
+        private MessageSender messageSender;
+        private SlackOutbox outbox;
+        private NotificationLatency notificationLatency;
+        private String destination;
         public Builder channelMapper(ChannelMapper channelMapper){
             this.channelMapper = channelMapper;
             return this;
         }
 
+        /**
+         * @param messageSender sender which delivers formatted messages, by default messages are posted
+         *                      to Slack webhook right away
+         * @return this, for chaining
+         */
+        public Builder messageSender(MessageSender messageSender) {
+            this.messageSender = messageSender;
+            return this;
+        }
+
+        /**
+         * @param outbox outbox which keeps messages until they are delivered, messageSender is expected to remove
+         *               delivered messages from it (see {@link SlackOutbox#removingDelivered(MessageSender)})
+         * @return this, for chaining
+         */
+        public Builder outbox(SlackOutbox outbox) {
+            this.outbox = outbox;
+            return this;
+        }
+
+        /**
+         * @param notificationLatency latency histograms messages are traced to, optional
+         * @return this, for chaining
+         */
+        public Builder notificationLatency(NotificationLatency notificationLatency) {
+            this.notificationLatency = notificationLatency;
+            return this;
+        }
+
+        /**
+         * @param notificationLatency latency histograms messages are traced to
+         * @param destination         name of this destination, messages of every destination are recorded
+         *                            to their own histograms
+         * @return this, for chaining
+         */
+        public Builder notificationLatency(NotificationLatency notificationLatency, String destination) {
+            this.notificationLatency = notificationLatency;
+            this.destination = destination;
+            return this;
+        }
+
         public SlackInstance build(){
             return new SlackInstance(this);
         }
@@ -78,46 +120,56 @@ public class SlackInstance implements ChatServer {
     @Override
     public void postIssueCreation(Issue issue) {
         String channel = channelMapper.getChannel(issue);
-        postMessageToSlack(createSlackMessage(buildNewIssueMessage(issue), channel));
+        StringBuilder text = appendNewIssueMessage(new StringBuilder(estimateSize(issue.getDescription())), issue);
+        postMessageToSlack(payloadWriter.content(text, Collections.<SlackPayloadWriter.Image>emptyList()),
+                channel, issue, issue.getCreated());
     }
 
     @Override
     public void post(IssueEditSession issueEditSession){
         String channel = channelMapper.getChannel(issueEditSession.getIssue());
-        String message = buildSessionMessage(issueEditSession);
-        ObjectNode slackMessage = createSlackMessage(message, channel);
-        addImageAttachments(slackMessage, issueEditSession);
+        String comment = issueEditSession.getComment() != null ? issueEditSession.getComment().getText() : null;
+        StringBuilder text = appendSessionMessage(new StringBuilder(estimateSize(comment)), issueEditSession);
+        SlackPayloadWriter.Content content = payloadWriter.content(text, getImageAttachments(issueEditSession));
+        if (!issueEditSession.getAttachments().isEmpty()) {
+            //ids of all attachments of the message are committed together
+            MapDb.instance().getGroupCommitter().changed();
+        }
 
-        postMessageToSlack(slackMessage);
+        postMessageToSlack(content, channel, issueEditSession.getIssue(), issueEditSession.getUpdated());
     }
 
-    private void addImageAttachments(ObjectNode slackMessage, IssueEditSession issueEditSession)  {
+    /**
+     * @return initial capacity of the message text builder, enough for the text of the given size with the header
+     */
+    private static int estimateSize(String text) {
+        return (text != null ? text.length() : 0) + 512;
+    }
+
+    private List<SlackPayloadWriter.Image> getImageAttachments(IssueEditSession issueEditSession)  {
         List<AttachmentEvent> imageAttachments = ImmutableList.copyOf(Iterables.filter(issueEditSession.getAttachments(),
                 new ImageAttachmentPredicate()));
 
-        if (!imageAttachments.isEmpty()) {
-            ArrayNode attachmentsArray = slackMessage.arrayNode();
-            for (AttachmentEvent attachmentEvent : imageAttachments) {
-                String attachmentId = resolveAttachmentId(attachmentEvent);
-                if (attachmentId != null) {
-                    String imageUrl = buildAttachmentUrl(attachmentEvent);
-                    attachmentsArray.add(JsonNodeFactory.instance.objectNode()
-                            .put("image_url", imageUrl)
-                            .put("text", MessageFormatter.getNamedLink(imageUrl, attachmentEvent.getName())));
-                }
-            }
-            if (attachmentsArray.size() != 0) {
-                slackMessage.set("attachments", attachmentsArray);
-                MapDb.instance().getDb().commit();
+        if (imageAttachments.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<SlackPayloadWriter.Image> images = new ArrayList<>(imageAttachments.size());
+        for (AttachmentEvent attachmentEvent : imageAttachments) {
+            String attachmentId = resolveAttachmentId(attachmentEvent);
+            String imageUrl = attachmentId != null ? buildAttachmentUrl(attachmentEvent, attachmentId) : null;
+            if (imageUrl != null) {
+                images.add(new SlackPayloadWriter.Image(imageUrl, MessageFormatter.appendNamedLink(new StringBuilder(),
+                        imageUrl, attachmentEvent.getName()).toString()));
             }
         }
+        return images;
     }
 
-    private String buildAttachmentUrl(AttachmentEvent attachment) {
-        String attachmentId = resolveAttachmentId(attachment);
+    private String buildAttachmentUrl(AttachmentEvent attachment, String attachmentId) {
         try {
-            return String.format("%s/youtrack-image?rid=%s&name=%s", ConfigurationFactory.get().getString("PROP.APP_EXTERNAL_URL"),
-                    URLEncoder.encode(attachmentId, "UTF-8"), URLEncoder.encode(attachment.getName(), "UTF-8"));
+            return new StringBuilder(ConfigurationFactory.get().getString("PROP.APP_EXTERNAL_URL"))
+                    .append("/youtrack-image?rid=").append(URLEncoder.encode(attachmentId, "UTF-8"))
+                    .append("&name=").append(URLEncoder.encode(attachment.getName(), "UTF-8")).toString();
         } catch (UnsupportedEncodingException e) {
             log.error("Failed to encode attachment id " + attachmentId);
             return null;
@@ -126,8 +178,11 @@ public class SlackInstance implements ChatServer {
 
     private static final Pattern FILE_ID_EXTRACTOR = Pattern.compile(".*/api/files/(.*)(\\?.*|^)");
 
+    /**
+     * @return random id of the attachment minted once per YouTrack file id, the same file gets the same id while
+     * its entry is stored
+     */
     private String resolveAttachmentId(AttachmentEvent attachmentEvent) {
-        String uid;
         String fileId;
         try {
             Matcher matcher = FILE_ID_EXTRACTOR.matcher(attachmentEvent.getFileUrl());
@@ -137,7 +192,6 @@ public class SlackInstance implements ChatServer {
                     throw new RuntimeException("There is no attachment id extracted from url " + attachmentEvent
                             .getFileUrl());
                 }
-                uid = UUID.randomUUID().toString();
             } else {
                 log.info("Failed to extract file id from " + attachmentEvent.getFileUrl());
                 return null;
@@ -147,26 +201,63 @@ public class SlackInstance implements ChatServer {
                     .getFileUrl(), e);
             return null;
         }
-        MapDb.instance().getAttachmentMap().put(uid, fileId);
-        return uid;
+        return MapDb.instance().getAttachmentStore().add(fileId);
     }
 
-    private ObjectNode createSlackMessage(String message, String channel) {
-        return JsonNodeFactory.instance.objectNode().put(USERNAME_KEY, USERNAME)
-                .put(ICON_URL_KEY, iconUrl).put(CHANNEL_KEY, channel)
-		.put(LINK_NAMES_KEY, 1)
-                .put(TEXT_KEY, processMessage(message));
+    /**
+     * @param editTime time of the edit the message is about, used to trace latency of the message
+     */
+    private void postMessageToSlack(SlackPayloadWriter.Content content, String channel, Issue issue,
+                                    Date editTime) {
+        String subject = issue.getPrefix() + "-" + issue.getId();
+        SlackMessage message = outbox != null ? outbox.add(channel, subject, content)
+                : new SlackMessage(0, channel, subject, content);
+        if (notificationLatency != null) {
+            NotificationTrace trace = notificationLatency.startTrace(destination, issue.getPrefix(),
+                    editTime != null ? editTime.getTime() : null);
+            if (trace != null) {
+                trace.queued(System.currentTimeMillis());
+                message.setTrace(trace);
+            }
+        }
+        try {
+            messageSender.send(message);
+        } catch (IOException ex) {
+            throw new RuntimeException("Failed to post message to Slack", ex);
+        }
     }
 
-    private void postMessageToSlack(ObjectNode messageObj) {
-        log.debug("Posting message: {}", messageObj);
-
-        Client client = ClientBuilder.newClient();
-        WebTarget slackApi = client.target(BASE_URL).path(ConfigurationFactory.get().getString("PROP.SLACK_WEBHOOK_PATH"));
-        Invocation.Builder invocationBuilder = slackApi.request(MediaType.APPLICATION_JSON_TYPE);
-        Response response = invocationBuilder.post(Entity.json(messageObj.toString()));
+    /**
+     * Waits until messages posted so far are committed to the outbox
+     */
+    @Override
+    public void flush() {
+        if (outbox != null) {
+            outbox.sync();
+        }
+    }
 
-        log.debug("response code: {} response: {}", response.getStatus(), response.readEntity(String.class));
+    /**
+     * Sends messages left in the outbox by the previous run
+     *
+     * @return number of messages sent
+     */
+    public int sendPending() {
+        if (outbox == null) {
+            return 0;
+        }
+        List<SlackMessage> pending = outbox.getPending();
+        if (!pending.isEmpty()) {
+            log.info("Sending {} messages left in the outbox", pending.size());
+        }
+        for (SlackMessage message : pending) {
+            try {
+                messageSender.send(message);
+            } catch (IOException ex) {
+                log.error("Failed to send " + message, ex);
+            }
+        }
+        return pending.size();
     }
 
     @Override
@@ -174,15 +265,15 @@ public class SlackInstance implements ChatServer {
         return channelMapper;
     }
 
-
-    private String processMessage(String message) {
-        return StringUtils.replaceChars(message, "{}", "[]");
+    protected String buildSessionMessage(IssueEditSession session) {
+        return appendSessionMessage(new StringBuilder(), session).toString();
     }
 
-    protected String buildSessionMessage(IssueEditSession session) {
-        StringBuilder s = new StringBuilder(String.format("*%s*", session.getUpdater()));
+    private StringBuilder appendSessionMessage(StringBuilder s, IssueEditSession session) {
+        s.append('*').append(session.getUpdater()).append('*');
         String action = session.getComment() != null && !session.getComment().isDeleted() ? "commented on " : "updated";
-        s.append(String.format(" %s %s: ", action, MessageFormatter.getIssueLink(session.getIssue())));
+        s.append(' ').append(action).append(' ');
+        MessageFormatter.appendIssueLink(s, session.getIssue()).append(": ");
         if (session.getIssue().getTitle()!=null) {
             s.append(session.getIssue().getTitle());
         } else {
@@ -198,16 +289,19 @@ public class SlackInstance implements ChatServer {
 
         List<AttachmentEvent> nonImageAttachments = getNonImageAttachments(session);
         if (!nonImageAttachments.isEmpty()) {
-            Iterable<String> attachmentLinks = Iterables.transform(nonImageAttachments, new Function<AttachmentEvent, String>() {
-                @Override
-                public String apply(AttachmentEvent attachment) {
-                    return MessageFormatter.getNamedLink(buildAttachmentUrl(attachment), attachment.getName());
+            s.append("attached ");
+            for (int i = 0; i < nonImageAttachments.size(); i++) {
+                AttachmentEvent attachment = nonImageAttachments.get(i);
+                if (i > 0) {
+                    s.append(", ");
                 }
-            });
-            s.append("attached ").append(StringUtils.join(attachmentLinks.iterator(), ", "));
+                String attachmentId = resolveAttachmentId(attachment);
+                MessageFormatter.appendNamedLink(s, attachmentId != null ? buildAttachmentUrl(attachment, attachmentId)
+                        : attachment.getFileUrl(), attachment.getName());
+            }
         }
 
-        return s.toString();
+        return s;
     }
 
     private ImmutableList<AttachmentEvent> getNonImageAttachments(IssueEditSession session) {
@@ -233,16 +327,26 @@ public class SlackInstance implements ChatServer {
     }
 
     public String buildNewIssueMessage(Issue newIssue){
-        return String.format("*%s* created %s: %s%s%s", newIssue.getCreator(), MessageFormatter.getIssueLink(newIssue), newIssue.getTitle(), System.lineSeparator(), newIssue.getDescription());
+        return appendNewIssueMessage(new StringBuilder(), newIssue).toString();
+    }
+
+    private StringBuilder appendNewIssueMessage(StringBuilder s, Issue newIssue) {
+        s.append('*').append(newIssue.getCreator()).append("* created ");
+        return MessageFormatter.appendIssueLink(s, newIssue).append(": ").append(newIssue.getTitle())
+                .append(System.lineSeparator()).append(newIssue.getDescription());
     }
 
+    /**
+     * Message templates appended straight to the message text
+     */
     private static class MessageFormatter {
-        static String getIssueLink(Issue issue){
-            return String.format("<%s|%s-%d>", issue.getLink(), issue.getPrefix(), issue.getId());
+        static StringBuilder appendIssueLink(StringBuilder s, Issue issue){
+            return s.append('<').append(issue.getLink()).append('|').append(issue.getPrefix()).append('-')
+                    .append(issue.getId()).append('>');
         }
 
-        static String getNamedLink(String url, String text){
-            return String.format("<%s|%s>", url, text);
+        static StringBuilder appendNamedLink(StringBuilder s, String url, String text){
+            return s.append('<').append(url).append('|').append(text).append('>');
         }
     }
 
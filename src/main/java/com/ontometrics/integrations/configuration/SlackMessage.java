@@ -0,0 +1,244 @@
+package com.ontometrics.integrations.configuration;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Message formatted for Slack webhook: json payload and the channel it is posted to.
+ * <p>
+ * Message written by {@link com.ontometrics.integrations.configuration.SlackPayloadWriter} keeps its text and
+ * images as {@link SlackPayloadWriter.Content}, only such messages can be combined with others. Outbox stores the
+ * content of these messages instead of their payload, their payload is written only when the message is sent
+ * (see {@link #writePayload(java.io.OutputStream)}).
+ * </p>
+ * <p>
+ * Message kept in {@link com.ontometrics.integrations.configuration.SlackOutbox} has positive id, messages
+ * which are not stored have id 0. Message combining several messages (see
+ * {@link com.ontometrics.integrations.configuration.SlackMessageBatch}) keeps them as its parts.
+ * </p>
+ * SlackMessage.java
+ */
+public class SlackMessage {
+
+    private final long id;
+    private final String channel;
+    private final String subject;
+    /**
+     * Json payload of the message, null if it is written from the content
+     */
+    private final String payload;
+    private final SlackPayloadWriter.Content content;
+    private final List<SlackMessage> parts;
+    /**
+     * Latency trace of the message, not stored in the outbox
+     */
+    private volatile NotificationTrace trace;
+
+    /**
+     * @param id      id of the message in the outbox, 0 if it is not stored
+     * @param channel channel the message is posted to
+     * @param subject what the message is about (e.g. issue key), used in logs
+     * @param payload json payload of the webhook request
+     */
+    public SlackMessage(long id, String channel, String subject, String payload) {
+        this.id = id;
+        this.channel = channel;
+        this.subject = subject;
+        this.payload = payload;
+        content = null;
+        parts = Collections.emptyList();
+    }
+
+    /**
+     * @param id      id of the message in the outbox, 0 if it is not stored
+     * @param channel channel the message is posted to
+     * @param subject what the message is about (e.g. issue key), used in logs
+     * @param content text and images of the message, payload is written from it
+     */
+    public SlackMessage(long id, String channel, String subject, SlackPayloadWriter.Content content) {
+        this(id, channel, subject, content, Collections.<SlackMessage>emptyList());
+    }
+
+    /**
+     * @param parts messages combined by this message
+     */
+    SlackMessage(String channel, String subject, SlackPayloadWriter.Content content, List<SlackMessage> parts) {
+        this(0, channel, subject, content, parts);
+    }
+
+    private SlackMessage(long id, String channel, String subject, SlackPayloadWriter.Content content,
+                         List<SlackMessage> parts) {
+        this.id = id;
+        this.channel = channel;
+        this.subject = subject;
+        this.content = content;
+        this.parts = parts;
+        payload = null;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getChannel() {
+        return channel;
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    /**
+     * @return json payload of the message, written from the content on every call if the message has content
+     */
+    public String getPayload() {
+        return payload != null ? payload : SlackPayloadWriter.write(channel, content);
+    }
+
+    /**
+     * Writes json payload of the message as UTF-8 to the stream, payload of the message with content is not
+     * built in memory
+     *
+     * @param out stream the payload is written to, it is not closed
+     * @throws IOException if it fails to write to the stream
+     */
+    public void writePayload(OutputStream out) throws IOException {
+        if (payload != null) {
+            out.write(payload.getBytes(StandardCharsets.UTF_8));
+        } else {
+            SlackPayloadWriter.write(channel, content, out);
+        }
+    }
+
+    /**
+     * @return text and images of the message, null if the message has only its payload
+     */
+    public SlackPayloadWriter.Content getContent() {
+        return content;
+    }
+
+    /**
+     * @return messages combined by this message, empty list if it's a single message
+     */
+    public List<SlackMessage> getParts() {
+        return parts;
+    }
+
+    public NotificationTrace getTrace() {
+        return trace;
+    }
+
+    void setTrace(NotificationTrace trace) {
+        this.trace = trace;
+    }
+
+    /**
+     * Reports attempt to deliver the message (and its parts) to their traces
+     */
+    void dequeued(long time) {
+        if (trace != null) {
+            trace.dequeued(time);
+        }
+        for (SlackMessage part : parts) {
+            part.dequeued(time);
+        }
+    }
+
+    /**
+     * Reports acknowledgement of the message (and its parts) by Slack to their traces
+     */
+    void acknowledged(long time) {
+        if (trace != null) {
+            trace.acknowledged(time);
+        }
+        for (SlackMessage part : parts) {
+            part.acknowledged(time);
+        }
+    }
+
+    byte[] toBytes() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writeString(out, channel);
+            writeString(out, subject);
+            if (content == null) {
+                writeText(out, payload);
+            } else {
+                //negative length of the payload marks content written instead of it
+                out.writeInt(-1);
+                writeString(out, content.getIconUrl());
+                writeText(out, content.getText());
+                out.writeInt(content.getImages().size());
+                for (SlackPayloadWriter.Image image : content.getImages()) {
+                    writeString(out, image.getUrl());
+                    writeString(out, image.getText());
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static SlackMessage fromBytes(long id, byte[] value) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(value))) {
+            String channel = readString(in);
+            String subject = readString(in);
+            int payloadLength = in.readInt();
+            if (payloadLength >= 0) {
+                return new SlackMessage(id, channel, subject, readText(in, payloadLength));
+            }
+            String iconUrl = readString(in);
+            String text = readText(in, in.readInt());
+            int imageCount = in.readInt();
+            List<SlackPayloadWriter.Image> images = new ArrayList<>(imageCount);
+            for (int i = 0; i < imageCount; i++) {
+                images.add(new SlackPayloadWriter.Image(readString(in), readString(in)));
+            }
+            return new SlackMessage(id, channel, subject, new SlackPayloadWriter.Content(iconUrl, text, images));
+        }
+    }
+
+    /**
+     * Writes text which may exceed the limit of {@link DataOutputStream#writeUTF(String)}
+     */
+    private static void writeText(DataOutputStream out, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readText(DataInputStream in, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    @Override
+    public String toString() {
+        return "SlackMessage{" +
+                "id=" + id +
+                ", channel='" + channel + '\'' +
+                ", subject='" + subject + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,99 @@
+package com.ontometrics.integrations.configuration;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Messages of the same channel packed into a single webhook payload: texts of the messages are joined,
+ * images are concatenated, icon is taken from the first message.
+ * <p>
+ * Batch combines {@link SlackPayloadWriter.Content} of the messages and writes the payload once with
+ * {@link SlackPayloadWriter}, payloads of the messages are not parsed. Message which has only its payload (see
+ * {@link SlackMessage#getContent()}) is not combined with others.
+ * </p>
+ * <p>
+ * Batch does not accept a message which would make it exceed the maximum number of messages, Slack text length
+ * or attachment count limits. The first message is always accepted.
+ * </p>
+ * SlackMessageBatch.java
+ */
+public class SlackMessageBatch {
+
+    /**
+     * Maximum length of the message text, Slack truncates longer texts
+     */
+    public static final int MAX_TEXT_LENGTH = 40000;
+    /**
+     * Maximum number of attachments of the message, Slack rejects messages with more attachments
+     */
+    public static final int MAX_ATTACHMENTS = 100;
+
+    private static final String SEPARATOR = "\n";
+
+    private final int maxMessages;
+    private final List<SlackMessage> messages = new ArrayList<>();
+    private final StringBuilder text = new StringBuilder();
+    private final List<SlackPayloadWriter.Image> images = new ArrayList<>();
+
+    /**
+     * @param maxMessages maximum number of messages in the batch
+     */
+    public SlackMessageBatch(int maxMessages) {
+        this.maxMessages = maxMessages;
+    }
+
+    /**
+     * @return true if message was added to the batch, false if the batch is full or message can't be batched
+     */
+    public boolean add(SlackMessage message) {
+        SlackPayloadWriter.Content content = message.getContent();
+        if (messages.isEmpty()) {
+            messages.add(message);
+            if (content != null) {
+                text.append(content.getText());
+                images.addAll(content.getImages());
+            }
+            return true;
+        }
+        if (messages.size() >= maxMessages || !channelMatches(message) || content == null
+                || messages.get(0).getContent() == null) {
+            return false;
+        }
+        if (text.length() + SEPARATOR.length() + content.getText().length() > MAX_TEXT_LENGTH
+                || images.size() + content.getImages().size() > MAX_ATTACHMENTS) {
+            return false;
+        }
+        text.append(SEPARATOR).append(content.getText());
+        images.addAll(content.getImages());
+        messages.add(message);
+        return true;
+    }
+
+    private boolean channelMatches(SlackMessage message) {
+        String channel = messages.get(0).getChannel();
+        return channel == null ? message.getChannel() == null : channel.equals(message.getChannel());
+    }
+
+    public int size() {
+        return messages.size();
+    }
+
+    public List<SlackMessage> getMessages() {
+        return Collections.unmodifiableList(messages);
+    }
+
+    /**
+     * @return the only message of the batch or message combining all messages of the batch
+     */
+    public SlackMessage toMessage() {
+        if (messages.size() == 1) {
+            return messages.get(0);
+        }
+        SlackMessage first = messages.get(0);
+        SlackPayloadWriter.Content content = new SlackPayloadWriter.Content(first.getContent().getIconUrl(),
+                text.toString(), new ArrayList<>(images));
+        return new SlackMessage(first.getChannel(), first.getSubject() + " and " + (messages.size() - 1) + " more",
+                content, messages);
+    }
+}
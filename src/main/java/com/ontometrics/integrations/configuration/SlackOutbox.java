@@ -0,0 +1,107 @@
+package com.ontometrics.integrations.configuration;
+
+import com.ontometrics.db.GroupCommitter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Persistent outbox of formatted Slack messages, see {@link com.ontometrics.db.MapDb#getSlackOutboxMap()}.
+ * Message is stored before it is sent and removed once Slack accepts it, so messages which were not delivered
+ * (because of failure or shutdown) can be sent again after restart.
+ * <p>
+ * Writes are committed in groups by {@link com.ontometrics.db.GroupCommitter}, {@link #sync()} waits until
+ * stored messages are committed. Delivery is at-least-once: message which was accepted by Slack right before
+ * a crash may be sent again.
+ * </p>
+ * SlackOutbox.java
+ */
+public class SlackOutbox {
+
+    private static final Logger log = LoggerFactory.getLogger(SlackOutbox.class);
+
+    private final ConcurrentNavigableMap<Long, byte[]> store;
+    private final GroupCommitter committer;
+    private final AtomicLong lastId;
+
+    /**
+     * @param store     persistent map which keeps the messages by id
+     * @param committer commits changes of the store
+     */
+    public SlackOutbox(ConcurrentNavigableMap<Long, byte[]> store, GroupCommitter committer) {
+        this.store = store;
+        this.committer = committer;
+        lastId = new AtomicLong(store.isEmpty() ? 0 : store.lastKey());
+    }
+
+    /**
+     * Stores the message, it is committed asynchronously (see {@link #sync()})
+     *
+     * @return stored message with assigned id
+     */
+    public SlackMessage add(String channel, String subject, SlackPayloadWriter.Content content) {
+        SlackMessage message = new SlackMessage(lastId.incrementAndGet(), channel, subject, content);
+        store.put(message.getId(), message.toBytes());
+        committer.changed();
+        return message;
+    }
+
+    /**
+     * Removes the message delivered to Slack (all parts of combined message)
+     */
+    public void remove(SlackMessage message) {
+        for (SlackMessage part : message.getParts()) {
+            remove(part);
+        }
+        if (message.getId() > 0 && store.remove(message.getId()) != null) {
+            committer.changed();
+        }
+    }
+
+    /**
+     * Waits until stored messages are committed
+     */
+    public void sync() {
+        committer.awaitCommit();
+    }
+
+    /**
+     * @return messages which have not been delivered yet in order they were added
+     */
+    public List<SlackMessage> getPending() {
+        List<SlackMessage> messages = new ArrayList<>();
+        for (Map.Entry<Long, byte[]> entry : store.entrySet()) {
+            try {
+                messages.add(SlackMessage.fromBytes(entry.getKey(), entry.getValue()));
+            } catch (IOException ex) {
+                log.warn("Failed to read message " + entry.getKey() + " from outbox, removing it", ex);
+                store.remove(entry.getKey());
+            }
+        }
+        return messages;
+    }
+
+    public int size() {
+        return store.size();
+    }
+
+    /**
+     * @param messageSender sender which delivers messages
+     * @return sender which removes message from the outbox once it is delivered by messageSender
+     */
+    public MessageSender removingDelivered(final MessageSender messageSender) {
+        return new MessageSender() {
+            @Override
+            public void send(SlackMessage message) throws IOException {
+                messageSender.send(message);
+                remove(message);
+            }
+        };
+    }
+}
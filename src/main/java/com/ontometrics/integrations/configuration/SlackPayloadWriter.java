@@ -0,0 +1,178 @@
+package com.ontometrics.integrations.configuration;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Writes payload of Slack webhook message with {@link com.fasterxml.jackson.core.JsonGenerator}: message text is
+ * escaped straight into the payload, without building a tree of JSON nodes.
+ * <p>
+ * Text and attachments of the message are kept as {@link Content} by {@link SlackMessage}, so messages can be
+ * combined (see {@link SlackMessageBatch}) and written again without parsing their payloads. Curly braces of the
+ * text are replaced with square ones.
+ * </p>
+ * SlackPayloadWriter.java
+ */
+public class SlackPayloadWriter {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private static final String USERNAME_KEY = "username";
+    private static final String ICON_URL_KEY = "icon_url";
+    private static final String USERNAME = "YouTrack";
+    private static final String TEXT_KEY = "text";
+    private static final String LINK_NAMES_KEY = "link_names";
+    private static final String CHANNEL_KEY = "channel";
+    private static final String ATTACHMENTS_KEY = "attachments";
+    private static final String IMAGE_URL_KEY = "image_url";
+
+    /**
+     * Size of the payload besides the text and attachments
+     */
+    private static final int ENVELOPE_SIZE = 256;
+
+    private final String iconUrl;
+
+    /**
+     * @param iconUrl url of the icon shown with the messages
+     */
+    public SlackPayloadWriter(String iconUrl) {
+        this.iconUrl = iconUrl;
+    }
+
+    /**
+     * Image shown as an attachment of the message
+     */
+    public static class Image {
+        private final String url;
+        private final String text;
+
+        /**
+         * @param url  url of the image
+         * @param text text shown with the image
+         */
+        public Image(String url, String text) {
+            this.url = url;
+            this.text = text;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public String getText() {
+            return text;
+        }
+    }
+
+    /**
+     * Text and images of the message with the icon it is shown with
+     */
+    public static class Content {
+        private final String iconUrl;
+        private final String text;
+        private final List<Image> images;
+
+        /**
+         * @param iconUrl url of the icon shown with the message
+         * @param text    text of the message
+         * @param images  images attached to the message, may be empty
+         */
+        public Content(String iconUrl, String text, List<Image> images) {
+            this.iconUrl = iconUrl;
+            this.text = text;
+            this.images = images == null ? Collections.<Image>emptyList() : images;
+        }
+
+        public String getIconUrl() {
+            return iconUrl;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public List<Image> getImages() {
+            return images;
+        }
+    }
+
+    /**
+     * @param text   text of the message, its curly braces are replaced in place
+     * @param images images attached to the message, may be empty
+     * @return content of the message shown with the icon of this writer
+     */
+    public Content content(StringBuilder text, List<Image> images) {
+        replaceBraces(text);
+        return new Content(iconUrl, text.toString(), images);
+    }
+
+    /**
+     * @param channel channel the message is posted to
+     * @param content content of the message
+     * @return payload of the message
+     */
+    public static String write(String channel, Content content) {
+        StringWriter writer = new StringWriter(content.text.length() + ENVELOPE_SIZE * (content.images.size() + 1));
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(writer)) {
+            write(generator, channel, content);
+        } catch (IOException ex) {
+            //StringWriter does not throw
+            throw new IllegalStateException("Failed to write Slack message", ex);
+        }
+        return writer.toString();
+    }
+
+    /**
+     * Writes payload of the message as UTF-8 straight to the stream, without building it in memory
+     *
+     * @param channel channel the message is posted to
+     * @param content content of the message
+     * @param out     stream the payload is written to, it is not closed
+     * @throws IOException if it fails to write to the stream
+     */
+    public static void write(String channel, Content content, OutputStream out) throws IOException {
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(out, JsonEncoding.UTF8)
+                .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)) {
+            write(generator, channel, content);
+        }
+    }
+
+    private static void write(JsonGenerator generator, String channel, Content content) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField(USERNAME_KEY, USERNAME);
+        generator.writeStringField(ICON_URL_KEY, content.iconUrl);
+        generator.writeStringField(CHANNEL_KEY, channel);
+        generator.writeNumberField(LINK_NAMES_KEY, 1);
+        generator.writeStringField(TEXT_KEY, content.text);
+        if (!content.images.isEmpty()) {
+            generator.writeArrayFieldStart(ATTACHMENTS_KEY);
+            for (Image image : content.images) {
+                generator.writeStartObject();
+                generator.writeStringField(IMAGE_URL_KEY, image.url);
+                generator.writeStringField(TEXT_KEY, image.text);
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+        }
+        generator.writeEndObject();
+    }
+
+    private static void replaceBraces(StringBuilder text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '{') {
+                text.setCharAt(i, '[');
+            } else if (c == '}') {
+                text.setCharAt(i, ']');
+            }
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.ontometrics.integrations.configuration;
+
+import com.ontometrics.util.BadResponseException;
+
+import java.net.URL;
+
+/**
+ * Signal that Slack rejected the message because of rate limit (response code 429)
+ * SlackRateLimitException.java
+ */
+public class SlackRateLimitException extends BadResponseException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long retryAfter;
+
+    /**
+     * @param retryAfter time (in milliseconds) Slack asked to wait before posting again
+     */
+    public SlackRateLimitException(URL url, long retryAfter) {
+        super("Slack rate limit exceeded, retry after " + retryAfter + " ms", url, 429);
+        this.retryAfter = retryAfter;
+    }
+
+    public long getRetryAfter() {
+        return retryAfter;
+    }
+}
@@ -0,0 +1,171 @@
+package com.ontometrics.integrations.configuration;
+
+import com.ontometrics.util.BadResponseException;
+import com.ontometrics.util.HttpConnectionPool;
+import com.ontometrics.util.LatencyHistogram;
+import org.apache.commons.configuration.Configuration;
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.ResponseHandler;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ContentProducer;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.EntityTemplate;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Posts messages to Slack incoming webhook over keep-alive connections. Connections are opened on first post
+ * and kept until {@link #close()}. Payload of the message is written straight to the connection.
+ * SlackWebhookClient.java
+ */
+public class SlackWebhookClient implements MessageSender {
+
+    private static final Logger log = LoggerFactory.getLogger(SlackWebhookClient.class);
+
+    /**
+     * Url of Slack webhooks, webhook path is appended to it
+     */
+    public static final String BASE_URL = "https://hooks.slack.com";
+    private static final int TOO_MANY_REQUESTS = 429;
+    private static final long DEFAULT_RETRY_AFTER = 1000;
+
+    /**
+     * Timeout (in seconds) of establishing a connection to Slack
+     */
+    public static final String PROP_SLACK_CONNECT_TIMEOUT = "PROP.SLACK_CONNECT_TIMEOUT";
+    /**
+     * Maximum period (in seconds) of waiting for Slack response
+     */
+    public static final String PROP_SLACK_READ_TIMEOUT = "PROP.SLACK_READ_TIMEOUT";
+    /**
+     * Maximum number of connections to Slack
+     */
+    public static final String PROP_SLACK_MAX_CONNECTIONS = "PROP.SLACK_MAX_CONNECTIONS";
+
+    private final String webhookUrl;
+
+    /**
+     * Keep-alive connections to Slack, created on first post
+     */
+    private HttpConnectionPool connectionPool;
+    private final LatencyHistogram postLatency = new LatencyHistogram();
+
+    public SlackWebhookClient() {
+        this(null);
+    }
+
+    /**
+     * @param webhookUrl url messages are posted to, by default it's Slack url with "PROP.SLACK_WEBHOOK_PATH" path
+     */
+    public SlackWebhookClient(String webhookUrl) {
+        this.webhookUrl = webhookUrl;
+    }
+
+    /**
+     * @throws SlackRateLimitException if Slack asks to slow down
+     * @throws BadResponseException     if Slack does not accept the message
+     */
+    @Override
+    public void send(final SlackMessage message) throws IOException {
+        if (log.isDebugEnabled()) {
+            log.debug("Posting message: {}", message.getPayload());
+        }
+
+        final String url = getWebhookUrl();
+        HttpPost post = new HttpPost(url);
+        EntityTemplate entity = new EntityTemplate(new ContentProducer() {
+            @Override
+            public void writeTo(OutputStream out) throws IOException {
+                message.writePayload(out);
+            }
+        });
+        entity.setContentType(ContentType.APPLICATION_JSON.toString());
+        post.setEntity(entity);
+        long startTime = System.currentTimeMillis();
+        try {
+            getConnectionPool().getHttpClient().execute(post, new ResponseHandler<Void>() {
+                @Override
+                public Void handleResponse(HttpResponse response) throws IOException {
+                    String content = response.getEntity() == null ? null : EntityUtils.toString(response.getEntity());
+                    int statusCode = response.getStatusLine().getStatusCode();
+                    log.debug("response code: {} response: {}", statusCode, content);
+                    if (statusCode == TOO_MANY_REQUESTS) {
+                        throw new SlackRateLimitException(new URL(url), getRetryAfter(response));
+                    }
+                    if (statusCode / 100 != 2) {
+                        throw new BadResponseException("Got response code " + statusCode + " from Slack: " + content,
+                                new URL(url), statusCode);
+                    }
+                    return null;
+                }
+            });
+            message.acknowledged(System.currentTimeMillis());
+        } finally {
+            postLatency.recordSince(startTime);
+            log.debug("Message posted in {} ms, post latency: {}", System.currentTimeMillis() - startTime, postLatency);
+        }
+    }
+
+    /**
+     * @return value of Retry-After header (in seconds) converted to milliseconds, 1 second if it's not set
+     */
+    private static long getRetryAfter(HttpResponse response) {
+        Header retryAfter = response.getFirstHeader(HttpHeaders.RETRY_AFTER);
+        if (retryAfter != null) {
+            try {
+                return TimeUnit.SECONDS.toMillis(Long.parseLong(retryAfter.getValue().trim()));
+            } catch (NumberFormatException ex) {
+                log.debug("Unsupported Retry-After value {}", retryAfter.getValue());
+            }
+        }
+        return DEFAULT_RETRY_AFTER;
+    }
+
+    private String getWebhookUrl() {
+        if (webhookUrl != null) {
+            return webhookUrl;
+        }
+        return BASE_URL + "/" + ConfigurationFactory.get().getString("PROP.SLACK_WEBHOOK_PATH");
+    }
+
+    private synchronized HttpConnectionPool getConnectionPool() {
+        if (connectionPool == null) {
+            Configuration configuration = ConfigurationFactory.get();
+            int maxConnections = configuration.getInt(PROP_SLACK_MAX_CONNECTIONS, 4);
+            connectionPool = new HttpConnectionPool.Builder()
+                    .name("slack")
+                    .maxConnections(maxConnections)
+                    .maxConnectionsPerRoute(maxConnections)
+                    .connectTimeout((int) TimeUnit.SECONDS.toMillis(configuration.getInt(PROP_SLACK_CONNECT_TIMEOUT, 10)))
+                    .readTimeout((int) TimeUnit.SECONDS.toMillis(configuration.getInt(PROP_SLACK_READ_TIMEOUT, 30)))
+                    .build();
+        }
+        return connectionPool;
+    }
+
+    /**
+     * @return latency of posting messages to Slack
+     */
+    public LatencyHistogram getPostLatency() {
+        return postLatency;
+    }
+
+    /**
+     * Closes connections to Slack
+     */
+    public synchronized void close() {
+        if (connectionPool != null) {
+            log.info("Closing Slack connections, post latency: {}", postLatency);
+            connectionPool.close();
+            connectionPool = null;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.ontometrics.integrations.configuration;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+/**
+ * Append-only file of Slack messages which could not be posted, see
+ * {@link com.ontometrics.integrations.configuration.CircuitBreakerMessageSender}.
+ * <p>
+ * Every record is a message id, length of the message and the message, file is synced after every append.
+ * Records are read in order they were appended by their position, file is truncated once all records are read.
+ * Incomplete record left by a crash is cut off when the file is opened.
+ * </p>
+ * SpillFile.java
+ */
+class SpillFile {
+
+    private static final Logger log = LoggerFactory.getLogger(SpillFile.class);
+
+    private static final int HEADER_SIZE = 8 + 4;
+
+    private final File file;
+    private final RandomAccessFile raf;
+    private int records;
+
+    /**
+     * Message read from the file with the position of the next record
+     */
+    static class Record {
+        final SlackMessage message;
+        final long next;
+
+        private Record(SlackMessage message, long next) {
+            this.message = message;
+            this.next = next;
+        }
+    }
+
+    SpillFile(File file) throws IOException {
+        this.file = file;
+        raf = new RandomAccessFile(file, "rw");
+        long position = 0;
+        Record record;
+        while ((record = read(position)) != null) {
+            records++;
+            position = record.next;
+        }
+        if (position < raf.length()) {
+            log.warn("Cutting off incomplete record at {} of {}", position, file);
+            raf.setLength(position);
+        }
+        if (records > 0) {
+            log.info("Found {} spilled messages in {}", records, file);
+        }
+    }
+
+    synchronized void append(SlackMessage message) throws IOException {
+        byte[] bytes = message.toBytes();
+        ByteArrayOutputStream record = new ByteArrayOutputStream(HEADER_SIZE + bytes.length);
+        try (DataOutputStream out = new DataOutputStream(record)) {
+            out.writeLong(message.getId());
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+        raf.getChannel().write(ByteBuffer.wrap(record.toByteArray()), raf.length());
+        raf.getChannel().force(false);
+        records++;
+    }
+
+    /**
+     * @param position position of the record, 0 for the first record
+     * @return record at the position, null if there is no (complete) record
+     */
+    synchronized Record read(long position) throws IOException {
+        if (position + HEADER_SIZE > raf.length()) {
+            return null;
+        }
+        raf.seek(position);
+        long id = raf.readLong();
+        int length = raf.readInt();
+        if (length < 0 || position + HEADER_SIZE + length > raf.length()) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        try {
+            raf.readFully(bytes);
+        } catch (EOFException ex) {
+            return null;
+        }
+        return new Record(SlackMessage.fromBytes(id, bytes), position + HEADER_SIZE + length);
+    }
+
+    /**
+     * Removes all records
+     */
+    synchronized void truncate() throws IOException {
+        raf.setLength(0);
+        raf.getChannel().force(false);
+        records = 0;
+    }
+
+    /**
+     * @return number of records in the file
+     */
+    synchronized int size() {
+        return records;
+    }
+
+    synchronized void close() {
+        try {
+            raf.close();
+        } catch (IOException ex) {
+            log.warn("Failed to close " + file, ex);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return file.toString();
+    }
+}
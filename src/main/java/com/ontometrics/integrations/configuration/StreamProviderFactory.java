@@ -1,17 +1,52 @@
 package com.ontometrics.integrations.configuration;
 
 import com.ontometrics.integrations.sources.AuthenticatedHttpStreamProvider;
-import com.ontometrics.integrations.sources.StreamProvider;
+import com.ontometrics.integrations.sources.HttpStreamProvider;
+import com.ontometrics.util.HttpConnectionPool;
 import org.apache.commons.configuration.Configuration;
 
+import java.util.concurrent.TimeUnit;
+
 public class StreamProviderFactory {
 
     private static final String CREDENTIALS_AUTH_TYPE = "credentials";
 
-    public static StreamProvider createStreamProvider(Configuration configuration) {
+    /**
+     * Maximum number of connections to YouTrack
+     */
+    public static final String PROP_HTTP_MAX_CONNECTIONS = "PROP.HTTP_MAX_CONNECTIONS";
+    /**
+     * Maximum number of connections to a single YouTrack host
+     */
+    public static final String PROP_HTTP_MAX_CONNECTIONS_PER_ROUTE = "PROP.HTTP_MAX_CONNECTIONS_PER_ROUTE";
+    /**
+     * Timeout (in seconds) of establishing a connection
+     */
+    public static final String PROP_HTTP_CONNECT_TIMEOUT = "PROP.HTTP_CONNECT_TIMEOUT";
+    /**
+     * Maximum period (in seconds) of inactivity while reading the response
+     */
+    public static final String PROP_HTTP_READ_TIMEOUT = "PROP.HTTP_READ_TIMEOUT";
+    /**
+     * Timeout (in seconds) of waiting for a free connection from the pool
+     */
+    public static final String PROP_HTTP_POOL_TIMEOUT = "PROP.HTTP_POOL_TIMEOUT";
+    /**
+     * Time (in seconds) after which idle connection is closed
+     */
+    public static final String PROP_HTTP_IDLE_TIMEOUT = "PROP.HTTP_IDLE_TIMEOUT";
+
+    /**
+     * Connections to YouTrack shared by all stream providers
+     */
+    private static HttpConnectionPool connectionPool;
+
+    public static HttpStreamProvider createStreamProvider(Configuration configuration) {
+        HttpConnectionPool pool = getConnectionPool(configuration);
         if (configuration.getString("PROP.AUTH_TYPE", CREDENTIALS_AUTH_TYPE).equalsIgnoreCase(CREDENTIALS_AUTH_TYPE)) {
             return AuthenticatedHttpStreamProvider.basicAuthenticatedHttpStreamProvider(
-                    configuration.getString("PROP.YOUTRACK_USERNAME"), configuration.getString("PROP.YOUTRACK_PASSWORD")
+                    configuration.getString("PROP.YOUTRACK_USERNAME"), configuration.getString("PROP.YOUTRACK_PASSWORD"),
+                    pool.getHttpClient()
             );
         }
 
@@ -19,9 +54,41 @@ public class StreamProviderFactory {
                 configuration.getString("PROP.HUB_OAUTH_CLIENT_SERVICE_ID"),
                 configuration.getString("PROP.HUB_OAUTH_CLIENT_SERVICE_SECRET"),
                 configuration.getString("PROP.HUB_OAUTH_RESOURCE_SERVER_SERVICE_ID"),
-                configuration.getString("PROP.HUB_URL")
+                configuration.getString("PROP.HUB_URL"),
+                pool.getHttpClient()
         );
     }
 
+    /**
+     * @return pool of connections to YouTrack, created on first call
+     */
+    public static synchronized HttpConnectionPool getConnectionPool(Configuration configuration) {
+        if (connectionPool == null) {
+            connectionPool = new HttpConnectionPool.Builder()
+                    .name("youtrack")
+                    .maxConnections(configuration.getInt(PROP_HTTP_MAX_CONNECTIONS, 32))
+                    .maxConnectionsPerRoute(configuration.getInt(PROP_HTTP_MAX_CONNECTIONS_PER_ROUTE, 16))
+                    .connectTimeout(toMillis(configuration.getInt(PROP_HTTP_CONNECT_TIMEOUT, 10)))
+                    .readTimeout(toMillis(configuration.getInt(PROP_HTTP_READ_TIMEOUT, 60)))
+                    .connectionRequestTimeout(toMillis(configuration.getInt(PROP_HTTP_POOL_TIMEOUT, 30)))
+                    .idleTimeout(toMillis(configuration.getInt(PROP_HTTP_IDLE_TIMEOUT, 30)))
+                    .build();
+        }
+        return connectionPool;
+    }
+
+    private static int toMillis(int seconds) {
+        return (int) TimeUnit.SECONDS.toMillis(seconds);
+    }
+
+    /**
+     * Closes connections to YouTrack
+     */
+    public static synchronized void dispose() {
+        if (connectionPool != null) {
+            connectionPool.close();
+            connectionPool = null;
+        }
+    }
 
 }
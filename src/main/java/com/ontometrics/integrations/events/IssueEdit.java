@@ -71,7 +71,7 @@ public class IssueEdit {
         StringBuilder b = new StringBuilder();
         if (getPriorValue().length() > 0){
             b.append(getField()).append(":");
-            b.append(String.format(" %s -> ", getPriorValue()));
+            b.append(' ').append(getPriorValue()).append(" -> ");
         } else {
             b.append("set ").append(getField()).append(" to ");
         }
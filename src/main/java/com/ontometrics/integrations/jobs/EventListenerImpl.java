@@ -1,18 +1,26 @@
 package com.ontometrics.integrations.jobs;
 
+import com.google.common.util.concurrent.MoreExecutors;
 import com.ontometrics.integrations.configuration.ChatServer;
 import com.ontometrics.integrations.configuration.ConfigurationFactory;
 import com.ontometrics.integrations.configuration.EventProcessorConfiguration;
+import com.ontometrics.integrations.configuration.NotificationLatency;
 import com.ontometrics.integrations.configuration.YouTrackInstanceFactory;
 import com.ontometrics.integrations.events.IssueEditSession;
+import com.ontometrics.integrations.sources.CoalescingStreamProvider;
+import com.ontometrics.integrations.sources.EditSessionCoalescer;
 import com.ontometrics.integrations.sources.EditSessionsExtractor;
+import com.ontometrics.integrations.sources.SeenSessionIndex;
 import com.ontometrics.integrations.sources.StreamProvider;
 import org.apache.commons.configuration.Configuration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 
 /**
@@ -35,6 +43,36 @@ public class EventListenerImpl implements EventListener {
 
     private EditSessionsExtractor editSessionsExtractor;
 
+    /**
+     * Executes per-project extraction and posting, by default every project is processed in the calling thread
+     */
+    private ExecutorService projectExecutor = MoreExecutors.sameThreadExecutor();
+
+    /**
+     * Fetches every issue tracker resource once per {@link #checkForNewEvents()} run, optional
+     */
+    private CoalescingStreamProvider requestCoalescer;
+
+    /**
+     * Decides which projects are polled by {@link #checkForNewEvents()} run, all projects are polled if not set
+     */
+    private ProjectPollingScheduler pollingScheduler;
+
+    /**
+     * Merges sessions of the same issue and updater before they are posted, optional
+     */
+    private EditSessionCoalescer sessionCoalescer;
+
+    /**
+     * Latency histograms every poll of the project is reported to, optional
+     */
+    private NotificationLatency notificationLatency;
+
+    /**
+     * Index of posted sessions, sessions found in it are not posted again, optional
+     */
+    private SeenSessionIndex seenSessions;
+
     /**
      * @param feedStreamProvider feed resource provider
      */
@@ -43,6 +81,103 @@ public class EventListenerImpl implements EventListener {
         this.chatServer = chatServer;
     }
 
+    public EventListenerImpl(Builder builder) {
+        this(builder.editSessionsExtractor);
+        chatServer = builder.chatServer;
+        if (builder.projectExecutor != null) {
+            projectExecutor = builder.projectExecutor;
+        }
+        requestCoalescer = builder.requestCoalescer;
+        pollingScheduler = builder.pollingScheduler;
+        sessionCoalescer = builder.sessionCoalescer;
+        notificationLatency = builder.notificationLatency;
+        seenSessions = builder.seenSessions;
+    }
+
+    public static class Builder {
+
+        private EditSessionsExtractor editSessionsExtractor;
+        private ChatServer chatServer;
+        private ExecutorService projectExecutor;
+        private CoalescingStreamProvider requestCoalescer;
+        private ProjectPollingScheduler pollingScheduler;
+        private EditSessionCoalescer sessionCoalescer;
+        private NotificationLatency notificationLatency;
+        private SeenSessionIndex seenSessions;
+
+        public Builder editSessionsExtractor(EditSessionsExtractor editSessionsExtractor) {
+            this.editSessionsExtractor = editSessionsExtractor;
+            return this;
+        }
+
+        public Builder chatServer(ChatServer chatServer) {
+            this.chatServer = chatServer;
+            return this;
+        }
+
+        /**
+         * @param projectExecutor executor which processes projects concurrently, owned (and shut down) by caller
+         * @return this, for chaining
+         */
+        public Builder projectExecutor(ExecutorService projectExecutor) {
+            this.projectExecutor = projectExecutor;
+            return this;
+        }
+
+        /**
+         * @param requestCoalescer stream provider used by editSessionsExtractor, its cycle is started and ended
+         *                         by every {@link #checkForNewEvents()} run
+         * @return this, for chaining
+         */
+        public Builder requestCoalescer(CoalescingStreamProvider requestCoalescer) {
+            this.requestCoalescer = requestCoalescer;
+            return this;
+        }
+
+        /**
+         * @param pollingScheduler scheduler which decides which projects are polled by {@link #checkForNewEvents()}
+         *                         run, it is informed about activity of the polled projects
+         * @return this, for chaining
+         */
+        public Builder pollingScheduler(ProjectPollingScheduler pollingScheduler) {
+            this.pollingScheduler = pollingScheduler;
+            return this;
+        }
+
+        /**
+         * @param sessionCoalescer coalescer which merges sessions of the project found by every
+         *                         {@link #checkForNewEvents()} run before they are posted
+         * @return this, for chaining
+         */
+        public Builder sessionCoalescer(EditSessionCoalescer sessionCoalescer) {
+            this.sessionCoalescer = sessionCoalescer;
+            return this;
+        }
+
+        /**
+         * @param notificationLatency latency histograms polls of the projects are reported to, chat server is
+         *                            expected to trace its messages to the same histograms
+         * @return this, for chaining
+         */
+        public Builder notificationLatency(NotificationLatency notificationLatency) {
+            this.notificationLatency = notificationLatency;
+            return this;
+        }
+
+        /**
+         * @param seenSessions index of posted sessions, sessions extracted again are skipped
+         * @return this, for chaining
+         */
+        public Builder seenSessions(SeenSessionIndex seenSessions) {
+            this.seenSessions = seenSessions;
+            return this;
+        }
+
+        public EventListenerImpl build() {
+            return new EventListenerImpl(this);
+        }
+    }
+
     private static EditSessionsExtractor createEditSessionExtractor(StreamProvider feedStreamProvider) {
         if(feedStreamProvider == null) {
             throw new IllegalArgumentException("You must provide feedStreamProvider.");
@@ -70,6 +205,15 @@ public class EventListenerImpl implements EventListener {
      * then post them to the {@link com.ontometrics.integrations.configuration.ChatServer}.
      * </p>
      * <p>
+     * Projects are processed independently by the project executor: sessions of a single project are posted
+     * in order of their update time and the last processed date is saved per project, so a failure of one
+     * project does not prevent others from being processed. The first failure is re-thrown once all
+     * projects are done.
+     * </p>
+     * <p>
+     * If polling scheduler is set only projects which are due are processed.
+     * </p>
+     * <p>
      * This should stay simple: if we can't process a session for any reason we should skip it.
      * </p>
      *
@@ -78,33 +222,126 @@ public class EventListenerImpl implements EventListener {
      */
     @Override
     public int checkForNewEvents() throws Exception {
+        if (requestCoalescer == null) {
+            return processProjects();
+        }
+        requestCoalescer.beginCycle();
+        try {
+            return processProjects();
+        } finally {
+            requestCoalescer.endCycle();
+        }
+    }
+
+    private int processProjects() throws Exception {
         Set<String> projects = projectProvider.all();
-        final AtomicInteger processedSessionsCount = new AtomicInteger(0);
-
-        for (String project: projects) {
-            List<IssueEditSession> editSessions = editSessionsExtractor.getLatestEdits(project);
-            log.info("Found {} edit sessions to post.", editSessions.size());
-            if (editSessions.size() > 0) {
-                Collections.sort(editSessions, CREATED_TIME_COMPARATOR);
-                log.debug("sessions: {}", editSessions);
-                Date lastProcessedSessionDate = null;
-                for (IssueEditSession session : editSessions) {
-                    if (session.isCreationEdit()) {
-                        chatServer.postIssueCreation(session.getIssue());
-                    } else {
-                        chatServer.post(session);
-                    }
-                    lastProcessedSessionDate = session.getUpdated();
-                    processedSessionsCount.incrementAndGet();
-                }
+        long pollTime = System.currentTimeMillis();
+        if (pollingScheduler != null) {
+            pollingScheduler.retainProjects(projects);
+        }
 
-                log.debug("setting last processed date for project {} to: {}", project, lastProcessedSessionDate);
-                EventProcessorConfiguration.instance().saveLastProcessedEventDate(lastProcessedSessionDate, project);
+        Map<String, Future<Integer>> projectResults = new LinkedHashMap<>();
+        for (final String project : projects) {
+            if (pollingScheduler != null && !pollingScheduler.isDue(project, pollTime)) {
+                continue;
             }
+            projectResults.put(project, projectExecutor.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    return processProject(project);
+                }
+            }));
+        }
 
+        int processedSessionsCount = 0;
+        Exception failure = null;
+        for (Map.Entry<String, Future<Integer>> projectResult : projectResults.entrySet()) {
+            int projectSessionsCount = 0;
+            try {
+                projectSessionsCount = projectResult.getValue().get();
+                processedSessionsCount += projectSessionsCount;
+            } catch (ExecutionException ex) {
+                log.error("Failed to process project " + projectResult.getKey(), ex.getCause());
+                if (failure == null) {
+                    failure = ex.getCause() instanceof Exception ? (Exception) ex.getCause() : ex;
+                }
+            }
+            if (pollingScheduler != null) {
+                pollingScheduler.polled(projectResult.getKey(), projectSessionsCount > 0, pollTime);
+            }
+        }
+        if (pollingScheduler != null && log.isDebugEnabled()) {
+            log.debug("Polling intervals of the projects: {}", pollingScheduler.getPollingIntervals());
+        }
+        //checkpoints of all projects processed in this cycle are committed at once
+        EventProcessorConfiguration.instance().commit();
+        if (seenSessions != null) {
+            //sessions older than the history window are not extracted any more
+            seenSessions.pruneIfDue(EventProcessorConfiguration.instance().oldestDateInThePast().getTime());
+        }
+        if (notificationLatency != null && processedSessionsCount > 0) {
+            log.info("Notification latency by project and destination: {}", notificationLatency);
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return processedSessionsCount;
+    }
 
+    /**
+     * Extracts edit sessions of the project, posts them in order they happened and saves last processed date
+     * once posted messages are flushed by chat server, saved date is committed at the end of the cycle
+     * @param project project key
+     * @return the number of sessions that were processed
+     * @throws Exception if it fails to extract sessions or save the last event date
+     */
+    private int processProject(String project) throws Exception {
+        long pollStartTime = System.currentTimeMillis();
+        long parseTime = editSessionsExtractor.getParseTime(project);
+        List<IssueEditSession> editSessions = editSessionsExtractor.getLatestEdits(project);
+        if (notificationLatency != null) {
+            notificationLatency.polled(project, pollStartTime, System.currentTimeMillis(),
+                    editSessionsExtractor.getParseTime(project) - parseTime);
         }
-        return processedSessionsCount.get();
+        log.info("Found {} edit sessions to post for project {}.", editSessions.size(), project);
+        if (editSessions.isEmpty()) {
+            return 0;
+        }
+        Collections.sort(editSessions, CREATED_TIME_COMPARATOR);
+        log.debug("sessions: {}", editSessions);
+        //sessions merged by coalescer or skipped as seen are processed as well
+        Date lastProcessedSessionDate = editSessions.get(editSessions.size() - 1).getUpdated();
+        int processedSessionsCount = editSessions.size();
+        if (seenSessions != null) {
+            editSessions = seenSessions.filterSeen(editSessions);
+            if (editSessions.size() < processedSessionsCount) {
+                log.info("Skipped {} edit sessions of project {} which have been posted", processedSessionsCount
+                        - editSessions.size(), project);
+            }
+        }
+        List<IssueEditSession> postedSessions = editSessions;
+        if (sessionCoalescer != null) {
+            editSessions = sessionCoalescer.coalesce(editSessions);
+            if (editSessions.size() < postedSessions.size()) {
+                log.info("Merged {} edit sessions of project {} into {}", postedSessions.size(), project,
+                        editSessions.size());
+            }
+        }
+        for (IssueEditSession session : editSessions) {
+            if (session.isCreationEdit()) {
+                chatServer.postIssueCreation(session.getIssue());
+            } else {
+                chatServer.post(session);
+            }
+        }
+        chatServer.flush();
+        if (seenSessions != null) {
+            seenSessions.seen(postedSessions);
+        }
+
+        log.debug("setting last processed date for project {} to: {}", project, lastProcessedSessionDate);
+        EventProcessorConfiguration.instance().saveLastProcessedEventDate(lastProcessedSessionDate, project);
+        return processedSessionsCount;
     }
 
 
@@ -1,18 +1,47 @@
 package com.ontometrics.integrations.jobs;
 
+import com.google.common.base.Predicate;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.ontometrics.db.MapDb;
+import com.ontometrics.integrations.configuration.ChatServer;
+import com.ontometrics.integrations.configuration.CircuitBreakerMessageSender;
+import com.ontometrics.integrations.configuration.CompositeChatServer;
 import com.ontometrics.integrations.configuration.ConfigurationAccessError;
 import com.ontometrics.integrations.configuration.ConfigurationFactory;
+import com.ontometrics.integrations.configuration.EventProcessorConfiguration;
+import com.ontometrics.integrations.configuration.MessageSender;
+import com.ontometrics.integrations.configuration.NotificationLatency;
+import com.ontometrics.integrations.configuration.QueuedMessageSender;
 import com.ontometrics.integrations.configuration.SlackInstance;
+import com.ontometrics.integrations.configuration.SlackOutbox;
+import com.ontometrics.integrations.configuration.SlackWebhookClient;
 import com.ontometrics.integrations.configuration.StreamProviderFactory;
+import com.ontometrics.integrations.configuration.YouTrackInstanceFactory;
 import com.ontometrics.integrations.sources.ChannelMapper;
 import com.ontometrics.integrations.sources.ChannelMapperFactory;
+import com.ontometrics.integrations.sources.CoalescingStreamProvider;
+import com.ontometrics.integrations.sources.ConditionalGetStreamProvider;
+import com.ontometrics.integrations.sources.EditSessionCoalescer;
+import com.ontometrics.integrations.sources.EditSessionsExtractor;
+import com.ontometrics.integrations.sources.HostConcurrencyLimitingStreamProvider;
+import com.ontometrics.integrations.sources.HttpResponseCache;
+import com.ontometrics.integrations.sources.HttpStreamProvider;
+import com.ontometrics.integrations.sources.SeenSessionIndex;
 import com.ontometrics.integrations.sources.StreamProvider;
 import org.apache.commons.configuration.Configuration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
+import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
@@ -27,9 +56,90 @@ public class JobStarter {
 
     //TODO move to configuration params
     private static final long EXECUTION_DELAY = 2 * 1000;
-    private static final long REPEAT_INTERVAL = 90 * 1000;
+    /**
+     * Interval (in seconds) of polling projects with recent edits, projects are checked for being due with this interval
+     */
+    public static final String PROP_POLLING_MIN_INTERVAL = "PROP.POLLING_MIN_INTERVAL";
+    private static final int DEFAULT_POLLING_MIN_INTERVAL = 30;
+    /**
+     * Maximum interval (in seconds) of polling idle projects
+     */
+    public static final String PROP_POLLING_MAX_INTERVAL = "PROP.POLLING_MAX_INTERVAL";
+    private static final int DEFAULT_POLLING_MAX_INTERVAL = 600;
+    /**
+     * Number of projects processed concurrently, 0 means "twice the number of available processors"
+     */
+    public static final String PROP_POLLING_THREADS = "PROP.POLLING_THREADS";
+    /**
+     * Number of threads requesting changes and attachments of the issues concurrently, 0 disables concurrent requests
+     */
+    public static final String PROP_FETCH_THREADS = "PROP.FETCH_THREADS";
+    /**
+     * Maximum number of requests to YouTrack host performed concurrently
+     */
+    public static final String PROP_MAX_REQUESTS_PER_HOST = "PROP.MAX_REQUESTS_PER_HOST";
+    private static final int DEFAULT_MAX_REQUESTS_PER_HOST = 8;
+    /**
+     * Maximum size (in megabytes) of cached YouTrack responses, 0 disables the cache
+     */
+    public static final String PROP_HTTP_CACHE_SIZE = "PROP.HTTP_CACHE_SIZE";
+    private static final int DEFAULT_HTTP_CACHE_SIZE = 64;
+    /**
+     * Time window (in seconds) within which edit sessions of the same issue and updater are posted as one message,
+     * 0 disables merging
+     */
+    public static final String PROP_SESSION_COALESCING_WINDOW = "PROP.SESSION_COALESCING_WINDOW";
+    private static final int DEFAULT_SESSION_COALESCING_WINDOW = 60;
+    /**
+     * Time (in milliseconds) given to queued messages to be posted on shutdown
+     */
+    private static final long DELIVERY_SHUTDOWN_TIMEOUT = 10 * 1000;
+    /**
+     * Time (in milliseconds) given to running polling tasks to finish on shutdown
+     */
+    private static final long TASK_SHUTDOWN_TIMEOUT = 30 * 1000;
+    /**
+     * Names of additional destinations YouTrack updates are mirrored to, delimited by ";". Destination "name" is
+     * configured by "youtrack-slack.mirror.name." properties: "webhook-path" (Slack webhook path) or
+     * "webhook-url", "channel-mappings" and "default-channel" (channels of the primary destination by default)
+     * and "queue-overflow" ("spill" by default, so a stalled destination does not block posting: messages the queue
+     * has no room for are written to the spill file of the circuit breaker of the destination, "block" is used if
+     * the breaker is disabled)
+     */
+    public static final String PROP_SLACK_MIRRORS = "PROP.SLACK_MIRRORS";
+    private static final String MIRROR_PROPERTY_PREFIX = "youtrack-slack.mirror.";
+
+    /**
+     * Issue changes and attachments may be requested several times during the processing cycle,
+     * project feeds are requested once and may be large so they are not kept in memory
+     */
+    private static final Predicate<URL> ISSUE_RESOURCES = new Predicate<URL>() {
+        @Override
+        public boolean apply(URL url) {
+            return url.getPath().contains("/rest/issue/") && !url.getPath().contains("/rest/issue/byproject");
+        }
+    };
+
+    /**
+     * Issue changes, attachments and the list of projects are requested conditionally, unchanged resources
+     * are taken from the cache
+     */
+    private static final Predicate<URL> CACHEABLE_RESOURCES = new Predicate<URL>() {
+        @Override
+        public boolean apply(URL url) {
+            return ISSUE_RESOURCES.apply(url) || url.getPath().endsWith("/rest/project/all");
+        }
+    };
     private ScheduledExecutorService scheduledExecutorService;
     private ScheduledFuture scheduledTask;
+    private ExecutorService projectExecutorService;
+    private ExecutorService fetchExecutorService;
+    private ProjectPollingScheduler pollingScheduler;
+    private CompositeChatServer compositeChatServer;
+    private final List<SlackWebhookClient> webhookClients = new ArrayList<>();
+    private final List<QueuedMessageSender> deliveryQueues = new ArrayList<>();
+    private final List<CircuitBreakerMessageSender> circuitBreakers = new ArrayList<>();
+    private final NotificationLatency notificationLatency = new NotificationLatency();
 
     public JobStarter() {
         initialize();
@@ -40,13 +150,204 @@ public class JobStarter {
      */
     public void scheduleTasks() {
         final Configuration configuration = ConfigurationFactory.get();
-        StreamProvider streamProvider = StreamProviderFactory.createStreamProvider(configuration);
+        CoalescingStreamProvider streamProvider = new CoalescingStreamProvider(new HostConcurrencyLimitingStreamProvider(
+                createCachingStreamProvider(configuration, StreamProviderFactory.createStreamProvider(configuration)),
+                configuration.getInt(PROP_MAX_REQUESTS_PER_HOST, DEFAULT_MAX_REQUESTS_PER_HOST)), ISSUE_RESOURCES);
 
         ChannelMapper channelMapper = ChannelMapperFactory.fromConfiguration(configuration, "youtrack-slack.");
 
-        SlackInstance chatServer = new SlackInstance.Builder().channelMapper(channelMapper)
-                .icon(resolveSlackBotIcon(configuration)).build();
-        scheduleTask(new EventListenerImpl(streamProvider, chatServer));
+        Map<String, SlackInstance> destinations = new LinkedHashMap<>();
+        destinations.put("slack", createSlackInstance(configuration, "slack", channelMapper, new SlackWebhookClient(),
+                MapDb.instance().getSlackOutboxMap(), QueuedMessageSender.OverflowPolicy.valueOf(configuration
+                        .getString(QueuedMessageSender.PROP_SLACK_QUEUE_OVERFLOW, "block").trim().toUpperCase())));
+        for (String mirror : configuration.getStringArray(PROP_SLACK_MIRRORS)) {
+            mirror = mirror.trim();
+            if (!mirror.isEmpty()) {
+                destinations.put(mirror, createMirror(configuration, mirror, channelMapper));
+            }
+        }
+        for (SlackInstance slackInstance : destinations.values()) {
+            slackInstance.sendPending();
+        }
+        ChatServer chatServer = destinations.values().iterator().next();
+        if (destinations.size() > 1) {
+            compositeChatServer = new CompositeChatServer(destinations);
+            chatServer = compositeChatServer;
+        }
+        projectExecutorService = createProjectExecutorService(configuration);
+        fetchExecutorService = createFetchExecutorService(configuration);
+        EditSessionsExtractor editSessionsExtractor = new EditSessionsExtractor(
+                YouTrackInstanceFactory.createYouTrackInstance(configuration), streamProvider, fetchExecutorService);
+        pollingScheduler = createPollingScheduler(configuration);
+        scheduleTask(new EventListenerImpl.Builder()
+                .editSessionsExtractor(editSessionsExtractor)
+                .chatServer(chatServer)
+                .projectExecutor(projectExecutorService)
+                .requestCoalescer(streamProvider)
+                .pollingScheduler(pollingScheduler)
+                .sessionCoalescer(createSessionCoalescer(configuration))
+                .notificationLatency(notificationLatency)
+                .seenSessions(new SeenSessionIndex(MapDb.instance().getSeenSessionMap(),
+                        MapDb.instance().getGroupCommitter()))
+                .build(), pollingScheduler.getMinInterval());
+    }
+
+    /**
+     * Creates destination which keeps messages in its own outbox and posts them by its own queue and connections,
+     * so it does not slow down other destinations. Messages the queue has no room for are spilled to the spill file
+     * of the circuit breaker, queue blocks instead if the breaker is disabled.
+     */
+    private SlackInstance createSlackInstance(Configuration configuration, String name, ChannelMapper channelMapper,
+                                              SlackWebhookClient webhookClient,
+                                              ConcurrentNavigableMap<Long, byte[]> outboxMap,
+                                              QueuedMessageSender.OverflowPolicy overflowPolicy) {
+        SlackOutbox outbox = new SlackOutbox(outboxMap, MapDb.instance().getGroupCommitter());
+        webhookClients.add(webhookClient);
+        CircuitBreakerMessageSender circuitBreaker = createCircuitBreaker(configuration, name, webhookClient);
+        MessageSender overflowSender = null;
+        if (circuitBreaker != null) {
+            overflowSender = outbox.removingDelivered(circuitBreaker.overflowSender());
+        } else if (overflowPolicy == QueuedMessageSender.OverflowPolicy.SPILL) {
+            logger.warn("Circuit breaker of {} is disabled, there is no spill file: sending will wait for free space "
+                    + "in the queue", name);
+            overflowPolicy = QueuedMessageSender.OverflowPolicy.BLOCK;
+        }
+        QueuedMessageSender deliveryQueue = createDeliveryQueue(configuration, name, overflowPolicy,
+                outbox.removingDelivered(circuitBreaker == null ? webhookClient : circuitBreaker), overflowSender);
+        deliveryQueues.add(deliveryQueue);
+        return new SlackInstance.Builder().channelMapper(channelMapper)
+                .icon(resolveSlackBotIcon(configuration))
+                .outbox(outbox)
+                .messageSender(deliveryQueue)
+                .notificationLatency(notificationLatency, name)
+                .build();
+    }
+
+    private SlackInstance createMirror(Configuration configuration, String name, ChannelMapper defaultChannelMapper) {
+        String prefix = MIRROR_PROPERTY_PREFIX + name + ".";
+        String webhookUrl = configuration.getString(prefix + "webhook-url");
+        if (webhookUrl == null) {
+            String webhookPath = configuration.getString(prefix + "webhook-path");
+            if (webhookPath == null) {
+                throw new IllegalArgumentException("Neither " + prefix + "webhook-url nor " + prefix
+                        + "webhook-path is set for destination " + name);
+            }
+            webhookUrl = SlackWebhookClient.BASE_URL + "/" + webhookPath;
+        }
+        ChannelMapper channelMapper = configuration.containsKey(prefix + ChannelMapperFactory.CHANNEL_MAPPINGS)
+                || configuration.containsKey(prefix + ChannelMapperFactory.DEFAULT_CHANNEL)
+                ? ChannelMapperFactory.fromConfiguration(configuration, prefix) : defaultChannelMapper;
+        QueuedMessageSender.OverflowPolicy overflowPolicy = QueuedMessageSender.OverflowPolicy.valueOf(configuration
+                .getString(prefix + "queue-overflow", "spill").trim().toUpperCase());
+        logger.info("YouTrack updates will be mirrored to {}, queue overflow: {}", name, overflowPolicy);
+        return createSlackInstance(configuration, name, channelMapper, new SlackWebhookClient(webhookUrl),
+                MapDb.instance().getSlackOutboxMap(name), overflowPolicy);
+    }
+
+    /**
+     * @return sender which spills messages to a file under APP_DATA_DIR while the destination keeps failing,
+     * null if the circuit breaker is disabled
+     */
+    private CircuitBreakerMessageSender createCircuitBreaker(Configuration configuration, String name, MessageSender messageSender) {
+        int failures = configuration.getInt(CircuitBreakerMessageSender.PROP_SLACK_BREAKER_FAILURES, 5);
+        if (failures <= 0) {
+            return null;
+        }
+        File spillFile = new File(configuration.getString("PROP.APP_DATA_DIR"), name + "_spill.log");
+        try {
+            CircuitBreakerMessageSender circuitBreaker = new CircuitBreakerMessageSender.Builder()
+                    .name(name)
+                    .messageSender(messageSender)
+                    .spillFile(spillFile)
+                    .failureThreshold(failures)
+                    .slowPostThreshold(TimeUnit.SECONDS.toMillis(
+                            configuration.getInt(CircuitBreakerMessageSender.PROP_SLACK_BREAKER_SLOW_POST, 10)))
+                    .cooldown(TimeUnit.SECONDS.toMillis(
+                            configuration.getInt(CircuitBreakerMessageSender.PROP_SLACK_BREAKER_COOLDOWN, 30)))
+                    .drainRate(configuration.getDouble(CircuitBreakerMessageSender.PROP_SLACK_BREAKER_DRAIN_RATE, 1))
+                    .build();
+            circuitBreakers.add(circuitBreaker);
+            return circuitBreaker;
+        } catch (IOException ex) {
+            throw new IllegalStateException("Failed to open spill file " + spillFile, ex);
+        }
+    }
+
+    private QueuedMessageSender createDeliveryQueue(Configuration configuration, String name,
+                                                    QueuedMessageSender.OverflowPolicy overflowPolicy,
+                                                    MessageSender messageSender, MessageSender overflowSender) {
+        QueuedMessageSender queue = new QueuedMessageSender.Builder()
+                .name(name)
+                .messageSender(messageSender)
+                .overflowSender(overflowSender)
+                .senderThreads(configuration.getInt(QueuedMessageSender.PROP_SLACK_SENDER_THREADS, 2))
+                .capacity(configuration.getInt(QueuedMessageSender.PROP_SLACK_QUEUE_CAPACITY, 1000))
+                .overflowPolicy(overflowPolicy)
+                .rateLimit(configuration.getDouble(QueuedMessageSender.PROP_SLACK_RATE_LIMIT, 1),
+                        configuration.getInt(QueuedMessageSender.PROP_SLACK_RATE_BURST, 1))
+                .maxAttempts(configuration.getInt(QueuedMessageSender.PROP_SLACK_MAX_ATTEMPTS, 5))
+                .maxBatchSize(configuration.getInt(QueuedMessageSender.PROP_SLACK_BATCH_SIZE, 1))
+                .build();
+        logger.info("Messages will be posted to {} by {} threads, overflow policy: {}, at most {} messages per second per channel",
+                name, configuration.getInt(QueuedMessageSender.PROP_SLACK_SENDER_THREADS, 2), overflowPolicy,
+                configuration.getDouble(QueuedMessageSender.PROP_SLACK_RATE_LIMIT, 1));
+        return queue;
+    }
+
+    private EditSessionCoalescer createSessionCoalescer(Configuration configuration) {
+        int window = configuration.getInt(PROP_SESSION_COALESCING_WINDOW, DEFAULT_SESSION_COALESCING_WINDOW);
+        if (window <= 0) {
+            logger.info("Edit sessions will be posted one by one");
+            return null;
+        }
+        logger.info("Edit sessions of the same issue and updater within {} seconds will be posted as one message", window);
+        return new EditSessionCoalescer(TimeUnit.SECONDS.toMillis(window));
+    }
+
+    private ProjectPollingScheduler createPollingScheduler(Configuration configuration) {
+        long minInterval = TimeUnit.SECONDS.toMillis(
+                configuration.getInt(PROP_POLLING_MIN_INTERVAL, DEFAULT_POLLING_MIN_INTERVAL));
+        long maxInterval = TimeUnit.SECONDS.toMillis(
+                configuration.getInt(PROP_POLLING_MAX_INTERVAL, DEFAULT_POLLING_MAX_INTERVAL));
+        //project which is not polled longer than issue history window would miss edits
+        long historyWindow = TimeUnit.MINUTES.toMillis(
+                EventProcessorConfiguration.instance().getIssueHistoryWindowInMinutes());
+        maxInterval = Math.max(minInterval, Math.min(maxInterval, historyWindow / 2));
+        logger.info("Projects will be polled every {} to {} seconds depending on their activity",
+                TimeUnit.MILLISECONDS.toSeconds(minInterval), TimeUnit.MILLISECONDS.toSeconds(maxInterval));
+        return new ProjectPollingScheduler(minInterval, maxInterval);
+    }
+
+    private StreamProvider createCachingStreamProvider(Configuration configuration, HttpStreamProvider streamProvider) {
+        long cacheSize = configuration.getLong(PROP_HTTP_CACHE_SIZE, DEFAULT_HTTP_CACHE_SIZE) * 1024 * 1024;
+        if (cacheSize <= 0) {
+            logger.info("YouTrack responses will not be cached");
+            return streamProvider;
+        }
+        return new ConditionalGetStreamProvider(streamProvider,
+                new HttpResponseCache(MapDb.instance().getHttpCacheMap(), MapDb.instance().getGroupCommitter(),
+                        cacheSize), CACHEABLE_RESOURCES);
+    }
+
+    private ExecutorService createFetchExecutorService(Configuration configuration) {
+        int threads = configuration.getInt(PROP_FETCH_THREADS, 0);
+        if (threads <= 0) {
+            logger.info("Issue changes will be requested one by one");
+            return null;
+        }
+        logger.info("Issue changes will be requested by {} threads", threads);
+        return Executors.newFixedThreadPool(threads,
+                new ThreadFactoryBuilder().setNameFormat("issue-fetcher-%d").setDaemon(true).build());
+    }
+
+    private ExecutorService createProjectExecutorService(Configuration configuration) {
+        int threads = configuration.getInt(PROP_POLLING_THREADS, 0);
+        if (threads <= 0) {
+            threads = Runtime.getRuntime().availableProcessors() * 2;
+        }
+        logger.info("Projects will be processed by {} threads", threads);
+        return Executors.newFixedThreadPool(threads,
+                new ThreadFactoryBuilder().setNameFormat("project-poller-%d").setDaemon(true).build());
     }
 
     private String resolveSlackBotIcon(Configuration configuration) {
@@ -67,13 +368,13 @@ public class JobStarter {
      * Schedules a periodic task {@link com.ontometrics.integrations.jobs.EventListener#checkForNewEvents()}
      * @param eventListener event listener
      */
-    private void scheduleTask(EventListener eventListener) {
+    private void scheduleTask(EventListener eventListener, long repeatInterval) {
         logger.info("Scheduling EventListener task");
         EventTask eventTask = new EventTask(eventListener);
         scheduledExecutorService = Executors.newScheduledThreadPool(1);
 
         scheduledTask = scheduledExecutorService
-                .scheduleWithFixedDelay(eventTask, EXECUTION_DELAY, REPEAT_INTERVAL,
+                .scheduleWithFixedDelay(eventTask, EXECUTION_DELAY, repeatInterval,
                         TimeUnit.MILLISECONDS);
     }
 
@@ -99,6 +400,20 @@ public class JobStarter {
         }
     }
 
+    /**
+     * @return scheduler which keeps polling intervals of the projects, null until tasks are scheduled
+     */
+    public ProjectPollingScheduler getPollingScheduler() {
+        return pollingScheduler;
+    }
+
+    /**
+     * @return histograms of time between YouTrack edits and acknowledgement of their messages by project and stage
+     */
+    public NotificationLatency getNotificationLatency() {
+        return notificationLatency;
+    }
+
     public void dispose () {
         //cancelling all previously launched tasks and timer
         if (scheduledTask != null) {
@@ -108,5 +423,57 @@ public class JobStarter {
         if (scheduledExecutorService != null) {
             scheduledExecutorService.shutdown();
         }
+
+        if (projectExecutorService != null) {
+            projectExecutorService.shutdown();
+        }
+
+        if (fetchExecutorService != null) {
+            fetchExecutorService.shutdown();
+        }
+
+        //running tasks write to the database, so they have to finish before it is closed
+        long taskDeadline = System.currentTimeMillis() + TASK_SHUTDOWN_TIMEOUT;
+        awaitTermination(scheduledExecutorService, "polling", taskDeadline);
+        awaitTermination(projectExecutorService, "project", taskDeadline);
+        awaitTermination(fetchExecutorService, "fetch", taskDeadline);
+        if (compositeChatServer != null) {
+            compositeChatServer.close(Math.max(1, taskDeadline - System.currentTimeMillis()));
+        }
+
+        //queues of all destinations are drained within the same timeout
+        long deliveryDeadline = System.currentTimeMillis() + DELIVERY_SHUTDOWN_TIMEOUT;
+        for (QueuedMessageSender deliveryQueue : deliveryQueues) {
+            deliveryQueue.close(Math.max(1, deliveryDeadline - System.currentTimeMillis()));
+        }
+
+        for (CircuitBreakerMessageSender circuitBreaker : circuitBreakers) {
+            circuitBreaker.close();
+        }
+
+        for (SlackWebhookClient webhookClient : webhookClients) {
+            webhookClient.close();
+        }
+        logger.info("Notification latency by project and destination: {}", notificationLatency);
+    }
+
+    /**
+     * Waits until the executor which is shut down finishes its tasks, interrupts them once the deadline passes
+     */
+    private static void awaitTermination(ExecutorService executorService, String name, long deadline) {
+        if (executorService == null) {
+            return;
+        }
+        try {
+            if (!executorService.awaitTermination(Math.max(1, deadline - System.currentTimeMillis()),
+                    TimeUnit.MILLISECONDS)) {
+                logger.warn("Interrupting {} tasks which did not finish on shutdown", name);
+                executorService.shutdownNow();
+                executorService.awaitTermination(1, TimeUnit.SECONDS);
+            }
+        } catch (InterruptedException e) {
+            executorService.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
     }
 }
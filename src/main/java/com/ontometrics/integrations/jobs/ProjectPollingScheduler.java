@@ -0,0 +1,110 @@
+package com.ontometrics.integrations.jobs;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps polling interval of every project. Project which has edits is polled with the minimum interval, every
+ * poll which finds nothing doubles the interval of the project up to the maximum interval, so that active projects
+ * are polled often and idle ones do not waste requests.
+ * <p>
+ * Projects which have not been polled yet are due immediately.
+ * </p>
+ * ProjectPollingScheduler.java
+ */
+public class ProjectPollingScheduler {
+
+    private static final int BACKOFF_FACTOR = 2;
+
+    private final long minInterval;
+    private final long maxInterval;
+
+    private final ConcurrentMap<String, ProjectSchedule> schedules = new ConcurrentHashMap<>();
+
+    /**
+     * @param minInterval interval (in milliseconds) of polling active projects
+     * @param maxInterval maximum interval (in milliseconds) of polling idle projects
+     */
+    public ProjectPollingScheduler(long minInterval, long maxInterval) {
+        if (minInterval <= 0 || maxInterval < minInterval) {
+            throw new IllegalArgumentException("Polling intervals should be positive and max interval should not be " +
+                    "less than min interval");
+        }
+        this.minInterval = minInterval;
+        this.maxInterval = maxInterval;
+    }
+
+    /**
+     * @param project project key
+     * @param now     current time
+     * @return true if the project should be polled now
+     */
+    public boolean isDue(String project, long now) {
+        ProjectSchedule schedule = schedules.get(project);
+        return schedule == null || now >= schedule.nextPollTime;
+    }
+
+    /**
+     * Schedules next poll of the project
+     *
+     * @param project  project key
+     * @param active   true if the project had edits
+     * @param pollTime time when the poll started
+     */
+    public void polled(String project, boolean active, long pollTime) {
+        ProjectSchedule schedule = schedules.get(project);
+        long interval;
+        if (active || schedule == null) {
+            interval = minInterval;
+        } else {
+            interval = Math.min(schedule.interval * BACKOFF_FACTOR, maxInterval);
+        }
+        schedules.put(project, new ProjectSchedule(interval, pollTime + interval));
+    }
+
+    /**
+     * Forgets projects which do not exist anymore
+     *
+     * @param projects existing projects
+     */
+    public void retainProjects(Collection<String> projects) {
+        schedules.keySet().retainAll(projects);
+    }
+
+    /**
+     * @return current polling interval (in milliseconds) of the project
+     */
+    public long getPollingInterval(String project) {
+        ProjectSchedule schedule = schedules.get(project);
+        return schedule == null ? minInterval : schedule.interval;
+    }
+
+    /**
+     * @return current polling intervals (in milliseconds) of the polled projects
+     */
+    public Map<String, Long> getPollingIntervals() {
+        Map<String, Long> intervals = new TreeMap<>();
+        for (Map.Entry<String, ProjectSchedule> schedule : schedules.entrySet()) {
+            intervals.put(schedule.getKey(), schedule.getValue().interval);
+        }
+        return Collections.unmodifiableMap(intervals);
+    }
+
+    public long getMinInterval() {
+        return minInterval;
+    }
+
+    private static class ProjectSchedule {
+        private final long interval;
+        private final long nextPollTime;
+
+        private ProjectSchedule(long interval, long nextPollTime) {
+            this.interval = interval;
+            this.nextPollTime = nextPollTime;
+        }
+    }
+}
@@ -53,7 +53,7 @@ public class ProjectProvider {
             @Override
             public List<String> handleStream(InputStream is, int responseCode) throws Exception {
                 HttpUtil.checkResponseCode(responseCode, url);
-                ProjectList projectList = Mapper.createXmlMapper().readValue(is, ProjectList.class);
+                ProjectList projectList = Mapper.xmlReader(ProjectList.class).readValue(is);
                 return Lists.transform(projectList.getProjects(), new Function<ProjectList.Project, String>() {
                     @Override
                     public String apply(ProjectList.Project project) {
@@ -3,8 +3,10 @@ package com.ontometrics.integrations.jobs;
 import com.ontometrics.db.MapDb;
 import com.ontometrics.integrations.configuration.ConfigurationFactory;
 import com.ontometrics.integrations.configuration.EventProcessorConfiguration;
+import com.ontometrics.integrations.configuration.StreamProviderFactory;
 import com.ontometrics.integrations.configuration.YouTrackInstance;
 import com.ontometrics.integrations.configuration.YouTrackInstanceFactory;
+import com.ontometrics.util.Mapper;
 import org.apache.commons.configuration.Configuration;
 import org.mapdb.DB;
 import org.mapdb.DBMaker;
@@ -13,6 +15,7 @@ import org.slf4j.LoggerFactory;
 
 import javax.servlet.ServletContextEvent;
 import javax.servlet.ServletContextListener;
+import java.io.IOException;
 import java.util.Date;
 
 /**
@@ -29,6 +32,7 @@ public class WebContextJobStarter implements ServletContextListener {
         logger.info("Starting up, checking that configuration is correct");
         try {
             checkConfiguration();
+            warmUp();
             this.jobStarter = new JobStarter();
             jobStarter.scheduleTasks();
         } catch (Exception ex) {
@@ -37,6 +41,20 @@ public class WebContextJobStarter implements ServletContextListener {
         }
     }
 
+    /**
+     * Prepares XML readers of YouTrack responses, so that the first processing cycle is not slowed down
+     */
+    private void warmUp() {
+        long start = System.currentTimeMillis();
+        try {
+            Mapper.warmUp();
+            logger.info("XML readers are prepared in {} ms", System.currentTimeMillis() - start);
+        } catch (IOException ex) {
+            //readers will be prepared on first use
+            logger.warn("Failed to prepare XML readers", ex);
+        }
+    }
+
     private void checkConfiguration() throws InvalidConfigurationException {
         Configuration configuration = ConfigurationFactory.get();
         try {
@@ -66,7 +84,14 @@ public class WebContextJobStarter implements ServletContextListener {
     @Override
     public void contextDestroyed(ServletContextEvent servletContextEvent) {
         logger.info("Shutting down");
-        jobStarter.dispose();
-        MapDb.instance().close();
+        try {
+            if (jobStarter != null) {
+                jobStarter.dispose();
+            }
+            StreamProviderFactory.dispose();
+        } finally {
+            //pending changes (e.g. messages left in the outbox by the job starter) are committed on close
+            MapDb.instance().close();
+        }
     }
 }
@@ -1,6 +1,7 @@
 package com.ontometrics.integrations.sources;
 
 import org.apache.http.HttpHost;
+import org.apache.http.client.HttpClient;
 import org.apache.http.client.fluent.Executor;
 import org.apache.http.client.fluent.Request;
 import org.slf4j.Logger;
@@ -8,6 +9,7 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.net.URL;
+import java.util.Map;
 
 /**
  * External http resource stream provider. Http call performed by {@link org.apache.http.client.fluent.Executor} and may be
@@ -15,7 +17,7 @@ import java.net.URL;
  * <p>
  * ExternalStreamProvider.java
  */
-public class AuthenticatedHttpStreamProvider implements StreamProvider {
+public class AuthenticatedHttpStreamProvider implements HttpStreamProvider {
 
     private static final Logger logger = LoggerFactory.getLogger(AuthenticatedHttpStreamProvider.class);
 
@@ -25,13 +27,34 @@ public class AuthenticatedHttpStreamProvider implements StreamProvider {
      * @param authenticator instance which will configure this instance to make authenticated requests
      */
     public AuthenticatedHttpStreamProvider(Authenticator authenticator) {
-        this.httpExecutor = Executor.newInstance();
+        this(authenticator, Executor.newInstance());
+    }
+
+    /**
+     * @param authenticator instance which will configure this instance to make authenticated requests
+     * @param httpClient    client performing requests, e.g. one from {@link com.ontometrics.util.HttpConnectionPool}
+     */
+    public AuthenticatedHttpStreamProvider(Authenticator authenticator, HttpClient httpClient) {
+        this(authenticator, Executor.newInstance(httpClient));
+    }
+
+    private AuthenticatedHttpStreamProvider(Authenticator authenticator, Executor httpExecutor) {
+        this.httpExecutor = httpExecutor;
         this.authenticator = authenticator;
     }
 
     public static AuthenticatedHttpStreamProvider basicAuthenticatedHttpStreamProvider
             (final String login, final String password) {
-        return new AuthenticatedHttpStreamProvider( new Authenticator() {
+        return basicAuthenticatedHttpStreamProvider(login, password, null);
+    }
+
+    /**
+     * @param httpClient client performing requests, default client of {@link org.apache.http.client.fluent.Executor}
+     *                   is used if it's null
+     */
+    public static AuthenticatedHttpStreamProvider basicAuthenticatedHttpStreamProvider
+            (final String login, final String password, HttpClient httpClient) {
+        return create(httpClient, new Authenticator() {
                 @Override
                 public Request authenticate(URL resourceUrl, Executor httpExecutor, Request request) {
                     httpExecutor.auth(login,password);
@@ -44,17 +67,47 @@ public class AuthenticatedHttpStreamProvider implements StreamProvider {
 
     public static AuthenticatedHttpStreamProvider hubAuthenticatedHttpStreamProvider
             (String clientServiceId, String clientServiceSecret, String resourceServerServiceId, String hubUrl) {
-        return new AuthenticatedHttpStreamProvider(
+        return hubAuthenticatedHttpStreamProvider(clientServiceId, clientServiceSecret, resourceServerServiceId, hubUrl,
+                null);
+    }
+
+    /**
+     * @param httpClient client performing requests, default client of {@link org.apache.http.client.fluent.Executor}
+     *                   is used if it's null
+     */
+    public static AuthenticatedHttpStreamProvider hubAuthenticatedHttpStreamProvider
+            (String clientServiceId, String clientServiceSecret, String resourceServerServiceId, String hubUrl,
+             HttpClient httpClient) {
+        return create(httpClient,
                 new HubAuthenticator(clientServiceId, clientServiceSecret, resourceServerServiceId, hubUrl));
     }
 
+    private static AuthenticatedHttpStreamProvider create(HttpClient httpClient, Authenticator authenticator) {
+        return httpClient == null ? new AuthenticatedHttpStreamProvider(authenticator)
+                : new AuthenticatedHttpStreamProvider(authenticator, httpClient);
+    }
+
     /**
      * @throws IOException
      */
     @Override
     public <RES> RES openResourceStream(URL resourceUrl, final InputStreamHandler<RES> inputStreamHandler) throws Exception {
-        Request request = Request.Get(resourceUrl.toExternalForm());
-        request = this.authenticator.authenticate(resourceUrl, httpExecutor, request);
+        Request request = authenticate(resourceUrl, Request.Get(resourceUrl.toExternalForm()));
         return NonAuthenticatedHttpStreamProvider.openResourceStream(request, inputStreamHandler, httpExecutor);
     }
+
+    @Override
+    public <RES> RES openResourceStream(URL resourceUrl, Map<String, String> requestHeaders,
+                                        HttpResponseStreamHandler<RES> responseHandler) throws Exception {
+        Request request = authenticate(resourceUrl,
+                NonAuthenticatedHttpStreamProvider.createRequest(resourceUrl, requestHeaders));
+        return NonAuthenticatedHttpStreamProvider.openResourceStream(request, responseHandler, httpExecutor);
+    }
+
+    private Request authenticate(URL resourceUrl, Request request) {
+        //authenticators update state of the executor (and their own), resources are requested concurrently
+        synchronized (httpExecutor) {
+            return this.authenticator.authenticate(resourceUrl, httpExecutor, request);
+        }
+    }
 }
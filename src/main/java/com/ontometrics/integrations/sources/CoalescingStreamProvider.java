@@ -0,0 +1,143 @@
+package com.ontometrics.integrations.sources;
+
+import com.google.common.base.Predicate;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link com.ontometrics.integrations.sources.StreamProvider} which fetches every resource only once during a
+ * processing cycle (between {@link #beginCycle()} and {@link #endCycle()}). Resource content is kept in memory
+ * until the end of the cycle and handed to every {@link com.ontometrics.integrations.sources.InputStreamHandler}
+ * requesting the same url. Concurrent requests of the same url wait for the single fetch in progress.
+ * <p>
+ * Outside of a cycle or for resources which are not accepted by the cacheable predicate requests are passed to
+ * the underlying provider as they are.
+ * </p>
+ * CoalescingStreamProvider.java
+ */
+public class CoalescingStreamProvider implements StreamProvider {
+
+    private static final Logger logger = LoggerFactory.getLogger(CoalescingStreamProvider.class);
+
+    private final StreamProvider streamProvider;
+    private final Predicate<URL> cacheable;
+
+    private volatile ConcurrentMap<String, FutureTask<FetchedResource>> cycleResources;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong cycleHits = new AtomicLong();
+    private final AtomicLong cycleMisses = new AtomicLong();
+
+    /**
+     * @param streamProvider provider which fetches resources
+     * @param cacheable      resources which should be fetched once per cycle
+     */
+    public CoalescingStreamProvider(StreamProvider streamProvider, Predicate<URL> cacheable) {
+        if (streamProvider == null) {
+            throw new IllegalArgumentException("You must provide streamProvider.");
+        }
+        this.streamProvider = streamProvider;
+        this.cacheable = cacheable;
+    }
+
+    /**
+     * Starts new cycle, resources fetched during previous cycle are discarded
+     */
+    public void beginCycle() {
+        cycleHits.set(0);
+        cycleMisses.set(0);
+        cycleResources = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Ends the cycle and releases fetched resources
+     */
+    public void endCycle() {
+        cycleResources = null;
+        long cycleRequests = cycleHits.get() + cycleMisses.get();
+        if (cycleRequests > 0) {
+            logger.info("Served {} of {} requests without accessing the resource (total hits: {}, misses: {})",
+                    cycleHits.get(), cycleRequests, hits.get(), misses.get());
+        }
+    }
+
+    @Override
+    public <RES> RES openResourceStream(final URL resourceUrl, InputStreamHandler<RES> inputStreamHandler) throws Exception {
+        ConcurrentMap<String, FutureTask<FetchedResource>> resources = cycleResources;
+        if (resources == null || (cacheable != null && !cacheable.apply(resourceUrl))) {
+            return streamProvider.openResourceStream(resourceUrl, inputStreamHandler);
+        }
+
+        String key = resourceUrl.toExternalForm();
+        FutureTask<FetchedResource> fetch = new FutureTask<>(new Callable<FetchedResource>() {
+            @Override
+            public FetchedResource call() throws Exception {
+                return streamProvider.openResourceStream(resourceUrl, new InputStreamHandler<FetchedResource>() {
+                    @Override
+                    public FetchedResource handleStream(InputStream is, int responseCode) throws Exception {
+                        return new FetchedResource(responseCode, is == null ? new byte[0] : IOUtils.toByteArray(is));
+                    }
+                });
+            }
+        });
+        FutureTask<FetchedResource> existingFetch = resources.putIfAbsent(key, fetch);
+        if (existingFetch == null) {
+            misses.incrementAndGet();
+            cycleMisses.incrementAndGet();
+            fetch.run();
+        } else {
+            hits.incrementAndGet();
+            cycleHits.incrementAndGet();
+            fetch = existingFetch;
+        }
+
+        FetchedResource resource;
+        try {
+            resource = fetch.get();
+        } catch (ExecutionException ex) {
+            //failed fetches are not kept, resource will be requested again by subsequent callers
+            resources.remove(key, fetch);
+            if (ex.getCause() instanceof Exception) {
+                throw (Exception) ex.getCause();
+            }
+            throw ex;
+        }
+        return inputStreamHandler.handleStream(new ByteArrayInputStream(resource.content), resource.responseCode);
+    }
+
+    /**
+     * @return number of requests served from resources fetched earlier in the cycle
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return number of requests which fetched the resource
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    private static class FetchedResource {
+        private final int responseCode;
+        private final byte[] content;
+
+        private FetchedResource(int responseCode, byte[] content) {
+            this.responseCode = responseCode;
+            this.content = content;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.ontometrics.integrations.sources;
+
+import com.google.common.base.Predicate;
+import org.apache.commons.io.IOUtils;
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link com.ontometrics.integrations.sources.StreamProvider} which keeps responses with validators (ETag or
+ * Last-Modified headers) in {@link com.ontometrics.integrations.sources.HttpResponseCache} and requests them
+ * again conditionally (with If-None-Match / If-Modified-Since headers). If the resource has not been modified
+ * the cached content is provided to the {@link com.ontometrics.integrations.sources.InputStreamHandler} with
+ * {@link org.apache.http.HttpStatus#SC_OK} response code.
+ * <p>
+ * Resources which are not accepted by the cacheable predicate are requested as they are.
+ * </p>
+ * ConditionalGetStreamProvider.java
+ */
+public class ConditionalGetStreamProvider implements StreamProvider {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConditionalGetStreamProvider.class);
+
+    private final HttpStreamProvider streamProvider;
+    private final HttpResponseCache cache;
+    private final Predicate<URL> cacheable;
+
+    private final AtomicLong notModified = new AtomicLong();
+    private final AtomicLong modified = new AtomicLong();
+
+    /**
+     * @param streamProvider provider which requests the resources
+     * @param cache          cache of the responses
+     * @param cacheable      resources which should be cached
+     */
+    public ConditionalGetStreamProvider(HttpStreamProvider streamProvider, HttpResponseCache cache,
+                                        Predicate<URL> cacheable) {
+        if (streamProvider == null || cache == null) {
+            throw new IllegalArgumentException("You must provide streamProvider and cache.");
+        }
+        this.streamProvider = streamProvider;
+        this.cache = cache;
+        this.cacheable = cacheable;
+    }
+
+    @Override
+    public <RES> RES openResourceStream(URL resourceUrl, final InputStreamHandler<RES> inputStreamHandler) throws Exception {
+        if (cacheable != null && !cacheable.apply(resourceUrl)) {
+            return streamProvider.openResourceStream(resourceUrl, inputStreamHandler);
+        }
+
+        final String key = resourceUrl.toExternalForm();
+        final HttpResponseCache.CachedResponse cachedResponse = cache.get(key);
+        Map<String, String> requestHeaders = new HashMap<>();
+        if (cachedResponse != null) {
+            if (cachedResponse.getEtag() != null) {
+                requestHeaders.put(HttpHeaders.IF_NONE_MATCH, cachedResponse.getEtag());
+            }
+            if (cachedResponse.getLastModified() != null) {
+                requestHeaders.put(HttpHeaders.IF_MODIFIED_SINCE, cachedResponse.getLastModified());
+            }
+        }
+
+        return streamProvider.openResourceStream(resourceUrl, requestHeaders, new HttpResponseStreamHandler<RES>() {
+            @Override
+            public RES handleStream(InputStream is, HttpResponse response) throws Exception {
+                int responseCode = response.getStatusLine().getStatusCode();
+                if (responseCode == HttpStatus.SC_NOT_MODIFIED && cachedResponse != null) {
+                    notModified.incrementAndGet();
+                    logger.debug("Resource {} is not modified", key);
+                    return inputStreamHandler.handleStream(new ByteArrayInputStream(cachedResponse.getContent()),
+                            HttpStatus.SC_OK);
+                }
+
+                if (responseCode == HttpStatus.SC_OK) {
+                    modified.incrementAndGet();
+                    String etag = getHeader(response, HttpHeaders.ETAG);
+                    String lastModified = getHeader(response, HttpHeaders.LAST_MODIFIED);
+                    if (is != null && (etag != null || lastModified != null)) {
+                        byte[] content = IOUtils.toByteArray(is);
+                        cache.put(key, new HttpResponseCache.CachedResponse(etag, lastModified, content));
+                        return inputStreamHandler.handleStream(new ByteArrayInputStream(content), responseCode);
+                    }
+                }
+                if (cachedResponse != null) {
+                    cache.remove(key);
+                }
+                return inputStreamHandler.handleStream(is, responseCode);
+            }
+        });
+    }
+
+    private static String getHeader(HttpResponse response, String name) {
+        Header header = response.getFirstHeader(name);
+        return header == null ? null : header.getValue();
+    }
+
+    /**
+     * @return number of responses served from the cache as the resource was not modified
+     */
+    public long getNotModified() {
+        return notModified.get();
+    }
+
+    /**
+     * @return number of cacheable resources which were transferred
+     */
+    public long getModified() {
+        return modified.get();
+    }
+}
@@ -0,0 +1,162 @@
+package com.ontometrics.integrations.sources;
+
+import com.ontometrics.integrations.events.AttachmentEvent;
+import com.ontometrics.integrations.events.Comment;
+import com.ontometrics.integrations.events.IssueEdit;
+import com.ontometrics.integrations.events.IssueEditSession;
+import com.ontometrics.integrations.events.IssueLink;
+import org.apache.commons.lang.ObjectUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Merges edit sessions of the same issue made by the same updater within the time window into a single session,
+ * so a burst of edits (e.g. moving an issue through several states) is posted as one message.
+ * <p>
+ * Changes of the same field are collapsed into a single transition from the first prior value to the last
+ * current value (A -> B -> C becomes A -> C), changes which end up with the value they started from are dropped.
+ * Attachments and links are accumulated. Sessions with different comments are not merged. Merged session which has
+ * nothing to report is dropped unless it includes creation of the issue.
+ * </p>
+ * <p>
+ * Merged session takes the update time and the issue of its last session and takes the place of its last
+ * session in the result.
+ * </p>
+ * EditSessionCoalescer.java
+ */
+public class EditSessionCoalescer {
+
+    private static final Comparator<List<IssueEditSession>> LAST_UPDATE_COMPARATOR = new Comparator<List<IssueEditSession>>() {
+        @Override
+        public int compare(List<IssueEditSession> g1, List<IssueEditSession> g2) {
+            return last(g1).getUpdated().compareTo(last(g2).getUpdated());
+        }
+    };
+
+    private final long window;
+
+    /**
+     * @param window maximum time (in milliseconds) between the first and the last session which are merged
+     */
+    public EditSessionCoalescer(long window) {
+        this.window = window;
+    }
+
+    /**
+     * @param sessions sessions in order of their update time
+     * @return sessions with sessions of the same issue and updater within the window merged, in order of their
+     * update time
+     */
+    public List<IssueEditSession> coalesce(List<IssueEditSession> sessions) {
+        List<List<IssueEditSession>> groups = new ArrayList<>();
+        Map<String, List<IssueEditSession>> openGroups = new HashMap<>();
+        for (IssueEditSession session : sessions) {
+            String key = session.getIssue().getPrefix() + "-" + session.getIssue().getId() + "/" + session.getUpdater();
+            List<IssueEditSession> group = openGroups.get(key);
+            if (group == null || !canMerge(group, session)) {
+                group = new ArrayList<>();
+                groups.add(group);
+                openGroups.put(key, group);
+            }
+            group.add(session);
+        }
+        if (groups.size() == sessions.size()) {
+            return sessions;
+        }
+
+        Collections.sort(groups, LAST_UPDATE_COMPARATOR);
+        List<IssueEditSession> result = new ArrayList<>(groups.size());
+        for (List<IssueEditSession> group : groups) {
+            IssueEditSession session = group.size() == 1 ? group.get(0) : merge(group);
+            if (session != null) {
+                result.add(session);
+            }
+        }
+        return result;
+    }
+
+    private boolean canMerge(List<IssueEditSession> group, IssueEditSession session) {
+        if (session.getUpdated().getTime() - group.get(0).getUpdated().getTime() > window) {
+            return false;
+        }
+        Comment comment = getComment(session);
+        if (comment == null) {
+            return true;
+        }
+        for (IssueEditSession groupSession : group) {
+            if (getComment(groupSession) != null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return merged session or null if merged session has nothing to report and does not include creation of
+     * the issue
+     */
+    private IssueEditSession merge(List<IssueEditSession> group) {
+        IssueEditSession lastSession = last(group);
+        Map<String, IssueEdit[]> fieldTransitions = new LinkedHashMap<>();
+        Comment comment = null;
+        List<AttachmentEvent> attachments = new ArrayList<>();
+        List<IssueLink> links = new ArrayList<>();
+        boolean creation = false;
+        for (IssueEditSession session : group) {
+            creation |= session.isCreationEdit();
+            for (IssueEdit edit : session.getChanges()) {
+                IssueEdit[] transition = fieldTransitions.get(edit.getField());
+                if (transition == null) {
+                    fieldTransitions.put(edit.getField(), new IssueEdit[]{edit, edit});
+                } else {
+                    transition[1] = edit;
+                }
+            }
+            if (getComment(session) != null) {
+                comment = session.getComment();
+            }
+            attachments.addAll(session.getAttachments());
+            links.addAll(session.getLinks());
+        }
+
+        List<IssueEdit> changes = new ArrayList<>(fieldTransitions.size());
+        for (IssueEdit[] transition : fieldTransitions.values()) {
+            if (transition[0] == transition[1]) {
+                changes.add(transition[0]);
+            } else if (!ObjectUtils.equals(transition[0].getPriorValue(), transition[1].getCurrentValue())) {
+                changes.add(new IssueEdit.Builder()
+                        .issue(lastSession.getIssue())
+                        .field(transition[0].getField())
+                        .priorValue(transition[0].getPriorValue())
+                        .currentValue(transition[1].getCurrentValue())
+                        .build());
+            }
+        }
+        if (!creation && changes.isEmpty() && comment == null && attachments.isEmpty() && links.isEmpty()) {
+            return null;
+        }
+        return new IssueEditSession.Builder()
+                .issue(lastSession.getIssue())
+                .updater(lastSession.getUpdater())
+                .updated(lastSession.getUpdated())
+                .changes(changes)
+                .comment(comment)
+                .attachments(attachments)
+                .links(links)
+                .build();
+    }
+
+    private static Comment getComment(IssueEditSession session) {
+        return session.getComment() != null && !session.getComment().isDeleted() ? session.getComment() : null;
+    }
+
+    private static IssueEditSession last(List<IssueEditSession> group) {
+        return group.get(group.size() - 1);
+    }
+}
@@ -1,34 +1,30 @@
 package com.ontometrics.integrations.sources;
 
-import com.google.common.base.Function;
-import com.google.common.base.Predicate;
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.Iterables;
 import com.ontometrics.integrations.configuration.ConfigurationFactory;
 import com.ontometrics.integrations.configuration.EventProcessorConfiguration;
 import com.ontometrics.integrations.configuration.IssueTracker;
 import com.ontometrics.integrations.events.*;
-import com.ontometrics.integrations.model.IssueList;
 import com.ontometrics.util.BadResponseException;
-import com.ontometrics.util.Mapper;
-import org.apache.commons.io.IOUtils;
+import com.ontometrics.util.CappedByteArrayOutputStream;
+import org.apache.commons.configuration.Configuration;
+import org.apache.commons.io.input.TeeInputStream;
 import org.apache.commons.lang.StringUtils;
 import org.apache.http.HttpStatus;
 import org.slf4j.Logger;
 
-import javax.xml.namespace.QName;
-import javax.xml.stream.XMLEventReader;
-import javax.xml.stream.XMLInputFactory;
-import javax.xml.stream.XMLStreamConstants;
-import javax.xml.stream.events.EndElement;
-import javax.xml.stream.events.StartElement;
-import javax.xml.stream.events.XMLEvent;
-import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.net.URL;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.slf4j.LoggerFactory.getLogger;
 
@@ -56,11 +52,33 @@ public class EditSessionsExtractor {
 
     private static final Logger responseContentLogger = getLogger("com.ontometrics.integration.youtrack.response");
 
+    /**
+     * Maximum number of bytes of the feed response written to the response log
+     */
+    public static final String PROP_RESPONSE_LOG_LIMIT = "PROP.RESPONSE_LOG_LIMIT";
+    private static final int DEFAULT_RESPONSE_LOG_LIMIT = 64 * 1024;
+
     private final IssueTracker issueTracker;
 
     private StreamProvider streamProvider;
 
-    private List<String> excludedFields;
+    private final IssueChangesParser issueChangesParser;
+
+    /**
+     * Maximum number of bytes of the feed response logged by {@link #responseContentLogger}
+     */
+    private final int responseLogLimit;
+
+    /**
+     * Executor used to fetch changes and attachments of the issues concurrently, issues are processed
+     * one by one if it's not specified
+     */
+    private final ExecutorService fetchExecutor;
+
+    /**
+     * Total time (in milliseconds) spent reading and parsing YouTrack responses by project
+     */
+    private final ConcurrentMap<String, AtomicLong> parseTimes = new ConcurrentHashMap<>();
 
     /**
      * Need to talk to the IssueTracker that has the ticket information, and we will probably
@@ -70,11 +88,25 @@ public class EditSessionsExtractor {
      * @param streamProvider authenticated access to the feed stream
      */
     public EditSessionsExtractor(IssueTracker issueTracker, StreamProvider streamProvider) {
+        this(issueTracker, streamProvider, null);
+    }
+
+    /**
+     * @param issueTracker   the system that is used to track issues
+     * @param streamProvider authenticated access to the feed stream, it should limit concurrent access to the
+     *                       issue tracker as far as changes of all issues from the feed are requested at once
+     * @param fetchExecutor  executor used to fetch changes and attachments of the issues concurrently
+     *                       (owned by caller), may be null
+     */
+    public EditSessionsExtractor(IssueTracker issueTracker, StreamProvider streamProvider, ExecutorService fetchExecutor) {
         this.issueTracker = issueTracker;
         this.streamProvider = streamProvider;
-        String[] excludedFields = ConfigurationFactory.get().getStringArray("excluded-youtrack-fields");
-        this.excludedFields = excludedFields == null ? Collections.<String>emptyList() :
-                ImmutableList.copyOf(excludedFields);
+        this.fetchExecutor = fetchExecutor;
+        Configuration configuration = ConfigurationFactory.get();
+        this.responseLogLimit = configuration.getInt(PROP_RESPONSE_LOG_LIMIT, DEFAULT_RESPONSE_LOG_LIMIT);
+        String[] excludedFields = configuration.getStringArray("excluded-youtrack-fields");
+        this.issueChangesParser = new IssueChangesParser(excludedFields == null ? Collections.<String>emptyList() :
+                ImmutableList.copyOf(excludedFields));
     }
 
 
@@ -95,8 +127,12 @@ public class EditSessionsExtractor {
 
         log.debug("edits since: {} for project {}", minDate, project);
 
-        List<IssueEditSession> sessions = new ArrayList<>();
         List<ProcessEvent> events = getLatestEvents(project, minDate);
+        if (fetchExecutor != null) {
+            return fetchIssueUpdates(events, minDate);
+        }
+
+        List<IssueEditSession> sessions = new ArrayList<>();
         Set<Integer> issuesWeHaveGottenChangesFor = new HashSet<>();
         for (ProcessEvent event : events){
             if (!issuesWeHaveGottenChangesFor.contains(event.getIssue().getId())) {
@@ -105,49 +141,121 @@ public class EditSessionsExtractor {
                     List<IssueEditSession> newEdits = getIssueUpdates(event, minDate);
                     sessions.addAll(newEdits);
                 } catch (BadResponseException ex) {
-                    if (ex.getStatusCode() == HttpStatus.SC_NOT_FOUND) {
-                        //issue we try to get edits for were deleted so just ignore it
-                        log.info("Got 404 response for the issue {}-{}", event.getKey(), event.getIssue());
-                    } else {
-                        //other cases are not addressed and will be thrown outside
-                        throw ex;
+                    skipDeletedIssue(event, ex);
+                }
+            }
+        }
+        return sessions;
+    }
+
+    /**
+     * Requests changes and attachments of all issues from the events concurrently with {@link #fetchExecutor}.
+     * Sessions are returned in the same order as if the issues were processed one by one.
+     */
+    private List<IssueEditSession> fetchIssueUpdates(List<ProcessEvent> events, final Date minDate) throws Exception {
+        Map<Integer, ProcessEvent> issueEvents = new LinkedHashMap<>();
+        for (ProcessEvent event : events) {
+            if (!issueEvents.containsKey(event.getIssue().getId())) {
+                issueEvents.put(event.getIssue().getId(), event);
+            }
+        }
+
+        List<Future<List<IssueEditSession>>> editsRequests = new ArrayList<>(issueEvents.size());
+        List<Future<List<AttachmentEvent>>> attachmentsRequests = new ArrayList<>(issueEvents.size());
+        for (final ProcessEvent event : issueEvents.values()) {
+            editsRequests.add(fetchExecutor.submit(new Callable<List<IssueEditSession>>() {
+                @Override
+                public List<IssueEditSession> call() throws Exception {
+                    return getEdits(event, minDate);
+                }
+            }));
+            attachmentsRequests.add(fetchExecutor.submit(new Callable<List<AttachmentEvent>>() {
+                @Override
+                public List<AttachmentEvent> call() throws Exception {
+                    return getAttachmentEvents(event, minDate);
+                }
+            }));
+        }
+
+        List<IssueEditSession> sessions = new ArrayList<>();
+        int issueIndex = 0;
+        try {
+            for (ProcessEvent event : issueEvents.values()) {
+                try {
+                    List<IssueEditSession> editSessions = getResult(editsRequests.get(issueIndex));
+                    List<AttachmentEvent> attachmentEvents = editSessions.isEmpty() ? Collections.<AttachmentEvent>emptyList()
+                            : getResult(attachmentsRequests.get(issueIndex));
+                    for (IssueEditSession session : editSessions) {
+                        addSessionUpdates(sessions, event, session, attachmentEvents);
                     }
+                } catch (BadResponseException ex) {
+                    skipDeletedIssue(event, ex);
                 }
+                issueIndex++;
+            }
+        } finally {
+            for (; issueIndex < editsRequests.size(); issueIndex++) {
+                editsRequests.get(issueIndex).cancel(true);
+                attachmentsRequests.get(issueIndex).cancel(true);
             }
         }
         return sessions;
     }
 
+    private static <T> T getResult(Future<T> request) throws Exception {
+        try {
+            return request.get();
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof Exception) {
+                throw (Exception) ex.getCause();
+            }
+            throw ex;
+        }
+    }
+
+    private void skipDeletedIssue(ProcessEvent event, BadResponseException ex) throws BadResponseException {
+        if (ex.getStatusCode() == HttpStatus.SC_NOT_FOUND) {
+            //issue we try to get edits for were deleted so just ignore it
+            log.info("Got 404 response for the issue {}-{}", event.getKey(), event.getIssue());
+        } else {
+            //other cases are not addressed and will be thrown outside
+            throw ex;
+        }
+    }
+
     private List<IssueEditSession> getIssueUpdates(ProcessEvent event, Date minDate) throws Exception {
         List<IssueEditSession> newEdits = new ArrayList<>();
 
         List<IssueEditSession> editSessions = getEdits(event, minDate);
         for (IssueEditSession session : editSessions) {
-            List<AttachmentEvent> attachmentEvents = getAttachmentEvents(event, minDate);
-            boolean hasAttachmentEvents = false;
-            if (!attachmentEvents.isEmpty()) {
-                hasAttachmentEvents = true;
-                newEdits.add(new IssueEditSession.Builder()
-                        .updater(attachmentEvents.get(0).getAuthor())
-                        .updated(attachmentEvents.get(0).getCreated())
-                        .issue(event.getIssue())
-                        .attachments(attachmentEvents)
-                        .build());
-            }
-            if (session.hasChanges()) {
-                newEdits.add(hasAttachmentEvents ? session.removeAttachments() : session);
-            } else {
-                if (session.isCreationEdit()) {
-                    newEdits.add(hasAttachmentEvents ? session.removeAttachments() : session);
-                }
-            }
-
+            addSessionUpdates(newEdits, event, session, getAttachmentEvents(event, minDate));
         }
 
         return newEdits;
     }
 
-    private List<AttachmentEvent> getAttachmentEvents(ProcessEvent event, final Date minDate) throws Exception {
+    private void addSessionUpdates(List<IssueEditSession> newEdits, ProcessEvent event, IssueEditSession session,
+                                   List<AttachmentEvent> attachmentEvents) {
+        boolean hasAttachmentEvents = false;
+        if (!attachmentEvents.isEmpty()) {
+            hasAttachmentEvents = true;
+            newEdits.add(new IssueEditSession.Builder()
+                    .updater(attachmentEvents.get(0).getAuthor())
+                    .updated(attachmentEvents.get(0).getCreated())
+                    .issue(event.getIssue())
+                    .attachments(attachmentEvents)
+                    .build());
+        }
+        if (session.hasChanges()) {
+            newEdits.add(hasAttachmentEvents ? session.removeAttachments() : session);
+        } else {
+            if (session.isCreationEdit()) {
+                newEdits.add(hasAttachmentEvents ? session.removeAttachments() : session);
+            }
+        }
+    }
+
+    private List<AttachmentEvent> getAttachmentEvents(final ProcessEvent event, final Date minDate) throws Exception {
         final URL attachmentsUrl = issueTracker.getAttachmentsUrl(event.getIssue());
         return streamProvider.openResourceStream(attachmentsUrl,
                 new InputStreamHandler<List<AttachmentEvent>>() {
@@ -155,29 +263,12 @@ public class EditSessionsExtractor {
             public List<AttachmentEvent> handleStream(InputStream is, int responseCode) throws Exception {
 
                 checkResponseCode(responseCode, attachmentsUrl);
-
-                XMLInputFactory inputFactory = XMLInputFactory.newInstance();
-                XMLEventReader eventReader = inputFactory.createXMLEventReader(is);
-                List<AttachmentEvent> attachmentEvents = new ArrayList<>();
-                while (eventReader.hasNext()){
-                    XMLEvent nextEvent = eventReader.nextEvent();
-                    switch (nextEvent.getEventType()){
-                        case XMLStreamConstants.START_ELEMENT:
-                            if (nextEvent.asStartElement().getName().getLocalPart().equals("fileUrl")) {
-                                String url = nextEvent.asStartElement().getAttributeByName(new QName("", "url")).getValue();
-                                String name = nextEvent.asStartElement().getAttributeByName(new QName("", "name")).getValue();
-                                String author = nextEvent.asStartElement().getAttributeByName(new QName("", "authorLogin")).getValue();
-                                Date created = new Date(Long.parseLong(nextEvent.asStartElement().getAttributeByName(new QName("", "created")).getValue()));
-                                if (minDate==null || created.after(minDate)) {
-                                    attachmentEvents.add(new AttachmentEvent.Builder().created(created).author(author).url(url).name(name).build());
-                                } else {
-                                    log.debug("attachment from {} found, before {}", created, minDate);
-                                }
-                            }
-                    }
+                long startTime = System.currentTimeMillis();
+                try {
+                    return issueChangesParser.parseAttachments(is, minDate);
+                } finally {
+                    addParseTime(event.getIssue().getPrefix(), startTime);
                 }
-                log.debug("returning attachment events: {} since: {}", attachmentEvents, minDate);
-                return attachmentEvents;
             }
         });
     }
@@ -190,200 +281,12 @@ public class EditSessionsExtractor {
             public List<IssueEditSession> handleStream(InputStream is, int responseCode) throws Exception {
 
                 checkResponseCode(responseCode, issueTrackerChangesUrl);
-
-                XMLInputFactory inputFactory = XMLInputFactory.newInstance();
-                XMLEventReader eventReader = inputFactory.createXMLEventReader(is);
-                //String currentChangeType;
-                String currentFieldName = "";
-                String oldValue = "", newValue = "";
-                String updaterName = "";
-                Date updated = null;
-                Date created = null;
-                String creator = "";
-                String description = "";
-                List<IssueEditSession> extractedEdits = new ArrayList<>();
-                List<ProcessEventChange> currentChanges = new ArrayList<>();
-                LinkedHashSet<Comment> newComments = new LinkedHashSet<>();
-                List<IssueLink> links = new ArrayList<>();
-
-                while (eventReader.hasNext()) {
-                    XMLEvent nextEvent = eventReader.nextEvent();
-                    switch (nextEvent.getEventType()) {
-                        case XMLStreamConstants.START_ELEMENT:
-                            StartElement startElement = nextEvent.asStartElement();
-                            String elementName = startElement.getName().getLocalPart();
-                            switch (elementName) {
-                                case "change":
-                                    break;
-                                case "field":
-                                    currentFieldName = nextEvent.asStartElement().getAttributeByName(new QName("", "name")).getValue();
-                                    //currentChangeType = nextEvent.asStartElement().getAttributes().next().toString();
-                                    //log.info("found field named: {}: change type: {}", currentFieldName, currentChangeType);
-                                    break;
-                                case "comment":
-                                    Comment newComment = extractCommentFromStream(nextEvent.asStartElement());
-                                    if (upToDate == null || newComment.getCreated().after(upToDate)) {
-                                        newComments.add(newComment);
-                                    }
-                                    break;
-                                case "created":
-                                    currentFieldName = "created";
-                                    break;
-                                case "updaterFullName":
-                                    currentFieldName = "creator";
-                                    break;
-                                case "creator":
-                                    currentFieldName = "creator";
-                                    break;
-                                case "description":
-                                    currentFieldName = "description";
-                                    break;
-                                case "links":
-                                    currentFieldName = "links";
-                                    break;
-                                default:
-                                    String elementText;
-                                    try {
-                                        elementText = eventReader.getElementText();
-                                        switch (elementName) {
-                                            case "newValue":
-                                                newValue = elementText;
-                                                break;
-                                            case "oldValue":
-                                                oldValue = elementText;
-                                                break;
-                                            case "value":
-                                                switch (currentFieldName) {
-                                                    case "updaterName":
-                                                        updaterName = elementText;
-                                                        break;
-                                                    case "updated":
-                                                        updated = new Date(Long.parseLong(elementText));
-                                                        break;
-                                                    case "created":
-                                                        created = new Date(Long.parseLong(elementText));
-                                                        break;
-                                                    case "creator":
-                                                        creator = elementText;
-                                                        break;
-                                                    case "description":
-                                                        description = elementText;
-                                                        break;
-                                                    case "links":
-                                                        log.debug("found links");
-                                                        IssueLink link = new IssueLink.Builder()
-                                                                .type(startElement.getAttributeByName(new QName("", "type")).getValue())
-                                                                .role(startElement.getAttributeByName(new QName("", "role")).getValue())
-                                                                .relatedIssue(elementText)
-                                                                .build();
-                                                        links.add(link);
-                                                        log.debug("adding link: {}", link);
-                                                        break;
-                                                }
-                                        }
-                                    } catch (Exception e) {
-                                        //no text..
-                                    }
-                                    break;
-                            }
-                            break;
-
-                        case XMLStreamConstants.END_ELEMENT:
-                            EndElement endElement = nextEvent.asEndElement();
-                            String tagName = endElement.getName().getLocalPart();
-                            switch (tagName) {
-                                case "field":
-                                    if (newValue.length() > 0) {
-                                        //include only non-processed changes
-                                        if (upToDate == null || updated.after(upToDate)) {
-                                            if (currentFieldName.equals("resolved")) {
-                                                newValue = new Date(Long.parseLong(newValue)).toString();
-                                            }
-                                            ProcessEventChange processEventChange = new ProcessEventChange.Builder()
-                                                    .updater(updaterName)
-                                                    .updated(updated)
-                                                    .field(StringUtils.trim(currentFieldName))
-                                                    .priorValue(StringUtils.trim(oldValue))
-                                                    .currentValue(StringUtils.trim(newValue))
-                                                    .build();
-
-                                            currentChanges.add(processEventChange);
-                                        }
-                                        currentFieldName = "";
-                                        oldValue = "";
-                                        newValue = "";
-
-                                    }
-                                    break;
-                                case "change":
-                                    if (upToDate == null || updated.after(upToDate)) {
-                                        log.debug("upToDate: {} updated: {}", upToDate, updated);
-                                        List<IssueEdit> edits = buildIssueEdits(currentChanges);
-//                                        for (Comment comment : newComments){
-//                                            session = new IssueEditSession.Builder()
-//                                                    .updater(comment.getAuthor())
-//                                                    .updated(comment.getCreated())
-//                                                    .issue(e.getIssue())
-//                                                    .comment(comment)
-//                                                    .build();
-//                                            extractedEdits.add(session);
-//                                        }
-                                        Issue issue = new Issue.Builder()
-                                                .projectPrefix(e.getIssue().getPrefix())
-                                                .id(e.getIssue().getId())
-                                                .title(e.getIssue().getTitle())
-                                                .created(created)
-                                                .creator(creator)
-                                                .link(e.getIssue().getLink())
-                                                .description(description).build();
-                                        IssueEditSession session = new IssueEditSession.Builder()
-                                                .updater(updaterName)
-                                                .updated(updated)
-                                                .issue(issue)
-                                                .changes(edits)
-                                                .build();
-                                        extractedEdits.add(session);
-                                    } else {
-                                        log.debug("skipped change dated: {}", updated);
-                                    }
-                                    currentChanges.clear();
-                                    break;
-                            }
-                            break;
-
-                    }
-                }
-                if (upToDate == null || created.after(upToDate)) {
-                    Issue newIssue = new Issue.Builder()
-                            .projectPrefix(e.getIssue().getPrefix())
-                            .id(e.getIssue().getId())
-                            .created(created)
-                            .creator(updaterName)
-                            .description(description)
-                            .title(e.getIssue().getTitle())
-                            .link(e.getIssue().getLink())
-                            .build();
-                    IssueEditSession session = new IssueEditSession.Builder()
-                            .updater(updaterName)
-                            .updated(updated)
-                            .issue(newIssue)
-                            .links(links)
-                            .build();
-                    log.info("found new issue created on: {}: {}", created, newIssue);
-                    extractedEdits.add(session);
-                }
-                for (Comment comment : newComments) {
-                    if (upToDate == null || comment.getCreated().after(upToDate)) {
-                        IssueEditSession session = new IssueEditSession.Builder()
-                                .updater(comment.getAuthor())
-                                .updated(comment.getCreated())
-                                .issue(e.getIssue())
-                                .comment(comment)
-                                .build();
-                        extractedEdits.add(session);
-                    }
+                long startTime = System.currentTimeMillis();
+                try {
+                    return issueChangesParser.parseChanges(is, e, upToDate);
+                } finally {
+                    addParseTime(e.getIssue().getPrefix(), startTime);
                 }
-                return extractedEdits;
             }
         });
     }
@@ -395,38 +298,9 @@ public class EditSessionsExtractor {
         }
     }
 
-    private Comment extractCommentFromStream(StartElement commentTag) {
-        return new Comment.Builder()
-                .id(commentTag.getAttributeByName(new QName("", "id")).getValue())
-                .author(commentTag.getAttributeByName(new QName("", "authorFullName")).getValue())
-                .text(commentTag.getAttributeByName(new QName("", "text")).getValue())
-                .deleted(Boolean.valueOf(commentTag.getAttributeByName(new QName("", "deleted")).getValue()))
-                .created(new Date(Long.parseLong(commentTag.getAttributeByName(new QName("", "created")).getValue())))
-                .build();
-    }
-
-    private List<IssueEdit> buildIssueEdits(List<ProcessEventChange> changes) {
-
-        List<IssueEdit> edits = new ArrayList<>(changes.size());
-        for (ProcessEventChange change : changes){
-            if (!isFieldExcluded(change)) {
-                edits.add(new IssueEdit.Builder()
-                        .issue(change.getIssue())
-                        .field(change.getField())
-                        .priorValue(change.getPriorValue())
-                        .currentValue(change.getCurrentValue())
-                        .build());
-            }
-        }
-        return edits;
-    }
-
-    private boolean isFieldExcluded(ProcessEventChange change) {
-        return change.getField() == null || excludedFields.contains(change.getField());
-    }
-
     /**
      * Once we have this open, we should make sure that we are not resending events we have already seen.
+     * The feed is read issue by issue as it arrives, only the beginning of it is captured for the response log.
      *
      * @return the last event that was returned to the user of this class
      */
@@ -439,26 +313,27 @@ public class EditSessionsExtractor {
 
                 checkResponseCode(responseCode, feedUrl);
 
-                byte[] buf = IOUtils.toByteArray(is);
-                ByteArrayInputStream bas = new ByteArrayInputStream(buf);
-                if (responseContentLogger.isDebugEnabled()){
-                    responseContentLogger.debug("Got response from url: {} \n{}", feedUrl, new String(buf));
-                }
-                IssueList issueList = Mapper.createXmlMapper().readValue(bas, IssueList.class);
-                Iterable<com.ontometrics.integrations.model.Issue> processedIssues = Iterables.filter(issueList.getIssues(), new Predicate<com.ontometrics.integrations.model.Issue>() {
-                    @Override
-                    public boolean apply(com.ontometrics.integrations.model.Issue issue) {
-                        return !issue.getId().toLowerCase().startsWith("draft");
+                CappedByteArrayOutputStream responseContent = responseContentLogger.isDebugEnabled()
+                        ? new CappedByteArrayOutputStream(responseLogLimit) : null;
+                long startTime = System.currentTimeMillis();
+                try {
+                    IssueFeedReader feedReader = new IssueFeedReader(
+                            responseContent == null ? is : new TeeInputStream(is, responseContent));
+                    ImmutableList.Builder<ProcessEvent> events = ImmutableList.builder();
+                    com.ontometrics.integrations.model.Issue issue;
+                    while ((issue = feedReader.readIssue()) != null) {
+                        if (!issue.getId().toLowerCase().startsWith("draft")) {
+                            events.add(extractEventFromStream(issue, project));
+                        }
+                    }
+                    return events.build();
+                } finally {
+                    addParseTime(project, startTime);
+                    if (responseContent != null) {
+                        responseContentLogger.debug("Got response from url: {} \n{}", feedUrl,
+                                responseContent.toString("UTF-8"));
                     }
-                });
-
-                return ImmutableList.copyOf(Iterables.transform(processedIssues,
-                        new Function<com.ontometrics.integrations.model.Issue, ProcessEvent>() {
-                            @Override
-                            public ProcessEvent apply(com.ontometrics.integrations.model.Issue issue) {
-                                return extractEventFromStream(issue, project);
-                            }
-                        }));
+                }
             }
         });
     }
@@ -483,6 +358,25 @@ public class EditSessionsExtractor {
         return event;
     }
 
+    private void addParseTime(String project, long startTime) {
+        AtomicLong parseTime = parseTimes.get(project);
+        if (parseTime == null) {
+            parseTimes.putIfAbsent(project, new AtomicLong());
+            parseTime = parseTimes.get(project);
+        }
+        parseTime.addAndGet(System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * @param project project key
+     * @return total time (in milliseconds) spent reading and parsing YouTrack responses of the project, responses
+     * are parsed as they are read, so it includes time of receiving response bodies
+     */
+    public long getParseTime(String project) {
+        AtomicLong parseTime = parseTimes.get(project);
+        return parseTime == null ? 0 : parseTime.get();
+    }
+
     private DateFormat createEventDateFormat() {
         SimpleDateFormat dateFormat = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss", Locale.ENGLISH);
         dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
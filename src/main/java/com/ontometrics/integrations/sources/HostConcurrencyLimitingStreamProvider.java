@@ -0,0 +1,73 @@
+package com.ontometrics.integrations.sources;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URL;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+
+/**
+ * {@link com.ontometrics.integrations.sources.StreamProvider} which limits number of resources opened concurrently
+ * on the same host (host and port). Callers exceeding the limit wait until one of the opened resources is handled.
+ * <p>
+ * Note that {@link com.ontometrics.integrations.sources.InputStreamHandler} should not open another resource on
+ * the same host, otherwise it may wait for the permit forever.
+ * </p>
+ * HostConcurrencyLimitingStreamProvider.java
+ */
+public class HostConcurrencyLimitingStreamProvider implements StreamProvider {
+
+    private static final Logger logger = LoggerFactory.getLogger(HostConcurrencyLimitingStreamProvider.class);
+
+    private final StreamProvider streamProvider;
+    private final int maxRequestsPerHost;
+    private final ConcurrentMap<String, Semaphore> hostPermits = new ConcurrentHashMap<>();
+
+    /**
+     * @param streamProvider provider which opens resources
+     * @param maxRequestsPerHost maximum number of resources opened concurrently on the same host
+     */
+    public HostConcurrencyLimitingStreamProvider(StreamProvider streamProvider, int maxRequestsPerHost) {
+        if (streamProvider == null) {
+            throw new IllegalArgumentException("You must provide streamProvider.");
+        }
+        if (maxRequestsPerHost <= 0) {
+            throw new IllegalArgumentException("maxRequestsPerHost should be positive");
+        }
+        this.streamProvider = streamProvider;
+        this.maxRequestsPerHost = maxRequestsPerHost;
+    }
+
+    @Override
+    public <RES> RES openResourceStream(URL resourceUrl, InputStreamHandler<RES> inputStreamHandler) throws Exception {
+        Semaphore permits = getHostPermits(resourceUrl);
+        if (!permits.tryAcquire()) {
+            logger.debug("Waiting for permit to access {}", resourceUrl);
+            permits.acquire();
+        }
+        try {
+            return streamProvider.openResourceStream(resourceUrl, inputStreamHandler);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private Semaphore getHostPermits(URL resourceUrl) {
+        String host = resourceUrl.getHost() + ":" + resourceUrl.getPort();
+        Semaphore permits = hostPermits.get(host);
+        if (permits == null) {
+            Semaphore newPermits = new Semaphore(maxRequestsPerHost, true);
+            permits = hostPermits.putIfAbsent(host, newPermits);
+            if (permits == null) {
+                permits = newPermits;
+            }
+        }
+        return permits;
+    }
+
+    public int getMaxRequestsPerHost() {
+        return maxRequestsPerHost;
+    }
+}
@@ -0,0 +1,205 @@
+package com.ontometrics.integrations.sources;
+
+import com.ontometrics.db.GroupCommitter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache of http responses with their validators (ETag and Last-Modified headers) backed by a persistent map,
+ * see {@link com.ontometrics.db.MapDb#getHttpCacheMap()}. Total size of the cached entries is limited, least
+ * recently used entries are evicted first.
+ * <p>
+ * Access order is kept in memory, after restart entries found in the store are considered to be the least
+ * recently used ones. Changes of the store are committed by the committer.
+ * </p>
+ * HttpResponseCache.java
+ */
+public class HttpResponseCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(HttpResponseCache.class);
+
+    private final Map<String, byte[]> store;
+    private final GroupCommitter committer;
+    private final long maxSize;
+
+    /**
+     * Size of the entries by key in access order
+     */
+    private final LinkedHashMap<String, Integer> entrySizes = new LinkedHashMap<>(16, 0.75f, true);
+    private long size;
+
+    /**
+     * @param store     persistent map which keeps the entries
+     * @param committer commits changes of the store
+     * @param maxSize   maximum total size (in bytes) of the cached entries
+     */
+    public HttpResponseCache(Map<String, byte[]> store, GroupCommitter committer, long maxSize) {
+        this.store = store;
+        this.committer = committer;
+        this.maxSize = maxSize;
+        for (Map.Entry<String, byte[]> entry : store.entrySet()) {
+            entrySizes.put(entry.getKey(), entry.getValue().length);
+            size += entry.getValue().length;
+        }
+        if (evict() > 0) {
+            committer.changed();
+        }
+        logger.info("Http cache contains {} entries of {} bytes", entrySizes.size(), size);
+    }
+
+    /**
+     * @return cached response or null if there is no response for the key
+     */
+    public CachedResponse get(String key) {
+        synchronized (this) {
+            if (entrySizes.get(key) == null) {
+                return null;
+            }
+        }
+        byte[] value = store.get(key);
+        try {
+            return value == null ? null : CachedResponse.decode(value);
+        } catch (IOException ex) {
+            logger.warn("Failed to read cached response of " + key, ex);
+            remove(key);
+            return null;
+        }
+    }
+
+    /**
+     * Caches the response, responses larger than the cache are not cached
+     */
+    public void put(String key, CachedResponse response) {
+        byte[] value;
+        try {
+            value = response.encode();
+        } catch (IOException ex) {
+            logger.warn("Failed to cache response of " + key, ex);
+            return;
+        }
+        synchronized (this) {
+            if (value.length > maxSize) {
+                removeEntry(key);
+            } else {
+                store.put(key, value);
+                Integer previousSize = entrySizes.put(key, value.length);
+                size += value.length - (previousSize == null ? 0 : previousSize);
+                evict();
+            }
+        }
+        committer.changed();
+    }
+
+    public void remove(String key) {
+        synchronized (this) {
+            removeEntry(key);
+        }
+        committer.changed();
+    }
+
+    /**
+     * @return number of cached responses
+     */
+    public synchronized int getEntries() {
+        return entrySizes.size();
+    }
+
+    /**
+     * @return total size of the cached responses in bytes
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    private void removeEntry(String key) {
+        Integer entrySize = entrySizes.remove(key);
+        if (entrySize != null) {
+            size -= entrySize;
+        }
+        store.remove(key);
+    }
+
+    /**
+     * @return number of evicted entries
+     */
+    private int evict() {
+        int evicted = 0;
+        Iterator<Map.Entry<String, Integer>> leastRecentlyUsed = entrySizes.entrySet().iterator();
+        while (size > maxSize && leastRecentlyUsed.hasNext()) {
+            Map.Entry<String, Integer> entry = leastRecentlyUsed.next();
+            size -= entry.getValue();
+            store.remove(entry.getKey());
+            leastRecentlyUsed.remove();
+            evicted++;
+        }
+        return evicted;
+    }
+
+    /**
+     * Response content with its validators
+     */
+    public static class CachedResponse {
+        private final String etag;
+        private final String lastModified;
+        private final byte[] content;
+
+        public CachedResponse(String etag, String lastModified, byte[] content) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.content = content;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        public String getLastModified() {
+            return lastModified;
+        }
+
+        public byte[] getContent() {
+            return content;
+        }
+
+        private byte[] encode() throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(content.length + 128);
+            try (DataOutputStream out = new DataOutputStream(bytes)) {
+                writeString(out, etag);
+                writeString(out, lastModified);
+                out.writeInt(content.length);
+                out.write(content);
+            }
+            return bytes.toByteArray();
+        }
+
+        private static CachedResponse decode(byte[] value) throws IOException {
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(value))) {
+                String etag = readString(in);
+                String lastModified = readString(in);
+                byte[] content = new byte[in.readInt()];
+                in.readFully(content);
+                return new CachedResponse(etag, lastModified, content);
+            }
+        }
+
+        private static void writeString(DataOutputStream out, String value) throws IOException {
+            out.writeBoolean(value != null);
+            if (value != null) {
+                out.writeUTF(value);
+            }
+        }
+
+        private static String readString(DataInputStream in) throws IOException {
+            return in.readBoolean() ? in.readUTF() : null;
+        }
+    }
+}
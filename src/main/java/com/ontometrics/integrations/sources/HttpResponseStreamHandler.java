@@ -0,0 +1,13 @@
+package com.ontometrics.integrations.sources;
+
+import org.apache.http.HttpResponse;
+
+import java.io.InputStream;
+
+/**
+ * Handler of the http response content which produces a result, response status and headers are available
+ * from the {@link org.apache.http.HttpResponse}
+ */
+public interface HttpResponseStreamHandler<RES> {
+    RES handleStream(InputStream is, HttpResponse response) throws Exception;
+}
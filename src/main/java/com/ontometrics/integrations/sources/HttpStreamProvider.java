@@ -0,0 +1,24 @@
+package com.ontometrics.integrations.sources;
+
+import java.net.URL;
+import java.util.Map;
+
+/**
+ * {@link com.ontometrics.integrations.sources.StreamProvider} of http resources which allows to send additional
+ * request headers and to access the headers of the response
+ *
+ * HttpStreamProvider.java
+ */
+public interface HttpStreamProvider extends StreamProvider {
+    /**
+     * Requests the resource and provides the response to
+     * {@link com.ontometrics.integrations.sources.HttpResponseStreamHandler#handleStream(java.io.InputStream, org.apache.http.HttpResponse)}
+     * @param resourceUrl     url of the resource
+     * @param requestHeaders  headers added to the request
+     * @param responseHandler response handler
+     * @param <RES> class of response handling result
+     * @return result
+     */
+    <RES> RES openResourceStream(URL resourceUrl, Map<String, String> requestHeaders,
+                                 HttpResponseStreamHandler<RES> responseHandler) throws Exception;
+}
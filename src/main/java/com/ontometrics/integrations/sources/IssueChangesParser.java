@@ -0,0 +1,362 @@
+package com.ontometrics.integrations.sources;
+
+import com.ontometrics.integrations.events.*;
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.InputStream;
+import java.util.*;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Parses change history (<code>/rest/issue/{id}/changes</code>) and attachments (<code>/rest/issue/{id}/attachment</code>)
+ * of the issue with the cursor based {@link javax.xml.stream.XMLStreamReader}.
+ * <p>
+ * Instances are immutable and thread-safe, all of them share single {@link javax.xml.stream.XMLInputFactory}.
+ * </p>
+ * IssueChangesParser.java
+ */
+public class IssueChangesParser {
+
+    private static final Logger log = getLogger(IssueChangesParser.class);
+
+    private static final XMLInputFactory INPUT_FACTORY = XMLInputFactory.newInstance();
+
+    private static final String CHANGE = "change";
+    private static final String FIELD = "field";
+    private static final String COMMENT = "comment";
+    private static final String VALUE = "value";
+    private static final String OLD_VALUE = "oldValue";
+    private static final String NEW_VALUE = "newValue";
+    private static final String FILE_URL = "fileUrl";
+
+    private static final String FIELD_CREATED = "created";
+    private static final String FIELD_CREATOR = "creator";
+    private static final String FIELD_DESCRIPTION = "description";
+    private static final String FIELD_LINKS = "links";
+    private static final String FIELD_UPDATER_NAME = "updaterName";
+    private static final String FIELD_UPDATED = "updated";
+    private static final String FIELD_RESOLVED = "resolved";
+    private static final String UPDATER_FULL_NAME = "updaterFullName";
+
+    private static final String ATTR_NAME = "name";
+    private static final String ATTR_TYPE = "type";
+    private static final String ATTR_ROLE = "role";
+    private static final String ATTR_ID = "id";
+    private static final String ATTR_AUTHOR_FULL_NAME = "authorFullName";
+    private static final String ATTR_AUTHOR_LOGIN = "authorLogin";
+    private static final String ATTR_TEXT = "text";
+    private static final String ATTR_DELETED = "deleted";
+    private static final String ATTR_CREATED = "created";
+    private static final String ATTR_URL = "url";
+
+    private final List<String> excludedFields;
+
+    /**
+     * @param excludedFields fields, changes of which should not be included into the sessions
+     */
+    public IssueChangesParser(List<String> excludedFields) {
+        this.excludedFields = excludedFields;
+    }
+
+    /**
+     * @param is       changes of the issue
+     * @param e        event of the issue in the feed
+     * @param upToDate changes made before or at this date are skipped, may be null
+     * @return edit sessions: changes, creation of the issue and comments
+     * @throws XMLStreamException if stream is not well-formed
+     */
+    public List<IssueEditSession> parseChanges(InputStream is, ProcessEvent e, Date upToDate) throws XMLStreamException {
+        XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader(is);
+        try {
+            return parseChanges(reader, e, upToDate);
+        } finally {
+            reader.close();
+        }
+    }
+
+    private List<IssueEditSession> parseChanges(XMLStreamReader reader, ProcessEvent e, Date upToDate) throws XMLStreamException {
+        String currentFieldName = "";
+        String oldValue = "", newValue = "";
+        String updaterName = "";
+        Date updated = null;
+        Date created = null;
+        String creator = "";
+        String description = "";
+        List<IssueEditSession> extractedEdits = new ArrayList<>();
+        List<ProcessEventChange> currentChanges = new ArrayList<>();
+        LinkedHashSet<Comment> newComments = new LinkedHashSet<>();
+        List<IssueLink> links = new ArrayList<>();
+        StringBuilder text = new StringBuilder();
+
+        int eventType = reader.next();
+        while (eventType != XMLStreamConstants.END_DOCUMENT) {
+            if (eventType == XMLStreamConstants.START_ELEMENT) {
+                String elementName = reader.getLocalName();
+                switch (elementName) {
+                    case CHANGE:
+                        break;
+                    case FIELD:
+                        currentFieldName = StringUtils.defaultString(reader.getAttributeValue(null, ATTR_NAME));
+                        break;
+                    case COMMENT:
+                        Comment newComment = extractComment(reader);
+                        if (upToDate == null || newComment.getCreated().after(upToDate)) {
+                            newComments.add(newComment);
+                        }
+                        break;
+                    case FIELD_CREATED:
+                        currentFieldName = FIELD_CREATED;
+                        break;
+                    case UPDATER_FULL_NAME:
+                    case FIELD_CREATOR:
+                        currentFieldName = FIELD_CREATOR;
+                        break;
+                    case FIELD_DESCRIPTION:
+                        currentFieldName = FIELD_DESCRIPTION;
+                        break;
+                    case FIELD_LINKS:
+                        currentFieldName = FIELD_LINKS;
+                        break;
+                    case NEW_VALUE:
+                    case OLD_VALUE:
+                    case VALUE:
+                        String linkType = null, linkRole = null;
+                        if (FIELD_LINKS.equals(currentFieldName)) {
+                            linkType = reader.getAttributeValue(null, ATTR_TYPE);
+                            linkRole = reader.getAttributeValue(null, ATTR_ROLE);
+                        }
+                        if (!readElementText(reader, text)) {
+                            //element has nested elements, they are processed as usual
+                            eventType = reader.getEventType();
+                            continue;
+                        }
+                        String elementText = text.toString();
+                        if (elementName.equals(NEW_VALUE)) {
+                            newValue = elementText;
+                        } else if (elementName.equals(OLD_VALUE)) {
+                            oldValue = elementText;
+                        } else {
+                            switch (currentFieldName) {
+                                case FIELD_UPDATER_NAME:
+                                    updaterName = elementText;
+                                    break;
+                                case FIELD_UPDATED:
+                                    updated = parseDate(elementText, updated);
+                                    break;
+                                case FIELD_CREATED:
+                                    created = parseDate(elementText, created);
+                                    break;
+                                case FIELD_CREATOR:
+                                    creator = elementText;
+                                    break;
+                                case FIELD_DESCRIPTION:
+                                    description = elementText;
+                                    break;
+                                case FIELD_LINKS:
+                                    log.debug("found links");
+                                    if (linkType != null && linkRole != null) {
+                                        IssueLink link = new IssueLink.Builder()
+                                                .type(linkType)
+                                                .role(linkRole)
+                                                .relatedIssue(elementText)
+                                                .build();
+                                        links.add(link);
+                                        log.debug("adding link: {}", link);
+                                    }
+                                    break;
+                            }
+                        }
+                        break;
+                }
+            } else if (eventType == XMLStreamConstants.END_ELEMENT) {
+                switch (reader.getLocalName()) {
+                    case FIELD:
+                        if (newValue.length() > 0) {
+                            //include only non-processed changes
+                            if (upToDate == null || updated.after(upToDate)) {
+                                if (currentFieldName.equals(FIELD_RESOLVED)) {
+                                    newValue = new Date(Long.parseLong(newValue)).toString();
+                                }
+                                ProcessEventChange processEventChange = new ProcessEventChange.Builder()
+                                        .updater(updaterName)
+                                        .updated(updated)
+                                        .field(StringUtils.trim(currentFieldName))
+                                        .priorValue(StringUtils.trim(oldValue))
+                                        .currentValue(StringUtils.trim(newValue))
+                                        .build();
+
+                                currentChanges.add(processEventChange);
+                            }
+                            currentFieldName = "";
+                            oldValue = "";
+                            newValue = "";
+                        }
+                        break;
+                    case CHANGE:
+                        if (upToDate == null || updated.after(upToDate)) {
+                            log.debug("upToDate: {} updated: {}", upToDate, updated);
+                            Issue issue = new Issue.Builder()
+                                    .projectPrefix(e.getIssue().getPrefix())
+                                    .id(e.getIssue().getId())
+                                    .title(e.getIssue().getTitle())
+                                    .created(created)
+                                    .creator(creator)
+                                    .link(e.getIssue().getLink())
+                                    .description(description).build();
+                            IssueEditSession session = new IssueEditSession.Builder()
+                                    .updater(updaterName)
+                                    .updated(updated)
+                                    .issue(issue)
+                                    .changes(buildIssueEdits(currentChanges))
+                                    .build();
+                            extractedEdits.add(session);
+                        } else {
+                            log.debug("skipped change dated: {}", updated);
+                        }
+                        currentChanges.clear();
+                        break;
+                }
+            }
+            eventType = reader.next();
+        }
+
+        if (upToDate == null || created.after(upToDate)) {
+            Issue newIssue = new Issue.Builder()
+                    .projectPrefix(e.getIssue().getPrefix())
+                    .id(e.getIssue().getId())
+                    .created(created)
+                    .creator(updaterName)
+                    .description(description)
+                    .title(e.getIssue().getTitle())
+                    .link(e.getIssue().getLink())
+                    .build();
+            IssueEditSession session = new IssueEditSession.Builder()
+                    .updater(updaterName)
+                    .updated(updated)
+                    .issue(newIssue)
+                    .links(links)
+                    .build();
+            log.info("found new issue created on: {}: {}", created, newIssue);
+            extractedEdits.add(session);
+        }
+        for (Comment comment : newComments) {
+            if (upToDate == null || comment.getCreated().after(upToDate)) {
+                IssueEditSession session = new IssueEditSession.Builder()
+                        .updater(comment.getAuthor())
+                        .updated(comment.getCreated())
+                        .issue(e.getIssue())
+                        .comment(comment)
+                        .build();
+                extractedEdits.add(session);
+            }
+        }
+        return extractedEdits;
+    }
+
+    /**
+     * @param is      attachments of the issue
+     * @param minDate attachments created before or at this date are skipped, may be null
+     * @return attachments of the issue
+     * @throws XMLStreamException if stream is not well-formed
+     */
+    public List<AttachmentEvent> parseAttachments(InputStream is, Date minDate) throws XMLStreamException {
+        XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader(is);
+        List<AttachmentEvent> attachmentEvents = new ArrayList<>();
+        try {
+            while (reader.hasNext()) {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT && reader.getLocalName().equals(FILE_URL)) {
+                    Date created = new Date(Long.parseLong(reader.getAttributeValue(null, ATTR_CREATED)));
+                    if (minDate == null || created.after(minDate)) {
+                        attachmentEvents.add(new AttachmentEvent.Builder()
+                                .created(created)
+                                .author(reader.getAttributeValue(null, ATTR_AUTHOR_LOGIN))
+                                .url(reader.getAttributeValue(null, ATTR_URL))
+                                .name(reader.getAttributeValue(null, ATTR_NAME))
+                                .build());
+                    } else {
+                        log.debug("attachment from {} found, before {}", created, minDate);
+                    }
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        log.debug("returning attachment events: {} since: {}", attachmentEvents, minDate);
+        return attachmentEvents;
+    }
+
+    /**
+     * Reads text of the current element
+     *
+     * @param reader reader positioned at the start of element
+     * @param text   buffer which receives the text
+     * @return true if element contains text only, reader is positioned at the end of element;
+     * false if element contains nested element, reader is positioned at the start of nested element
+     */
+    private static boolean readElementText(XMLStreamReader reader, StringBuilder text) throws XMLStreamException {
+        text.setLength(0);
+        while (true) {
+            switch (reader.next()) {
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                case XMLStreamConstants.ENTITY_REFERENCE:
+                    text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    return true;
+                case XMLStreamConstants.START_ELEMENT:
+                    return false;
+                case XMLStreamConstants.END_DOCUMENT:
+                    throw new XMLStreamException("Unexpected end of document", reader.getLocation());
+                default:
+                    //comments and processing instructions are skipped
+                    break;
+            }
+        }
+    }
+
+    private static Date parseDate(String value, Date defaultValue) {
+        if (!StringUtils.isNumeric(value) || value.isEmpty()) {
+            log.debug("skipping malformed date {}", value);
+            return defaultValue;
+        }
+        return new Date(Long.parseLong(value));
+    }
+
+    private Comment extractComment(XMLStreamReader reader) {
+        return new Comment.Builder()
+                .id(reader.getAttributeValue(null, ATTR_ID))
+                .author(reader.getAttributeValue(null, ATTR_AUTHOR_FULL_NAME))
+                .text(reader.getAttributeValue(null, ATTR_TEXT))
+                .deleted(Boolean.valueOf(reader.getAttributeValue(null, ATTR_DELETED)))
+                .created(new Date(Long.parseLong(reader.getAttributeValue(null, ATTR_CREATED))))
+                .build();
+    }
+
+    private List<IssueEdit> buildIssueEdits(List<ProcessEventChange> changes) {
+
+        List<IssueEdit> edits = new ArrayList<>(changes.size());
+        for (ProcessEventChange change : changes){
+            if (!isFieldExcluded(change)) {
+                edits.add(new IssueEdit.Builder()
+                        .issue(change.getIssue())
+                        .field(change.getField())
+                        .priorValue(change.getPriorValue())
+                        .currentValue(change.getCurrentValue())
+                        .build());
+            }
+        }
+        return edits;
+    }
+
+    private boolean isFieldExcluded(ProcessEventChange change) {
+        return change.getField() == null || excludedFields.contains(change.getField());
+    }
+}
@@ -0,0 +1,66 @@
+package com.ontometrics.integrations.sources;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.ontometrics.integrations.model.Issue;
+import com.ontometrics.util.Mapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads issues of the project feed ({@code /rest/issue/byproject} response) one by one, so that only the issue
+ * being read is kept in memory rather than the whole {@link com.ontometrics.integrations.model.IssueList}.
+ * <p>
+ * Reader does not close the stream, it is owned by the caller.
+ * </p>
+ * IssueFeedReader.java
+ */
+public class IssueFeedReader {
+
+    private static final String ISSUE = "issue";
+
+    private final ObjectReader issueReader;
+    private final JsonParser parser;
+    private boolean started;
+    private boolean finished;
+
+    /**
+     * @param is feed stream
+     */
+    public IssueFeedReader(InputStream is) throws IOException {
+        this.issueReader = Mapper.xmlReader(Issue.class);
+        this.parser = issueReader.getFactory().createParser(is);
+    }
+
+    /**
+     * @return next issue from the feed or null if there are no more issues
+     */
+    public Issue readIssue() throws IOException {
+        if (finished) {
+            return null;
+        }
+        if (!started) {
+            started = true;
+            //feed without issues may be reported as an empty value rather than an object
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                finished = true;
+                return null;
+            }
+        }
+        JsonToken token;
+        while ((token = parser.nextToken()) == JsonToken.FIELD_NAME) {
+            JsonToken valueToken = parser.nextToken();
+            if (ISSUE.equals(parser.getCurrentName()) && valueToken == JsonToken.START_OBJECT) {
+                return issueReader.readValue(parser);
+            }
+            parser.skipChildren();
+        }
+        if (token != JsonToken.END_OBJECT) {
+            throw new IOException("Unexpected token " + token + " in the issue feed");
+        }
+        finished = true;
+        return null;
+    }
+}
@@ -1,9 +1,10 @@
 package com.ontometrics.integrations.sources;
 
 import org.apache.commons.lang.StringUtils;
-import org.apache.http.HttpHost;
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.StatusLine;
+import org.apache.http.client.HttpClient;
 import org.apache.http.client.ResponseHandler;
 import org.apache.http.client.fluent.Executor;
 import org.apache.http.client.fluent.Request;
@@ -11,12 +12,14 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
+import java.util.Map;
 
 /**
  * ExternalStreamProvider.java
  */
-public class NonAuthenticatedHttpStreamProvider implements StreamProvider {
+public class NonAuthenticatedHttpStreamProvider implements HttpStreamProvider {
 
     private static final Logger logger = LoggerFactory.getLogger(NonAuthenticatedHttpStreamProvider.class);
 
@@ -25,6 +28,13 @@ public class NonAuthenticatedHttpStreamProvider implements StreamProvider {
         this.httpExecutor = Executor.newInstance();
     }
 
+    /**
+     * @param httpClient client performing requests, e.g. one from {@link com.ontometrics.util.HttpConnectionPool}
+     */
+    public NonAuthenticatedHttpStreamProvider(HttpClient httpClient) {
+        this.httpExecutor = Executor.newInstance(httpClient);
+    }
+
     /**
      * @throws IOException
      */
@@ -34,7 +44,30 @@ public class NonAuthenticatedHttpStreamProvider implements StreamProvider {
         return openResourceStream(request, inputStreamHandler, httpExecutor);
     }
 
+    @Override
+    public <RES> RES openResourceStream(URL resourceUrl, Map<String, String> requestHeaders,
+                                        HttpResponseStreamHandler<RES> responseHandler) throws Exception {
+        return openResourceStream(createRequest(resourceUrl, requestHeaders), responseHandler, httpExecutor);
+    }
+
+    static Request createRequest(URL resourceUrl, Map<String, String> requestHeaders) {
+        Request request = Request.Get(resourceUrl.toExternalForm());
+        for (Map.Entry<String, String> header : requestHeaders.entrySet()) {
+            request.addHeader(header.getKey(), header.getValue());
+        }
+        return request;
+    }
+
     public static <RES> RES openResourceStream(Request request, final InputStreamHandler<RES> inputStreamHandler, Executor httpExecutor) throws Exception {
+        return openResourceStream(request, new HttpResponseStreamHandler<RES>() {
+            @Override
+            public RES handleStream(InputStream is, HttpResponse response) throws Exception {
+                return inputStreamHandler.handleStream(is, response.getStatusLine().getStatusCode());
+            }
+        }, httpExecutor);
+    }
+
+    public static <RES> RES openResourceStream(Request request, final HttpResponseStreamHandler<RES> responseHandler, Executor httpExecutor) throws Exception {
         return httpExecutor.execute(request)
                 .handleResponse(
                         new ResponseHandler<RES>() {
@@ -47,7 +80,8 @@ public class NonAuthenticatedHttpStreamProvider implements StreamProvider {
                                     } else {
                                         logger.debug("Got response with code {}", statusLine.getStatusCode());
                                     }
-                                    return inputStreamHandler.handleStream(httpResponse.getEntity().getContent(), statusLine.getStatusCode());
+                                    HttpEntity entity = httpResponse.getEntity();
+                                    return responseHandler.handleStream(entity == null ? null : entity.getContent(), httpResponse);
                                 } catch (IOException e) {
                                     throw e;
                                 } catch (Exception e) {
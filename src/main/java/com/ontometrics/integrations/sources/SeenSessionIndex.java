@@ -0,0 +1,211 @@
+package com.ontometrics.integrations.sources;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import com.google.common.hash.Hashing;
+import com.ontometrics.db.GroupCommitter;
+import com.ontometrics.integrations.events.IssueEditSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Index of edit sessions which have been posted, so sessions extracted again (e.g. after the last processed date
+ * went back or the history window was widened) are not posted twice, see
+ * {@link com.ontometrics.db.MapDb#getSeenSessionMap()}.
+ * <p>
+ * Session is identified by 64-bit hash of its issue, updater, update time and comment id, the store keeps update
+ * time of the session by its hash. Bloom filter of the stored hashes is kept in memory, so most of sessions
+ * which have not been seen are not looked up in the store. Sessions updated before the given time are pruned
+ * once an hour, the filter is rebuilt then.
+ * </p>
+ * SeenSessionIndex.java
+ */
+public class SeenSessionIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(SeenSessionIndex.class);
+
+    /**
+     * Minimum number of sessions the filter is built for
+     */
+    private static final int MIN_CAPACITY = 1 << 20;
+    private static final double FALSE_POSITIVE_PROBABILITY = 0.01;
+    private static final long PRUNE_INTERVAL = TimeUnit.HOURS.toMillis(1);
+
+    private final Map<Long, Long> store;
+    private final GroupCommitter committer;
+
+    private BloomFilter<Long> filter;
+    /**
+     * Number of sessions the filter is built for
+     */
+    private long capacity;
+    /**
+     * Number of stored sessions
+     */
+    private long size;
+    private long lastPruneTime;
+
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong falsePositives = new AtomicLong();
+
+    /**
+     * @param store     persistent map which keeps update time of the sessions by session hash, its size should
+     *                  be counted (not computed by iteration)
+     * @param committer commits sessions marked as seen
+     */
+    public SeenSessionIndex(Map<Long, Long> store, GroupCommitter committer) {
+        this.store = store;
+        this.committer = committer;
+        synchronized (this) {
+            buildFilter();
+            lastPruneTime = System.currentTimeMillis();
+        }
+        log.info("Seen session index contains {} sessions", size);
+    }
+
+    /**
+     * @return sessions which have not been seen in the same order
+     */
+    public List<IssueEditSession> filterSeen(List<IssueEditSession> sessions) {
+        List<IssueEditSession> unseen = new ArrayList<>(sessions.size());
+        for (IssueEditSession session : sessions) {
+            if (isSeen(session)) {
+                skipped.incrementAndGet();
+            } else {
+                unseen.add(session);
+            }
+        }
+        return unseen;
+    }
+
+    public boolean isSeen(IssueEditSession session) {
+        long key = toKey(session);
+        synchronized (this) {
+            if (!filter.mightContain(key)) {
+                return false;
+            }
+        }
+        if (store.containsKey(key)) {
+            return true;
+        }
+        falsePositives.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Marks the sessions as seen, they are committed with the next commit of the committer
+     */
+    public void seen(Collection<IssueEditSession> sessions) {
+        if (sessions.isEmpty()) {
+            return;
+        }
+        synchronized (this) {
+            for (IssueEditSession session : sessions) {
+                long key = toKey(session);
+                if (store.put(key, session.getUpdated().getTime()) == null) {
+                    size++;
+                }
+                filter.put(key);
+            }
+            if (size > capacity) {
+                //keeps false positive probability when the index grows faster than it's pruned
+                buildFilter();
+            }
+        }
+        committer.changed();
+    }
+
+    /**
+     * Removes sessions updated before the given time unless they were pruned less than an hour ago
+     *
+     * @param before time (in milliseconds) sessions updated before can't be extracted again
+     * @return number of removed sessions
+     */
+    public synchronized int pruneIfDue(long before) {
+        if (System.currentTimeMillis() - lastPruneTime < PRUNE_INTERVAL) {
+            return 0;
+        }
+        return prune(before);
+    }
+
+    /**
+     * Removes sessions updated before the given time and rebuilds the filter
+     *
+     * @param before time (in milliseconds) sessions updated before can't be extracted again
+     * @return number of removed sessions
+     */
+    public synchronized int prune(long before) {
+        long startTime = System.currentTimeMillis();
+        int removed = 0;
+        Iterator<Map.Entry<Long, Long>> iterator = store.entrySet().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().getValue() < before) {
+                iterator.remove();
+                removed++;
+            }
+        }
+        buildFilter();
+        lastPruneTime = System.currentTimeMillis();
+        if (removed > 0) {
+            committer.changed();
+        }
+        log.info("Pruned {} sessions from seen session index in {} ms, {}", removed,
+                lastPruneTime - startTime, this);
+        return removed;
+    }
+
+    private void buildFilter() {
+        capacity = Math.max(MIN_CAPACITY, 2L * store.size());
+        filter = BloomFilter.create(Funnels.longFunnel(), (int) Math.min(capacity, Integer.MAX_VALUE),
+                FALSE_POSITIVE_PROBABILITY);
+        size = 0;
+        for (Long key : store.keySet()) {
+            filter.put(key);
+            size++;
+        }
+    }
+
+    static long toKey(IssueEditSession session) {
+        StringBuilder key = new StringBuilder(64)
+                .append(session.getIssue().getPrefix()).append('-').append(session.getIssue().getId())
+                .append('/').append(session.getUpdater())
+                .append('/').append(session.getUpdated().getTime());
+        if (session.getComment() != null) {
+            key.append('/').append(session.getComment().getId());
+        }
+        return Hashing.murmur3_128().hashString(key, StandardCharsets.UTF_8).asLong();
+    }
+
+    public synchronized long size() {
+        return size;
+    }
+
+    /**
+     * @return number of sessions skipped because they have been seen
+     */
+    public long getSkipped() {
+        return skipped.get();
+    }
+
+    /**
+     * @return number of sessions which have not been seen but passed the filter and were looked up in the store
+     */
+    public long getFalsePositives() {
+        return falsePositives.get();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "sessions: " + size + ", skipped: " + getSkipped() + ", false positives: " + getFalsePositives()
+                + ", expected false positive probability: " + filter.expectedFpp();
+    }
+}
@@ -105,7 +105,7 @@ public class YouTrackImageServlet extends HttpServlet {
 
     @SuppressWarnings("unused")
     private String resolveYouTrackImageId(String externalImageId) {
-        return MapDb.instance().getAttachmentMap().get(externalImageId);
+        return MapDb.instance().getAttachmentStore().get(externalImageId);
     }
 
 
@@ -0,0 +1,69 @@
+package com.ontometrics.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.UnsupportedEncodingException;
+
+/**
+ * {@link java.io.ByteArrayOutputStream} which keeps only the first {@code capacity} bytes written to it,
+ * the rest is counted and dropped. Intended to capture the beginning of a response for logging while
+ * the response itself is being processed.
+ */
+public class CappedByteArrayOutputStream extends ByteArrayOutputStream {
+
+    private final int capacity;
+    private long totalCount;
+
+    /**
+     * @param capacity maximum number of bytes kept
+     */
+    public CappedByteArrayOutputStream(int capacity) {
+        super(Math.min(Math.max(capacity, 0), 8192));
+        this.capacity = Math.max(capacity, 0);
+    }
+
+    @Override
+    public synchronized void write(int b) {
+        totalCount++;
+        if (count < capacity) {
+            super.write(b);
+        }
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) {
+        totalCount += len;
+        int kept = Math.min(len, capacity - count);
+        if (kept > 0) {
+            super.write(b, off, kept);
+        }
+    }
+
+    @Override
+    public synchronized void reset() {
+        super.reset();
+        totalCount = 0;
+    }
+
+    /**
+     * @return number of bytes written to the stream including dropped ones
+     */
+    public synchronized long getTotalCount() {
+        return totalCount;
+    }
+
+    /**
+     * @return true if some of the written bytes were dropped
+     */
+    public synchronized boolean isTruncated() {
+        return totalCount > count;
+    }
+
+    /**
+     * @return kept bytes decoded with specified charset followed by a note about dropped bytes, if any
+     */
+    @Override
+    public synchronized String toString(String charsetName) throws UnsupportedEncodingException {
+        String content = super.toString(charsetName);
+        return isTruncated() ? content + "... (" + (totalCount - count) + " more bytes)" : content;
+    }
+}
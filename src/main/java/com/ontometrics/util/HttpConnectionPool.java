@@ -0,0 +1,241 @@
+package com.ontometrics.util;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.config.SocketConfig;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HttpContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link org.apache.http.client.HttpClient} backed by a pool of keep-alive connections with limited number of
+ * connections per route and in total. Connections which stay idle longer than idle timeout (or longer than the
+ * server allows to keep them) are evicted by a background thread.
+ * <p>
+ * Client asks for gzip or deflate compressed responses and decompresses them while the content is read, so
+ * response handlers get plain content. Received and decoded bytes are counted by {@link #getTrafficCounter()}.
+ * </p>
+ * <p>
+ * Connect, read and pool timeouts of the pool apply to every request which does not set its own, including
+ * requests of {@link org.apache.http.client.fluent.Executor} which replace default request config of the client.
+ * </p>
+ * <p>
+ * The pool should be {@link #close() closed} when it's not needed anymore.
+ * </p>
+ * HttpConnectionPool.java
+ */
+public class HttpConnectionPool {
+
+    private static final Logger logger = LoggerFactory.getLogger(HttpConnectionPool.class);
+
+    private final String name;
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final CloseableHttpClient httpClient;
+    private final ScheduledExecutorService evictor;
+    private final HttpTrafficCounter trafficCounter = new HttpTrafficCounter();
+    private final RequestConfig requestConfig;
+
+    public HttpConnectionPool(Builder builder) {
+        name = builder.name;
+        connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(builder.maxConnections);
+        connectionManager.setDefaultMaxPerRoute(builder.maxConnectionsPerRoute);
+        connectionManager.setDefaultSocketConfig(SocketConfig.custom()
+                .setSoTimeout(builder.readTimeout)
+                .setSoKeepAlive(true)
+                .setTcpNoDelay(true)
+                .build());
+
+        requestConfig = RequestConfig.custom()
+                .setConnectTimeout(builder.connectTimeout)
+                .setSocketTimeout(builder.readTimeout)
+                .setConnectionRequestTimeout(builder.connectionRequestTimeout)
+                .build();
+        final long idleTimeout = builder.idleTimeout;
+        httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                //interceptors run before the connection is leased, so the timeouts apply to the lease as well
+                .addInterceptorFirst(new HttpRequestInterceptor() {
+                    @Override
+                    public void process(HttpRequest request, HttpContext context) {
+                        HttpClientContext clientContext = HttpClientContext.adapt(context);
+                        clientContext.setRequestConfig(withTimeouts(clientContext.getRequestConfig()));
+                    }
+                })
+                //Accept-Encoding header and decompression are added by the builder unless compression is disabled,
+                //wire bytes are counted before the content is decompressed and decoded bytes after that
+                .addInterceptorFirst(trafficCounter.wireBytesInterceptor())
+                .addInterceptorLast(trafficCounter.decodedBytesInterceptor())
+                .setDefaultRequestConfig(requestConfig)
+                .setKeepAliveStrategy(new ConnectionKeepAliveStrategy() {
+                    @Override
+                    public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+                        //connection is kept as long as server allows but not longer than idle timeout
+                        long keepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+                        return keepAlive > 0 ? Math.min(keepAlive, idleTimeout) : idleTimeout;
+                    }
+                })
+                .build();
+
+        evictor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat(name + "-connection-evictor").setDaemon(true).build());
+        long evictionInterval = Math.max(idleTimeout / 2, 1000);
+        evictor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                evictConnections(idleTimeout);
+            }
+        }, evictionInterval, evictionInterval, TimeUnit.MILLISECONDS);
+        logger.info("Created {} connection pool with {} connections ({} per route)", name,
+                builder.maxConnections, builder.maxConnectionsPerRoute);
+    }
+
+    /**
+     * @return request config with timeouts of the pool in place of the ones which are not set (negative)
+     */
+    private RequestConfig withTimeouts(RequestConfig config) {
+        if (config == null) {
+            return requestConfig;
+        }
+        return RequestConfig.copy(config)
+                .setConnectTimeout(config.getConnectTimeout() < 0 ? requestConfig.getConnectTimeout()
+                        : config.getConnectTimeout())
+                .setSocketTimeout(config.getSocketTimeout() < 0 ? requestConfig.getSocketTimeout()
+                        : config.getSocketTimeout())
+                .setConnectionRequestTimeout(config.getConnectionRequestTimeout() < 0
+                        ? requestConfig.getConnectionRequestTimeout() : config.getConnectionRequestTimeout())
+                .build();
+    }
+
+    private void evictConnections(long idleTimeout) {
+        try {
+            connectionManager.closeExpiredConnections();
+            connectionManager.closeIdleConnections(idleTimeout, TimeUnit.MILLISECONDS);
+            if (logger.isDebugEnabled()) {
+                logger.debug("{} connection pool: {}, traffic: {}", name, getTotalStats(), trafficCounter.getTraffic());
+            }
+        } catch (Exception ex) {
+            logger.warn("Failed to evict idle connections", ex);
+        }
+    }
+
+    /**
+     * @return http client using this pool, it should not be closed by the caller
+     */
+    public HttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    /**
+     * @return numbers of leased, available and pending connections of all routes
+     */
+    public PoolStats getTotalStats() {
+        return connectionManager.getTotalStats();
+    }
+
+    /**
+     * @return counter of received bytes per endpoint
+     */
+    public HttpTrafficCounter getTrafficCounter() {
+        return trafficCounter;
+    }
+
+    /**
+     * Stops eviction of idle connections and closes all connections
+     */
+    public void close() {
+        evictor.shutdownNow();
+        try {
+            httpClient.close();
+        } catch (IOException ex) {
+            logger.warn("Failed to close http client", ex);
+        }
+        logger.info("Closed {} connection pool", name);
+    }
+
+    public static class Builder {
+        private String name = "http";
+        private int maxConnections = 32;
+        private int maxConnectionsPerRoute = 16;
+        private int connectTimeout = 10000;
+        private int readTimeout = 60000;
+        private int connectionRequestTimeout = 30000;
+        private long idleTimeout = 30000;
+
+        /**
+         * @param name name of the pool used in log messages and thread names
+         */
+        public Builder name(String name) {
+            this.name = name;
+            return this;
+        }
+
+        public Builder maxConnections(int maxConnections) {
+            this.maxConnections = maxConnections;
+            return this;
+        }
+
+        public Builder maxConnectionsPerRoute(int maxConnectionsPerRoute) {
+            this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+            return this;
+        }
+
+        /**
+         * @param connectTimeout timeout (in milliseconds) of establishing a connection
+         */
+        public Builder connectTimeout(int connectTimeout) {
+            this.connectTimeout = connectTimeout;
+            return this;
+        }
+
+        /**
+         * @param readTimeout maximum period (in milliseconds) of inactivity while reading the response
+         */
+        public Builder readTimeout(int readTimeout) {
+            this.readTimeout = readTimeout;
+            return this;
+        }
+
+        /**
+         * @param connectionRequestTimeout timeout (in milliseconds) of waiting for a connection from the pool
+         */
+        public Builder connectionRequestTimeout(int connectionRequestTimeout) {
+            this.connectionRequestTimeout = connectionRequestTimeout;
+            return this;
+        }
+
+        /**
+         * @param idleTimeout time (in milliseconds) after which idle connection is closed
+         */
+        public Builder idleTimeout(long idleTimeout) {
+            this.idleTimeout = idleTimeout;
+            return this;
+        }
+
+        public HttpConnectionPool build() {
+            if (maxConnections <= 0 || maxConnectionsPerRoute <= 0) {
+                throw new IllegalArgumentException("Number of connections should be positive");
+            }
+            if (idleTimeout <= 0) {
+                throw new IllegalArgumentException("Idle timeout should be positive");
+            }
+            return new HttpConnectionPool(this);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.ontometrics.util;
+
+import org.apache.commons.io.input.ProxyInputStream;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpCoreContext;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts bytes received over the wire and bytes read after the content has been decoded (decompressed) per
+ * endpoint. Endpoint is the path of the request with segments containing digits (ids of the issues, etc.)
+ * replaced with {@code {id}}.
+ * <p>
+ * {@link #wireBytesInterceptor()} should be executed before response content decoding and
+ * {@link #decodedBytesInterceptor()} after it.
+ * </p>
+ * HttpTrafficCounter.java
+ */
+public class HttpTrafficCounter {
+
+    private final ConcurrentMap<String, Traffic> endpoints = new ConcurrentHashMap<>();
+
+    /**
+     * @return interceptor counting bytes of the response content as they are received
+     */
+    public HttpResponseInterceptor wireBytesInterceptor() {
+        return new HttpResponseInterceptor() {
+            @Override
+            public void process(HttpResponse response, HttpContext context) {
+                Traffic traffic = getTraffic(context);
+                traffic.responses.incrementAndGet();
+                countContent(response, traffic.wireBytes);
+            }
+        };
+    }
+
+    /**
+     * @return interceptor counting bytes of the response content as they are read by the client
+     */
+    public HttpResponseInterceptor decodedBytesInterceptor() {
+        return new HttpResponseInterceptor() {
+            @Override
+            public void process(HttpResponse response, HttpContext context) {
+                countContent(response, getTraffic(context).decodedBytes);
+            }
+        };
+    }
+
+    /**
+     * @return traffic of the endpoints, sorted by endpoint
+     */
+    public Map<String, Traffic> getTraffic() {
+        return Collections.unmodifiableMap(new TreeMap<>(endpoints));
+    }
+
+    private void countContent(HttpResponse response, AtomicLong counter) {
+        HttpEntity entity = response.getEntity();
+        if (entity != null) {
+            response.setEntity(new CountingEntity(entity, counter));
+        }
+    }
+
+    private Traffic getTraffic(HttpContext context) {
+        HttpRequest request = HttpCoreContext.adapt(context).getRequest();
+        String endpoint = request == null ? "unknown" : toEndpoint(request.getRequestLine().getUri());
+        Traffic traffic = endpoints.get(endpoint);
+        if (traffic == null) {
+            traffic = new Traffic();
+            Traffic existingTraffic = endpoints.putIfAbsent(endpoint, traffic);
+            if (existingTraffic != null) {
+                traffic = existingTraffic;
+            }
+        }
+        return traffic;
+    }
+
+    static String toEndpoint(String uri) {
+        String path = uri;
+        int queryStart = path.indexOf('?');
+        if (queryStart >= 0) {
+            path = path.substring(0, queryStart);
+        }
+        int schemeEnd = path.indexOf("://");
+        if (schemeEnd >= 0) {
+            int pathStart = path.indexOf('/', schemeEnd + 3);
+            path = pathStart >= 0 ? path.substring(pathStart) : "/";
+        }
+        return path.replaceAll("/[^/]*\\d[^/]*", "/{id}");
+    }
+
+    /**
+     * Traffic of a single endpoint
+     */
+    public static class Traffic {
+        private final AtomicLong responses = new AtomicLong();
+        private final AtomicLong wireBytes = new AtomicLong();
+        private final AtomicLong decodedBytes = new AtomicLong();
+
+        public long getResponses() {
+            return responses.get();
+        }
+
+        public long getWireBytes() {
+            return wireBytes.get();
+        }
+
+        public long getDecodedBytes() {
+            return decodedBytes.get();
+        }
+
+        @Override
+        public String toString() {
+            return "responses: " + responses + ", wire bytes: " + wireBytes + ", decoded bytes: " + decodedBytes;
+        }
+    }
+
+    private static class CountingEntity extends HttpEntityWrapper {
+        private final AtomicLong counter;
+
+        private CountingEntity(HttpEntity wrappedEntity, AtomicLong counter) {
+            super(wrappedEntity);
+            this.counter = counter;
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            InputStream content = super.getContent();
+            return content == null ? null : new ProxyInputStream(content) {
+                @Override
+                protected void afterRead(int n) {
+                    if (n > 0) {
+                        counter.addAndGet(n);
+                    }
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.ontometrics.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of latencies (in milliseconds). Values below 16 are counted exactly, larger values fall
+ * into buckets of 8 per power of two, so reported percentiles are at most 12.5% above the real value.
+ * <p>
+ * Histogram may be updated and read by several threads concurrently, percentiles reported while values are
+ * being recorded are approximate.
+ * </p>
+ * LatencyHistogram.java
+ */
+public class LatencyHistogram {
+
+    private static final int EXACT_VALUES = 16;
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MIN_EXPONENT = 4;
+    private static final int BUCKETS = EXACT_VALUES + (Long.SIZE - 1 - MIN_EXPONENT) * SUB_BUCKETS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * @param latency latency in milliseconds, negative values are counted as 0
+     */
+    public void record(long latency) {
+        long value = Math.max(latency, 0);
+        buckets.incrementAndGet(bucketOf(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        long currentMax;
+        while (value > (currentMax = max.get())) {
+            if (max.compareAndSet(currentMax, value)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Records time elapsed since the start
+     *
+     * @param startTime start time as returned by {@link System#currentTimeMillis()}
+     */
+    public void recordSince(long startTime) {
+        record(System.currentTimeMillis() - startTime);
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public long getMean() {
+        long recorded = count.get();
+        return recorded == 0 ? 0 : sum.get() / recorded;
+    }
+
+    /**
+     * @param percentile percentile between 0 and 100, e.g. 99 for p99
+     * @return the smallest latency (rounded up to the bucket bound) which is not exceeded by the specified
+     * percentage of recorded latencies, 0 if nothing has been recorded
+     */
+    public long getPercentile(double percentile) {
+        long recorded = count.get();
+        if (recorded == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(recorded * percentile / 100));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += buckets.get(bucket);
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(bucket), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Clears recorded values
+     */
+    public void reset() {
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            buckets.set(bucket, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    static int bucketOf(long value) {
+        if (value < EXACT_VALUES) {
+            return (int) value;
+        }
+        int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return EXACT_VALUES + (exponent - MIN_EXPONENT) * SUB_BUCKETS + subBucket;
+    }
+
+    static long upperBoundOf(int bucket) {
+        if (bucket < EXACT_VALUES) {
+            return bucket;
+        }
+        int exponent = (bucket - EXACT_VALUES) / SUB_BUCKETS + MIN_EXPONENT;
+        long subBucket = (bucket - EXACT_VALUES) % SUB_BUCKETS;
+        long lowerBound = (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+        return lowerBound + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+
+    @Override
+    public String toString() {
+        return "count: " + getCount() + ", mean: " + getMean() + " ms, p50: " + getPercentile(50) +
+                " ms, p95: " + getPercentile(95) + " ms, p99: " + getPercentile(99) + " ms, max: " + getMax() + " ms";
+    }
+}
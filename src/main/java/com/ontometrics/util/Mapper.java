@@ -2,15 +2,70 @@ package com.ontometrics.util;
 
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.fasterxml.jackson.dataformat.xml.XmlMapper;
+import com.ontometrics.integrations.model.Issue;
+import com.ontometrics.integrations.model.IssueList;
+import com.ontometrics.integrations.model.ProjectList;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
- *
+ * Provides XML mappers and readers for YouTrack responses.
+ * <p>
+ * {@link #xmlReader(Class)} readers are created once from a single shared mapper, so deserializers built by
+ * Jackson are reused by all requests. Readers are immutable and may be used by several threads.
+ * </p>
  */
 public class Mapper {
 
+    private static final ObjectMapper XML_MAPPER = createXmlMapper();
+
+    private static final ConcurrentMap<Class<?>, ObjectReader> XML_READERS = new ConcurrentHashMap<>();
 
+    /**
+     * Small documents read by {@link #warmUp()}, so that deserializers are built before the first request
+     */
+    private static final String ISSUE_SAMPLE = "<issue id=\"WARM-1\"><field name=\"summary\">" +
+            "<value>summary</value><value url=\"http://localhost\">link</value></field></issue>";
+    private static final String ISSUE_LIST_SAMPLE = "<issues>" + ISSUE_SAMPLE + ISSUE_SAMPLE + "</issues>";
+    private static final String PROJECT_LIST_SAMPLE = "<projects><project shortName=\"WARM\"/></projects>";
+
+    /**
+     * @return new XML mapper, consider using {@link #xmlReader(Class)} instead
+     */
     public static ObjectMapper createXmlMapper() {
         return new XmlMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
     }
+
+    /**
+     * @param type type of the document
+     * @return shared thread-safe reader of the XML documents of specified type
+     */
+    public static ObjectReader xmlReader(Class<?> type) {
+        ObjectReader reader = XML_READERS.get(type);
+        if (reader == null) {
+            reader = XML_MAPPER.readerFor(type);
+            ObjectReader existingReader = XML_READERS.putIfAbsent(type, reader);
+            if (existingReader != null) {
+                reader = existingReader;
+            }
+        }
+        return reader;
+    }
+
+    /**
+     * Creates readers of {@link com.ontometrics.integrations.model.IssueList},
+     * {@link com.ontometrics.integrations.model.Issue} and {@link com.ontometrics.integrations.model.ProjectList}
+     * and reads sample documents with them, so that the first requests do not pay for the introspection
+     *
+     * @throws IOException if sample document could not be read
+     */
+    public static void warmUp() throws IOException {
+        xmlReader(IssueList.class).readValue(ISSUE_LIST_SAMPLE);
+        xmlReader(Issue.class).readValue(ISSUE_SAMPLE);
+        xmlReader(ProjectList.class).readValue(PROJECT_LIST_SAMPLE);
+    }
 }
@@ -0,0 +1,48 @@
+package com.ontometrics.util;
+
+/**
+ * Token bucket which paces actions to the specified rate allowing short bursts. Bucket starts full, every action
+ * takes one token, tokens are refilled continuously at the rate up to the bucket capacity.
+ * <p>
+ * Bucket does not block: {@link #tryAcquire(long)} either takes a token or tells how long to wait for one.
+ * </p>
+ * TokenBucket.java
+ */
+public class TokenBucket {
+
+    private final double tokensPerMilli;
+    private final double capacity;
+    private double tokens;
+    private long lastRefill;
+
+    /**
+     * @param tokensPerSecond rate of actions
+     * @param burst           maximum number of actions which may be done at once after idle period
+     * @param now             current time in milliseconds
+     */
+    public TokenBucket(double tokensPerSecond, int burst, long now) {
+        if (tokensPerSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("Rate " + tokensPerSecond + " and burst " + burst + " should be positive");
+        }
+        tokensPerMilli = tokensPerSecond / 1000;
+        capacity = burst;
+        tokens = burst;
+        lastRefill = now;
+    }
+
+    /**
+     * @param now current time in milliseconds
+     * @return 0 if token was taken, otherwise time (in milliseconds) until the next token is available
+     */
+    public synchronized long tryAcquire(long now) {
+        if (now > lastRefill) {
+            tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerMilli);
+            lastRefill = now;
+        }
+        if (tokens >= 1) {
+            tokens -= 1;
+            return 0;
+        }
+        return Math.max(1, (long) Math.ceil((1 - tokens) / tokensPerMilli));
+    }
+}
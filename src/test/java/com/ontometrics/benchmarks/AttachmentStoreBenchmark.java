@@ -0,0 +1,108 @@
+package com.ontometrics.benchmarks;
+
+import com.ontometrics.db.AttachmentStore;
+import com.ontometrics.db.GroupCommitter;
+import com.ontometrics.db.StorageMode;
+import org.mapdb.DB;
+import org.mapdb.Serializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares attachment id writes per second in {@link com.ontometrics.db.StorageMode}s: committed in groups
+ * by {@link com.ontometrics.db.GroupCommitter} and committed one by one as every message used to be
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class AttachmentStoreBenchmark {
+
+    @Param({"FILE", "WAL", "MMAP_WAL"})
+    public StorageMode storageMode;
+
+    private File dir;
+    private DB db;
+    private GroupCommitter committer;
+    private AttachmentStore store;
+    private final AtomicLong fileIds = new AtomicLong();
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("attachment-benchmark").toFile();
+        db = storageMode.open(new File(dir, "app_db"));
+        committer = new GroupCommitter(db, 20, 100, "benchmark-committer");
+        store = new AttachmentStore((Map<String, String>) db.hashMap("attachments").createOrOpen(),
+                db.hashMap("attachment_ids", Serializer.STRING, Serializer.STRING).createOrOpen(),
+                db.hashMap("attachment_times", Serializer.STRING, Serializer.LONG).createOrOpen(),
+                committer, 0, 0);
+    }
+
+    @TearDown
+    public void tearDown() {
+        committer.close();
+        db.close();
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    /**
+     * Write which is committed together with other writes within the commit delay
+     */
+    @Benchmark
+    public String groupCommit() {
+        String id = store.add("97-" + fileIds.incrementAndGet());
+        committer.changed();
+        return id;
+    }
+
+    /**
+     * Write which waits for its group commit, as a message which must not be lost
+     */
+    @Benchmark
+    public String awaitGroupCommit() {
+        String id = store.add("97-" + fileIds.incrementAndGet());
+        committer.awaitCommit();
+        return id;
+    }
+
+    /**
+     * Write committed right away
+     */
+    @Benchmark
+    public String commitEach() {
+        String id;
+        synchronized (this) {
+            id = store.add("97-" + fileIds.incrementAndGet());
+            db.commit();
+        }
+        return id;
+    }
+}
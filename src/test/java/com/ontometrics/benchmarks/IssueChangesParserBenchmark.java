@@ -0,0 +1,74 @@
+package com.ontometrics.benchmarks;
+
+import com.google.common.collect.ImmutableList;
+import com.ontometrics.integrations.events.Issue;
+import com.ontometrics.integrations.events.IssueEditSession;
+import com.ontometrics.integrations.events.ProcessEvent;
+import com.ontometrics.integrations.sources.IssueChangesParser;
+import com.ontometrics.integrations.sources.LegacyIssueChangesParser;
+import org.apache.commons.io.IOUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link com.ontometrics.integrations.sources.IssueChangesParser} with the event based parser used before
+ * on the issue changes feeds from test resources
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IssueChangesParserBenchmark {
+
+    private static final List<String> EXCLUDED_FIELDS = ImmutableList.of("Estimate Time", "Spent Time");
+
+    @Param({"issue-changes.xml", "issue-changes-with-comments.xml", "issue-with-comments-ap-22.xml"})
+    public String feed;
+
+    private byte[] content;
+    private ProcessEvent event;
+    private IssueChangesParser parser;
+    private LegacyIssueChangesParser legacyParser;
+
+    @Setup
+    public void setUp() throws Exception {
+        try (InputStream is = getClass().getResourceAsStream("/feeds/" + feed)) {
+            content = IOUtils.toByteArray(is);
+        }
+        event = new ProcessEvent.Builder()
+                .issue(new Issue.Builder().projectPrefix("ASOC").id(148).title("New Embedding requirement")
+                        .link(new URL("http://ontometrics.com:8085/issue/ASOC-148")).build())
+                .published(new Date())
+                .build();
+        parser = new IssueChangesParser(EXCLUDED_FIELDS);
+        legacyParser = new LegacyIssueChangesParser(EXCLUDED_FIELDS);
+    }
+
+    @Benchmark
+    public List<IssueEditSession> cursorParser() throws Exception {
+        return parser.parseChanges(new ByteArrayInputStream(content), event, null);
+    }
+
+    @Benchmark
+    public List<IssueEditSession> legacyEventParser() throws Exception {
+        return legacyParser.parseChanges(new ByteArrayInputStream(content), event, null);
+    }
+}
@@ -0,0 +1,82 @@
+package com.ontometrics.benchmarks;
+
+import com.ontometrics.integrations.model.IssueList;
+import com.ontometrics.integrations.model.ProjectList;
+import com.ontometrics.util.Mapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares deserialization of YouTrack responses with a mapper created per call
+ * ({@link com.ontometrics.util.Mapper#createXmlMapper()}) and with shared readers
+ * ({@link com.ontometrics.util.Mapper#xmlReader(Class)})
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MapperBenchmark {
+
+    /**
+     * Number of issues in the project feed
+     */
+    @Param({"1", "20", "200"})
+    public int issues;
+
+    private byte[] issueList;
+    private byte[] projectList;
+
+    @Setup
+    public void setUp() throws Exception {
+        StringBuilder feed = new StringBuilder("<issues>");
+        for (int i = 0; i < issues; i++) {
+            feed.append("<issue id=\"ASOC-").append(i).append("\">")
+                    .append("<field name=\"numberInProject\"><value>").append(i).append("</value></field>")
+                    .append("<field name=\"summary\"><value>Issue ").append(i).append("</value></field>")
+                    .append("<field name=\"description\"><value>Description of the issue ").append(i)
+                    .append("</value></field>")
+                    .append("<field name=\"updated\"><value>").append(1404927516756L + i).append("</value></field>")
+                    .append("</issue>");
+        }
+        issueList = feed.append("</issues>").toString().getBytes("UTF-8");
+
+        StringBuilder projects = new StringBuilder("<projects>");
+        for (int i = 0; i < 20; i++) {
+            projects.append("<project shortName=\"P").append(i).append("\" name=\"Project ").append(i).append("\"/>");
+        }
+        projectList = projects.append("</projects>").toString().getBytes("UTF-8");
+    }
+
+    @Benchmark
+    public IssueList issueListWithNewMapper() throws Exception {
+        return Mapper.createXmlMapper().readValue(issueList, IssueList.class);
+    }
+
+    @Benchmark
+    public IssueList issueListWithSharedReader() throws Exception {
+        return Mapper.xmlReader(IssueList.class).readValue(issueList);
+    }
+
+    @Benchmark
+    public ProjectList projectListWithNewMapper() throws Exception {
+        return Mapper.createXmlMapper().readValue(projectList, ProjectList.class);
+    }
+
+    @Benchmark
+    public ProjectList projectListWithSharedReader() throws Exception {
+        return Mapper.xmlReader(ProjectList.class).readValue(projectList);
+    }
+}
@@ -0,0 +1,129 @@
+package com.ontometrics.benchmarks;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.ontometrics.integrations.configuration.MessageSender;
+import com.ontometrics.integrations.configuration.SlackInstance;
+import com.ontometrics.integrations.configuration.SlackMessage;
+import com.ontometrics.integrations.events.Comment;
+import com.ontometrics.integrations.events.Issue;
+import com.ontometrics.integrations.events.IssueEdit;
+import com.ontometrics.integrations.events.IssueEditSession;
+import com.ontometrics.integrations.sources.ChannelMapper;
+import org.apache.commons.lang.StringUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares rendering of Slack payloads by {@link com.ontometrics.integrations.configuration.SlackInstance}
+ * (templates appended to a single builder, payload written by JsonGenerator) with String.format rendering
+ * into a tree of JSON nodes used before
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SlackPayloadBenchmark {
+
+    /**
+     * Length of the issue description and the comment
+     */
+    @Param({"100", "10000", "1000000"})
+    public int textLength;
+
+    /**
+     * Number of field changes in the edit session
+     */
+    @Param({"1", "100"})
+    public int edits;
+
+    private SlackInstance slackInstance;
+    private String payload;
+    private Issue issue;
+    private IssueEditSession session;
+
+    @Setup
+    public void setUp() throws Exception {
+        slackInstance = new SlackInstance.Builder()
+                .channelMapper(new ChannelMapper.Builder().addMapping("ASOC", "vixlet").build())
+                .icon(SlackInstance.DEFAULT_ICON_URL)
+                .messageSender(new MessageSender() {
+                    @Override
+                    public void send(SlackMessage message) {
+                        payload = message.getPayload();
+                    }
+                }).build();
+
+        String line = "Description with \"quotes\" and {braces}\n";
+        String text = StringUtils.repeat(line, textLength / line.length() + 1).substring(0, textLength);
+        issue = new Issue.Builder().projectPrefix("ASOC").id(492).title("Title autosuggest and normalization")
+                .description(text).created(new Date()).creator("Noura")
+                .link(new URL("http://ontometrics.com:8085/issue/ASOC-492")).build();
+        List<IssueEdit> changes = new ArrayList<>(edits);
+        for (int i = 0; i < edits; i++) {
+            changes.add(new IssueEdit.Builder().issue(issue).field("Field " + i).priorValue("Value " + i)
+                    .currentValue("Value " + (i + 1)).build());
+        }
+        session = new IssueEditSession.Builder().issue(issue).updater("Noura").updated(new Date()).changes(changes)
+                .comment(new Comment.Builder().author("Noura").text(text).created(new Date()).build()).build();
+    }
+
+    @Benchmark
+    public String newIssueWithGenerator() {
+        slackInstance.postIssueCreation(issue);
+        return payload;
+    }
+
+    @Benchmark
+    public String newIssueWithTree() {
+        String message = String.format("*%s* created %s: %s%s%s", issue.getCreator(), issueLink(issue),
+                issue.getTitle(), System.lineSeparator(), issue.getDescription());
+        return tree(slackInstance.getChannelMapper().getChannel(issue), message);
+    }
+
+    @Benchmark
+    public String sessionWithGenerator() {
+        slackInstance.post(session);
+        return payload;
+    }
+
+    @Benchmark
+    public String sessionWithTree() {
+        StringBuilder s = new StringBuilder(String.format("*%s*", session.getUpdater()));
+        s.append(String.format(" %s %s: ", "commented on ", issueLink(session.getIssue())));
+        s.append(session.getIssue().getTitle());
+        s.append(System.lineSeparator());
+        for (IssueEdit edit : session.getChanges()) {
+            s.append(edit.toString()).append(System.lineSeparator());
+        }
+        s.append(session.getComment().getText()).append(System.lineSeparator());
+        return tree(slackInstance.getChannelMapper().getChannel(session.getIssue()), s.toString());
+    }
+
+    private static String issueLink(Issue issue) {
+        return String.format("<%s|%s-%d>", issue.getLink(), issue.getPrefix(), issue.getId());
+    }
+
+    private static String tree(String channel, String message) {
+        return JsonNodeFactory.instance.objectNode().put("username", "YouTrack")
+                .put("icon_url", SlackInstance.DEFAULT_ICON_URL).put("channel", channel)
+                .put("link_names", 1)
+                .put("text", StringUtils.replaceChars(message, "{}", "[]")).toString();
+    }
+}
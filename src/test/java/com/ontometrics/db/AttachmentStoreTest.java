@@ -0,0 +1,185 @@
+package com.ontometrics.db;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mapdb.DB;
+import org.mapdb.Serializer;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class AttachmentStoreTest {
+
+    private File dbFile;
+    private DB db;
+    private GroupCommitter committer;
+
+    @Before
+    public void setUp() throws Exception {
+        dbFile = File.createTempFile("attachments", ".db");
+        dbFile.delete();
+    }
+
+    @After
+    public void tearDown() {
+        close();
+        dbFile.delete();
+    }
+
+    @Test
+    public void testThatOldestEntriesAreEvictedOverMaxEntries() {
+        AttachmentStore store = open(0, 3);
+        List<String> ids = new ArrayList<>();
+        for (int i = 1; i <= 5; i++) {
+            ids.add(store.add("file" + i));
+        }
+        assertThat(store.size(), is(3));
+        assertThat(store.getEvicted(), is(2L));
+        assertThat(store.get(ids.get(1)), nullValue());
+        assertThat(store.get(ids.get(2)), is("file3"));
+        committer.awaitCommit();
+        close();
+
+        store = open(0, 2);
+        assertThat(store.size(), is(2));
+        assertThat(store.get(ids.get(2)), nullValue());
+        assertThat(store.get(ids.get(4)), is("file5"));
+        //evicted file gets a new entry, old id is not resolved any more
+        String id = store.add("file1");
+        assertThat(id, not(ids.get(0)));
+        assertThat(store.get(id), is("file1"));
+        assertThat(store.get(ids.get(0)), nullValue());
+    }
+
+    @Test
+    public void testThatExpiredEntriesAreRemoved() throws Exception {
+        AttachmentStore store = open(200, 0);
+        String id1 = store.add("file1");
+        Thread.sleep(100);
+        String id2 = store.add("file2");
+        assertThat(store.expire(), is(0));
+        Thread.sleep(120);
+
+        assertThat(store.get(id1), nullValue());
+        assertThat(store.get(id2), is("file2"));
+        assertThat(store.expire(), is(1));
+        assertThat(store.size(), is(1));
+        assertThat(store.getExpired(), is(1L));
+    }
+
+    @Test
+    public void testThatSameFileIsStoredOnceAndRenewed() throws Exception {
+        AttachmentStore store = open(1000, 0);
+        String id = store.add("97-1234");
+        Thread.sleep(600);
+        assertThat(store.add("97-1234"), is(id));
+        assertThat(store.add("97-1235"), not(id));
+        Thread.sleep(600);
+
+        assertThat(store.size(), is(2));
+        assertThat(store.expire(), is(0));
+        assertThat(store.get(id), is("97-1234"));
+        committer.awaitCommit();
+        close();
+
+        store = open(0, 0);
+        assertThat(store.add("97-1234"), is(id));
+        assertThat(store.size(), is(2));
+    }
+
+    @Test
+    public void testThatIdsAreNotDerivedFromFileIds() {
+        AttachmentStore store = open(0, 0);
+        String id = store.add("97-1234");
+        committer.awaitCommit();
+        close();
+        dbFile.delete();
+
+        store = open(0, 0);
+        assertThat(store.add("97-1234"), not(id));
+        assertThat(store.get(id), nullValue());
+    }
+
+    @Test
+    public void testThatEntriesWithoutCreationTimeAreKeptAfterUpgrade() {
+        open(0, 0);
+        @SuppressWarnings("unchecked")
+        Map<String, String> attachments = (Map<String, String>) db.hashMap("attachments").createOrOpen();
+        attachments.put("legacy", "file");
+        committer.awaitCommit();
+        close();
+
+        AttachmentStore store = open(60000, 0);
+        assertThat(store.get("legacy"), is("file"));
+        assertThat(store.expire(), is(0));
+    }
+
+    @Test
+    public void testThatCompactionReclaimsSpaceOfRemovedEntries() {
+        AttachmentStore store = open(0, 10);
+        StringBuilder fileId = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            fileId.append("0123456789");
+        }
+        String id = null;
+        for (int i = 0; i < 20000; i++) {
+            id = store.add(fileId.toString() + i);
+        }
+        committer.awaitCommit();
+        long fileSize = dbFile.length();
+        db.getStore().compact();
+
+        assertThat(store.size(), is(10));
+        assertThat(store.get(id), is(fileId.toString() + 19999));
+        assertThat(dbFile.length(), lessThan(fileSize / 2));
+    }
+
+    @Test
+    public void testThatStoreWithWriteAheadLogIsNotCompacted() {
+        AttachmentStore store = open(StorageMode.WAL, 0, 10);
+        StringBuilder fileId = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            fileId.append("0123456789");
+        }
+        String id = null;
+        for (int i = 0; i < 5000; i++) {
+            id = store.add(fileId.toString() + i);
+        }
+        committer.awaitCommit();
+        long fileSize = dbFile.length();
+        //MapDB does not compact stores with write-ahead log, so MapDb does not schedule compaction of them
+        db.getStore().compact();
+
+        assertThat(StorageMode.WAL.isCompactable(), is(false));
+        assertThat(StorageMode.FILE.isCompactable(), is(true));
+        assertThat(store.get(id), is(fileId.toString() + 4999));
+        assertThat(dbFile.length(), greaterThanOrEqualTo(fileSize));
+    }
+
+    private AttachmentStore open(long ttl, int maxEntries) {
+        return open(StorageMode.FILE, ttl, maxEntries);
+    }
+
+    @SuppressWarnings("unchecked")
+    private AttachmentStore open(StorageMode storageMode, long ttl, int maxEntries) {
+        db = storageMode.open(dbFile);
+        committer = new GroupCommitter(db, 0, "test-committer");
+        return new AttachmentStore((Map<String, String>) db.hashMap("attachments").createOrOpen(),
+                db.hashMap("attachment_ids", Serializer.STRING, Serializer.STRING).createOrOpen(),
+                db.hashMap("attachment_times", Serializer.STRING, Serializer.LONG).createOrOpen(), committer,
+                ttl, maxEntries);
+    }
+
+    private void close() {
+        if (db != null && !db.isClosed()) {
+            committer.close();
+            db.close();
+        }
+    }
+}
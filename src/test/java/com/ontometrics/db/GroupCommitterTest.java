@@ -0,0 +1,107 @@
+package com.ontometrics.db;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mapdb.DB;
+import org.mapdb.Serializer;
+
+import java.io.File;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.fail;
+
+public class GroupCommitterTest {
+
+    private File dir;
+    private DB db;
+    private GroupCommitter committer;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = File.createTempFile("committer", "");
+        dir.delete();
+        dir.mkdirs();
+    }
+
+    @After
+    public void tearDown() {
+        if (db != null && !db.isClosed()) {
+            committer.close();
+            db.close();
+        }
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void testThatFullBatchIsCommittedWithoutWaitingForDelay() {
+        db = StorageMode.WAL.open(new File(dir, "app_db"));
+        committer = new GroupCommitter(db, 10000, 10, "test-committer");
+        Map<String, Long> map = db.hashMap("test", Serializer.STRING, Serializer.LONG).createOrOpen();
+
+        long startTime = System.currentTimeMillis();
+        for (int i = 0; i < 9; i++) {
+            map.put("key" + i, (long) i);
+            committer.changed();
+        }
+        map.put("key9", 9L);
+        committer.awaitCommit();
+
+        assertThat(System.currentTimeMillis() - startTime, lessThan(5000L));
+        assertThat(committer.getCommits(), is(1L));
+    }
+
+    @Test
+    public void testThatChangesReportedBeforeCloseAreCommitted() {
+        db = StorageMode.WAL.open(new File(dir, "app_db"));
+        committer = new GroupCommitter(db, 10000, "test-committer");
+        Map<String, Long> map = db.hashMap("test", Serializer.STRING, Serializer.LONG).createOrOpen();
+        map.put("key", 1L);
+        committer.changed();
+        committer.close();
+
+        assertThat(committer.getCommits(), is(1L));
+        try {
+            committer.changed();
+            fail("Change should not be accepted by closed committer");
+        } catch (IllegalStateException expected) {
+            //closed
+        }
+    }
+
+    @Test(expected = IllegalStateException.class, timeout = 5000)
+    public void testThatAwaitCommitFailsOnceCommitterIsClosed() {
+        db = StorageMode.WAL.open(new File(dir, "app_db"));
+        committer = new GroupCommitter(db, 10, "test-committer");
+        committer.close();
+        committer.awaitCommit();
+    }
+
+    @Test
+    public void testThatCommittedChangesSurviveReopenInEveryStorageMode() {
+        for (StorageMode storageMode : StorageMode.values()) {
+            db = storageMode.open(new File(dir, "app_db"));
+            committer = new GroupCommitter(db, 10, 100, "test-committer");
+            Map<String, Long> map = db.hashMap("test", Serializer.STRING, Serializer.LONG).createOrOpen();
+            map.put(storageMode.name(), (long) storageMode.ordinal());
+            committer.awaitCommit();
+            committer.close();
+            db.close();
+        }
+
+        db = StorageMode.parse("mmap-wal").open(new File(dir, "app_db"));
+        committer = new GroupCommitter(db, 10, "test-committer");
+        Map<String, Long> map = db.hashMap("test", Serializer.STRING, Serializer.LONG).createOrOpen();
+        assertThat(map.size(), is(3));
+        assertThat(map.get("FILE"), is(0L));
+        assertThat(map.get("MMAP_WAL"), is(2L));
+    }
+}
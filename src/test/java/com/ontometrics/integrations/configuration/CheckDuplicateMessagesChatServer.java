@@ -36,6 +36,11 @@ public class CheckDuplicateMessagesChatServer implements ChatServer {
 
     }
 
+    @Override
+    public void flush() {
+
+    }
+
     @Override
     public ChannelMapper getChannelMapper() {
         return null;
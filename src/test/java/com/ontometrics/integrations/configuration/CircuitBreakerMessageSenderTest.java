@@ -0,0 +1,210 @@
+package com.ontometrics.integrations.configuration;
+
+import com.ontometrics.util.BadResponseException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class CircuitBreakerMessageSenderTest {
+
+    private final List<String> posted = Collections.synchronizedList(new ArrayList<String>());
+    private final List<String> invalid = Collections.synchronizedList(new ArrayList<String>());
+    private volatile boolean slackIsDown;
+    private volatile long postTime;
+    private File spillFile;
+    private CircuitBreakerMessageSender breaker;
+
+    @Before
+    public void setUp() throws Exception {
+        spillFile = File.createTempFile("slack", "_spill.log");
+    }
+
+    @After
+    public void tearDown() {
+        if (breaker != null) {
+            breaker.close();
+        }
+        spillFile.delete();
+    }
+
+    @Test
+    public void testThatMessagesAreSpilledWhileBreakerIsOpenAndDrainedInOrder() throws Exception {
+        breaker = createBreaker();
+        slackIsDown = true;
+        for (int i = 1; i <= 3; i++) {
+            try {
+                breaker.send(message(i));
+            } catch (IOException ex) {
+                //failures open the breaker
+            }
+        }
+        assertThat(breaker.getState(), is(CircuitBreakerMessageSender.State.OPEN));
+        for (int i = 4; i <= 6; i++) {
+            breaker.send(message(i));
+        }
+        assertThat(breaker.getSpilled(), is(3L));
+        assertThat(breaker.getBacklog(), is(3));
+
+        //probe fails, breaker stays open
+        Thread.sleep(300);
+        assertThat(breaker.getState(), is(CircuitBreakerMessageSender.State.OPEN));
+        assertThat(breaker.getOpened(), is(1L));
+
+        slackIsDown = false;
+        long startTime = System.currentTimeMillis();
+        awaitState(CircuitBreakerMessageSender.State.CLOSED, 5000);
+        assertThat(posted.toString(), is("[ASOC-4, ASOC-5, ASOC-6]"));
+        //drained at 10 messages per second
+        assertThat(System.currentTimeMillis() - startTime, greaterThanOrEqualTo(150L));
+        assertThat(breaker.getDrained(), is(3L));
+        assertThat(spillFile.length(), is(0L));
+
+        breaker.send(message(7));
+        assertThat(posted.toString(), is("[ASOC-4, ASOC-5, ASOC-6, ASOC-7]"));
+    }
+
+    @Test
+    public void testThatSlowPostsOpenBreaker() throws Exception {
+        breaker = createBreaker();
+        postTime = 60;
+        for (int i = 1; i <= 3; i++) {
+            breaker.send(message(i));
+        }
+        assertThat(breaker.getState(), is(CircuitBreakerMessageSender.State.OPEN));
+        breaker.send(message(4));
+        assertThat(posted.size(), is(3));
+    }
+
+    @Test
+    public void testThatSpilledMessagesAreDrainedAfterRestart() throws Exception {
+        breaker = createBreaker();
+        slackIsDown = true;
+        for (int i = 1; i <= 5; i++) {
+            try {
+                breaker.send(message(i));
+            } catch (IOException ex) {
+                //failures open the breaker
+            }
+        }
+        breaker.close();
+        slackIsDown = false;
+
+        //spilled messages are probed right after restart
+        breaker = createBreaker();
+        awaitState(CircuitBreakerMessageSender.State.CLOSED, 5000);
+        assertThat(posted.toString(), is("[ASOC-4, ASOC-5]"));
+        assertThat(breaker.getDrained(), is(2L));
+        assertThat(breaker.getBacklog(), is(0));
+    }
+
+    @Test
+    public void testThatOverflowMessagesAreDrainedByClosedBreaker() throws Exception {
+        breaker = createBreaker();
+        breaker.overflowSender().send(message(1));
+        breaker.overflowSender().send(message(2));
+        //overflow does not hold up other messages
+        assertThat(breaker.getState(), is(CircuitBreakerMessageSender.State.CLOSED));
+        breaker.send(message(3));
+        assertThat(posted.contains("ASOC-3"), is(true));
+        assertThat(breaker.getSpilled(), is(2L));
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while ((posted.size() < 3 || spillFile.length() > 0) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(posted, containsInAnyOrder("ASOC-1", "ASOC-2", "ASOC-3"));
+        assertThat(posted.indexOf("ASOC-1"), lessThan(posted.indexOf("ASOC-2")));
+        assertThat(breaker.getState(), is(CircuitBreakerMessageSender.State.CLOSED));
+        assertThat(breaker.getOpened(), is(0L));
+        assertThat(breaker.getDrained(), is(2L));
+        assertThat(breaker.getBacklog(), is(0));
+        assertThat(spillFile.length(), is(0L));
+    }
+
+    @Test
+    public void testThatMessagesRejectedBySlackDoNotOpenBreakerAndAreSkippedByDrainer() throws Exception {
+        breaker = createBreaker();
+        invalid.add("ASOC-1");
+        invalid.add("ASOC-4");
+        for (int i = 0; i < 3; i++) {
+            try {
+                breaker.send(message(1));
+            } catch (BadResponseException ex) {
+                assertThat(ex.getStatusCode(), is(400));
+            }
+        }
+        assertThat(breaker.getState(), is(CircuitBreakerMessageSender.State.CLOSED));
+
+        slackIsDown = true;
+        for (int i = 0; i < 3; i++) {
+            try {
+                breaker.send(message(2));
+            } catch (IOException ex) {
+                //failures open the breaker
+            }
+        }
+        assertThat(breaker.getState(), is(CircuitBreakerMessageSender.State.OPEN));
+        breaker.send(message(4));
+        breaker.send(message(5));
+        slackIsDown = false;
+
+        //rejected probe is skipped and does not keep the breaker open
+        awaitState(CircuitBreakerMessageSender.State.CLOSED, 5000);
+        assertThat(posted.toString(), is("[ASOC-5]"));
+        assertThat(breaker.getRejected(), is(1L));
+        assertThat(breaker.getDrained(), is(1L));
+        assertThat(breaker.getBacklog(), is(0));
+        assertThat(breaker.getOpened(), is(1L));
+    }
+
+    private CircuitBreakerMessageSender createBreaker() throws IOException {
+        return new CircuitBreakerMessageSender.Builder()
+                .messageSender(new MessageSender() {
+                    @Override
+                    public void send(SlackMessage message) throws IOException {
+                        if (slackIsDown) {
+                            throw new IOException("Slack is not available");
+                        }
+                        if (invalid.contains(message.getSubject())) {
+                            throw new BadResponseException(new URL("https://hooks.slack.com/services/test"), 400);
+                        }
+                        if (postTime > 0) {
+                            try {
+                                Thread.sleep(postTime);
+                            } catch (InterruptedException e) {
+                                throw new RuntimeException(e);
+                            }
+                        }
+                        posted.add(message.getSubject());
+                    }
+                })
+                .spillFile(spillFile)
+                .failureThreshold(3)
+                .slowPostThreshold(50)
+                .cooldown(100)
+                .drainRate(10)
+                .build();
+    }
+
+    private void awaitState(CircuitBreakerMessageSender.State state, long timeout) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout;
+        while (breaker.getState() != state && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(breaker.getState(), is(state));
+    }
+
+    private static SlackMessage message(int id) {
+        return new SlackMessage(id, "vixlet", "ASOC-" + id, "{\"text\":\"message " + id + "\"}");
+    }
+}
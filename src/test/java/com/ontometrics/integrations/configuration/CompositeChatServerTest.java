@@ -0,0 +1,173 @@
+package com.ontometrics.integrations.configuration;
+
+import com.ontometrics.integrations.events.Issue;
+import com.ontometrics.integrations.sources.ChannelMapper;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class CompositeChatServerTest {
+
+    @Test
+    public void testThatStalledDestinationDoesNotDelayOthers() throws Exception {
+        final List<String> primary = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch primaryDelivered = new CountDownLatch(5);
+        final CountDownLatch releaseArchive = new CountDownLatch(1);
+        final List<String> archiveSpilled = Collections.synchronizedList(new ArrayList<String>());
+        QueuedMessageSender primaryQueue = new QueuedMessageSender.Builder().messageSender(new MessageSender() {
+            @Override
+            public void send(SlackMessage message) {
+                primary.add(message.getChannel() + ":" + message.getSubject());
+                primaryDelivered.countDown();
+            }
+        }).build();
+        QueuedMessageSender archiveQueue = new QueuedMessageSender.Builder().messageSender(new MessageSender() {
+            @Override
+            public void send(SlackMessage message) throws IOException {
+                try {
+                    releaseArchive.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }).senderThreads(1).capacity(2).overflowPolicy(QueuedMessageSender.OverflowPolicy.SPILL)
+                .overflowSender(new MessageSender() {
+                    @Override
+                    public void send(SlackMessage message) {
+                        archiveSpilled.add(message.getSubject());
+                    }
+                }).build();
+
+        Map<String, ChatServer> destinations = new LinkedHashMap<>();
+        destinations.put("slack", new SlackInstance.Builder()
+                .channelMapper(new ChannelMapper.Builder().addMapping("ASOC", "vixlet").build())
+                .messageSender(primaryQueue).build());
+        destinations.put("archive", new SlackInstance.Builder()
+                .channelMapper(new ChannelMapper.Builder().addMapping("ASOC", "archive").build())
+                .messageSender(archiveQueue).build());
+        CompositeChatServer chatServer = new CompositeChatServer(destinations);
+        try {
+            for (int i = 1; i <= 5; i++) {
+                chatServer.postIssueCreation(issue(i));
+            }
+            chatServer.flush();
+            assertThat(primaryDelivered.await(5, TimeUnit.SECONDS), is(true));
+            assertThat(primary.toString(), is("[vixlet:ASOC-1, vixlet:ASOC-2, vixlet:ASOC-3, vixlet:ASOC-4, vixlet:ASOC-5]"));
+            assertThat(archiveSpilled.size(), greaterThanOrEqualTo(3));
+            assertThat(archiveQueue.getDropped(), is(0L));
+        } finally {
+            releaseArchive.countDown();
+            primaryQueue.close(1000);
+            archiveQueue.close(1000);
+        }
+    }
+
+    @Test
+    public void testThatFullPrimaryQueueDoesNotDelayMirrors() throws Exception {
+        final CountDownLatch releasePrimary = new CountDownLatch(1);
+        final List<String> mirror = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch mirrorDelivered = new CountDownLatch(5);
+        QueuedMessageSender primaryQueue = new QueuedMessageSender.Builder().messageSender(new MessageSender() {
+            @Override
+            public void send(SlackMessage message) {
+                try {
+                    releasePrimary.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }).senderThreads(1).capacity(1).overflowPolicy(QueuedMessageSender.OverflowPolicy.BLOCK).build();
+
+        Map<String, ChatServer> destinations = new LinkedHashMap<>();
+        destinations.put("slack", slackInstance(primaryQueue));
+        destinations.put("mirror", slackInstance(new MessageSender() {
+            @Override
+            public void send(SlackMessage message) {
+                mirror.add(message.getSubject());
+                mirrorDelivered.countDown();
+            }
+        }));
+        CompositeChatServer chatServer = new CompositeChatServer(destinations);
+        try {
+            long startTime = System.currentTimeMillis();
+            for (int i = 1; i <= 5; i++) {
+                chatServer.postIssueCreation(issue(i));
+            }
+            //posting thread does not wait for free space in the queue of the primary destination
+            assertThat(System.currentTimeMillis() - startTime, lessThan(1000L));
+            assertThat(mirrorDelivered.await(5, TimeUnit.SECONDS), is(true));
+            assertThat(mirror.toString(), is("[ASOC-1, ASOC-2, ASOC-3, ASOC-4, ASOC-5]"));
+        } finally {
+            releasePrimary.countDown();
+            chatServer.flush();
+            assertThat(chatServer.close(1000), is(true));
+            primaryQueue.close(1000);
+        }
+    }
+
+    @Test
+    public void testThatFailedDestinationIsIsolated() throws Exception {
+        final List<String> delivered = new ArrayList<>();
+        Map<String, ChatServer> destinations = new LinkedHashMap<>();
+        destinations.put("slack", slackInstance(new MessageSender() {
+            @Override
+            public void send(SlackMessage message) throws IOException {
+                throw new IOException("Slack is not available");
+            }
+        }));
+        destinations.put("archive", slackInstance(new MessageSender() {
+            @Override
+            public void send(SlackMessage message) {
+                delivered.add(message.getSubject());
+            }
+        }));
+        CompositeChatServer chatServer = new CompositeChatServer(destinations);
+        chatServer.postIssueCreation(issue(1));
+        chatServer.postIssueCreation(issue(2));
+        chatServer.flush();
+
+        assertThat(delivered.toString(), is("[ASOC-1, ASOC-2]"));
+        assertThat(chatServer.getFailures().get("slack"), is(2L));
+        assertThat(chatServer.getFailures().get("archive"), is(0L));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testThatFailureIsThrownIfNoDestinationAcceptsMessage() throws Exception {
+        MessageSender failingSender = new MessageSender() {
+            @Override
+            public void send(SlackMessage message) throws IOException {
+                throw new IOException("Slack is not available");
+            }
+        };
+        Map<String, ChatServer> destinations = new LinkedHashMap<>();
+        destinations.put("slack", slackInstance(failingSender));
+        destinations.put("archive", slackInstance(failingSender));
+        CompositeChatServer chatServer = new CompositeChatServer(destinations);
+        chatServer.postIssueCreation(issue(1));
+        chatServer.flush();
+    }
+
+    private static SlackInstance slackInstance(MessageSender messageSender) {
+        return new SlackInstance.Builder()
+                .channelMapper(new ChannelMapper.Builder().addMapping("ASOC", "vixlet").build())
+                .messageSender(messageSender).build();
+    }
+
+    private static Issue issue(int id) throws Exception {
+        return new Issue.Builder().projectPrefix("ASOC").id(id).title("Title " + id).description("Description")
+                .created(new Date()).creator("Noura").link(new URL("http://ontometrics.com:8085/issue/ASOC-" + id))
+                .build();
+    }
+}
@@ -20,6 +20,11 @@ public class EmptyChatServer implements ChatServer {
 
     }
 
+    @Override
+    public void flush() {
+
+    }
+
     @Override
     public ChannelMapper getChannelMapper() {
         return null;
@@ -3,10 +3,12 @@ package com.ontometrics.integrations.configuration;
 import com.ontometrics.integrations.events.Issue;
 import com.ontometrics.integrations.events.ProcessEvent;
 import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang.time.DateUtils;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.File;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.Calendar;
@@ -107,6 +109,45 @@ public class EventProcessorConfigurationTest {
     */
 
 
+    /**
+     * Verifies that last processed date of the project is kept if it is after the saved one and survives reload
+     * once committed
+     */
+    @Test
+    public void testThatLatestCommittedDateOfProjectIsStored() {
+        assertThat(configuration.loadLastProcessedDate("ASOC"), nullValue());
+        configuration.saveLastProcessedEventDate(new Date(10000), "ASOC");
+        configuration.saveLastProcessedEventDate(new Date(30000), "ASOC");
+        configuration.saveLastProcessedEventDate(new Date(20000), "ASOC");
+        configuration.saveLastProcessedEventDate(new Date(5000), "DMAN");
+        assertThat(configuration.loadLastProcessedDate("ASOC"), is(new Date(30000)));
+        configuration.commit();
+
+        configuration.reload();
+        assertThat(configuration.loadLastProcessedDate("ASOC"), is(new Date(30000)));
+        assertThat(configuration.loadLastProcessedDate("DMAN"), is(new Date(5000)));
+        assertThat(configuration.loadLastProcessedDate("HTS"), nullValue());
+    }
+
+    /**
+     * Verifies that dates from lastEvent.properties are migrated once and don't override later stored dates
+     */
+    @Test
+    public void testThatLastEventPropertiesAreMigrated() throws Exception {
+        configuration.saveLastProcessedEventDate(new Date(50000), "DMAN");
+        configuration.commit();
+        File dataDir = new File(ConfigurationFactory.get().getString("PROP.APP_DATA_DIR"));
+        File file = new File(dataDir, "lastEvent.properties");
+        FileUtils.writeStringToFile(file, "last.event.date.ASOC=10000\nlast.event.date.DMAN=40000\n");
+        new File(dataDir, "lastEvent.properties.migrated").delete();
+
+        configuration.reload();
+        assertThat(configuration.loadLastProcessedDate("ASOC"), is(new Date(10000)));
+        assertThat(configuration.loadLastProcessedDate("DMAN"), is(new Date(50000)));
+        assertThat(file.exists(), is(false));
+        assertThat(new File(dataDir, "lastEvent.properties.migrated").exists(), is(true));
+    }
+
     @Test
     public void testThatMinimumAllowedDateCorrectlyResolved(){
         EventProcessorConfiguration configuration = EventProcessorConfiguration.instance();
@@ -0,0 +1,91 @@
+package com.ontometrics.integrations.configuration;
+
+import com.ontometrics.util.LatencyHistogram;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class NotificationLatencyTest {
+
+    @Test
+    public void testThatStagesAddUpToTotal() {
+        NotificationLatency latency = new NotificationLatency();
+        latency.polled("ASOC", 1000, 1500, 200);
+        NotificationTrace trace = latency.startTrace("ASOC", 400L);
+        trace.queued(1600);
+        trace.dequeued(1900);
+        trace.acknowledged(2050);
+
+        assertThat(trace.getDuration(NotificationLatency.Stage.POLL), is(600L));
+        assertThat(trace.getDuration(NotificationLatency.Stage.FETCH), is(300L));
+        assertThat(trace.getDuration(NotificationLatency.Stage.PARSE), is(200L));
+        assertThat(trace.getDuration(NotificationLatency.Stage.FORMAT), is(100L));
+        assertThat(trace.getDuration(NotificationLatency.Stage.QUEUE), is(300L));
+        assertThat(trace.getDuration(NotificationLatency.Stage.SEND), is(150L));
+        long sum = 0;
+        for (NotificationLatency.Stage stage : NotificationLatency.Stage.values()) {
+            if (stage != NotificationLatency.Stage.TOTAL) {
+                sum += trace.getDuration(stage);
+            }
+        }
+        assertThat(trace.getDuration(NotificationLatency.Stage.TOTAL), is(sum));
+
+        Map<NotificationLatency.Stage, LatencyHistogram> histograms = latency.getHistograms().get("ASOC");
+        assertThat(histograms.get(NotificationLatency.Stage.TOTAL).getCount(), is(1L));
+        assertThat(latency.toString(), containsString("ASOC (1 messages)"));
+    }
+
+    @Test
+    public void testThatEveryDestinationIsRecordedToItsOwnHistograms() {
+        NotificationLatency latency = new NotificationLatency();
+        latency.polled("ASOC", 1000, 1500, 200);
+        NotificationTrace slackTrace = latency.startTrace("slack", "ASOC", 400L);
+        slackTrace.queued(1600);
+        slackTrace.acknowledged(1700);
+        NotificationTrace archiveTrace = latency.startTrace("archive", "ASOC", 400L);
+        archiveTrace.queued(1600);
+        archiveTrace.acknowledged(5600);
+
+        Map<String, Map<NotificationLatency.Stage, LatencyHistogram>> histograms = latency.getHistograms();
+        assertThat(histograms.keySet(), contains("ASOC to archive", "ASOC to slack"));
+        assertThat(histograms.get("ASOC to slack").get(NotificationLatency.Stage.TOTAL).getMax(), is(1300L));
+        assertThat(histograms.get("ASOC to archive").get(NotificationLatency.Stage.TOTAL).getMax(), is(5200L));
+        assertThat(latency.toString(), containsString("ASOC to slack (1 messages)"));
+    }
+
+    @Test
+    public void testThatMessageIsNotTracedBeforeProjectIsPolled() {
+        NotificationLatency latency = new NotificationLatency();
+        assertThat(latency.startTrace("ASOC", 400L), is(nullValue()));
+        latency.polled("ASOC", 1000, 1500, 200);
+        assertThat(latency.startTrace("ASOC", null), is(nullValue()));
+    }
+
+    @Test
+    public void testThatBatchedMessagesAreRecordedOnceWhenBatchIsAcknowledged() {
+        NotificationLatency latency = new NotificationLatency();
+        latency.polled("ASOC", 1000, 1500, 200);
+        SlackMessageBatch batch = new SlackMessageBatch(10);
+        for (int i = 1; i <= 3; i++) {
+            SlackMessage message = new SlackMessage(i, "vixlet", "ASOC-" + i, new SlackPayloadWriter.Content(null,
+                    "message " + i, Collections.<SlackPayloadWriter.Image>emptyList()));
+            NotificationTrace trace = latency.startTrace("ASOC", 900L);
+            trace.queued(1600);
+            message.setTrace(trace);
+            assertThat(batch.add(message), is(true));
+        }
+        SlackMessage combined = batch.toMessage();
+        combined.dequeued(1700);
+        combined.acknowledged(1800);
+        combined.acknowledged(1900);
+
+        Map<NotificationLatency.Stage, LatencyHistogram> histograms = latency.getHistograms().get("ASOC");
+        assertThat(histograms.get(NotificationLatency.Stage.TOTAL).getCount(), is(3L));
+        assertThat(histograms.get(NotificationLatency.Stage.SEND).getMax(), is(100L));
+        assertThat(histograms.get(NotificationLatency.Stage.TOTAL).getMax(), is(900L));
+    }
+}
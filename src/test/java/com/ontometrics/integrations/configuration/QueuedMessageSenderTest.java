@@ -0,0 +1,257 @@
+package com.ontometrics.integrations.configuration;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class QueuedMessageSenderTest {
+
+    private final List<String> sent = Collections.synchronizedList(new ArrayList<String>());
+    private final CountDownLatch releaseMessages = new CountDownLatch(1);
+    private QueuedMessageSender queue;
+
+    @After
+    public void tearDown() {
+        releaseMessages.countDown();
+        if (queue != null) {
+            queue.close(1000);
+        }
+    }
+
+    @Test
+    public void testThatMessagesOfChannelAreDeliveredInOrder() throws Exception {
+        queue = new QueuedMessageSender.Builder().messageSender(new RecordingSender(false))
+                .senderThreads(3).capacity(300).build();
+        for (int i = 0; i < 50; i++) {
+            for (String channel : new String[]{"vixlet", "dminder", "music"}) {
+                queue.send(message(channel, i));
+            }
+        }
+        assertThat(queue.close(5000), is(true));
+
+        assertThat(sent.size(), is(150));
+        for (String channel : new String[]{"vixlet", "dminder", "music"}) {
+            int expectedId = 0;
+            for (String message : new ArrayList<>(sent)) {
+                if (message.startsWith(channel + ":")) {
+                    assertThat(message, is(channel + ":" + expectedId++));
+                }
+            }
+            assertThat(expectedId, is(50));
+        }
+        assertThat(queue.getDelivered(), is(150L));
+        assertThat(queue.getDeliveryLatency().getCount(), is(150L));
+        assertThat(queue.getDepth(), is(0));
+    }
+
+    @Test
+    public void testThatMessagesAreSpilledWhenQueueIsFull() throws Exception {
+        final List<String> spilled = Collections.synchronizedList(new ArrayList<String>());
+        queue = new QueuedMessageSender.Builder().messageSender(new RecordingSender(true))
+                .senderThreads(1).capacity(2)
+                .overflowPolicy(QueuedMessageSender.OverflowPolicy.SPILL)
+                .overflowSender(new MessageSender() {
+                    @Override
+                    public void send(SlackMessage message) {
+                        spilled.add(message.getSubject());
+                    }
+                })
+                .build();
+        for (int i = 0; i < 10; i++) {
+            queue.send(message("vixlet", i));
+        }
+        //first message may be taken by the sender, two more wait in the queue
+        assertThat(spilled.size() >= 7, is(true));
+        assertThat(queue.getSpilled(), is((long) spilled.size()));
+        assertThat(queue.getDropped(), is(0L));
+
+        releaseMessages.countDown();
+        assertThat(queue.close(5000), is(true));
+        assertThat(sent.size() + spilled.size(), is(10));
+    }
+
+    @Test
+    public void testThatFailedMessagesAreCounted() throws Exception {
+        queue = new QueuedMessageSender.Builder().messageSender(new MessageSender() {
+            @Override
+            public void send(SlackMessage message) {
+                throw new RuntimeException("Slack is not available");
+            }
+        }).build();
+        queue.send(message("music", 1));
+        queue.send(message("music", 2));
+        queue.close(5000);
+
+        assertThat(queue.getFailed(), is(2L));
+        assertThat(queue.getDelivered(), is(0L));
+    }
+
+    @Test
+    public void testThatBurstIsPacedToRateLimitWithoutDrops() throws Exception {
+        queue = new QueuedMessageSender.Builder().messageSender(new RecordingSender(false))
+                .senderThreads(1).capacity(1000).rateLimit(250, 1).build();
+        long startTime = System.currentTimeMillis();
+        for (int i = 0; i < 500; i++) {
+            queue.send(message("vixlet", i));
+            queue.send(message("dminder", i));
+        }
+        assertThat(queue.close(10000), is(true));
+        long elapsed = System.currentTimeMillis() - startTime;
+
+        //both channels are served at their own rate by the same sender
+        assertThat(elapsed, allOf(greaterThanOrEqualTo(1900L), lessThan(5000L)));
+        assertThat(sent.size(), is(1000));
+        assertThat(queue.getDelivered(), is(1000L));
+        assertThat(queue.getDropped(), is(0L));
+        assertThat(queue.getThrottleTimes().get("vixlet"), greaterThan(0L));
+        assertThat(queue.getChannelDepths().get("vixlet"), is(0));
+    }
+
+    @Test
+    public void testThatRateLimitedMessageIsPostedAfterRetryAfter() throws Exception {
+        final AtomicInteger attempts = new AtomicInteger();
+        queue = new QueuedMessageSender.Builder().messageSender(new RecordingSender(false) {
+            @Override
+            public void send(SlackMessage message) throws IOException {
+                if (attempts.incrementAndGet() == 1) {
+                    throw new SlackRateLimitException(null, 300);
+                }
+                super.send(message);
+            }
+        }).build();
+        long startTime = System.currentTimeMillis();
+        queue.send(message("music", 1));
+        queue.send(message("music", 2));
+        assertThat(queue.close(5000), is(true));
+
+        assertThat(System.currentTimeMillis() - startTime, greaterThanOrEqualTo(300L));
+        assertThat(sent.toString(), is("[music:1, music:2]"));
+        assertThat(queue.getRateLimited(), is(1L));
+        assertThat(queue.getFailed(), is(0L));
+    }
+
+    @Test
+    public void testThatFailedMessageIsRetried() throws Exception {
+        final AtomicInteger attempts = new AtomicInteger();
+        queue = new QueuedMessageSender.Builder().messageSender(new RecordingSender(false) {
+            @Override
+            public void send(SlackMessage message) throws IOException {
+                if (attempts.incrementAndGet() <= 2) {
+                    throw new RuntimeException("Slack is not available");
+                }
+                super.send(message);
+            }
+        }).maxAttempts(3).retryDelay(10).build();
+        queue.send(message("music", 1));
+        assertThat(queue.close(5000), is(true));
+
+        assertThat(sent.toString(), is("[music:1]"));
+        assertThat(queue.getRetried(), is(2L));
+        assertThat(queue.getFailed(), is(0L));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testThatSpillPolicyRequiresOverflowSender() {
+        new QueuedMessageSender.Builder().messageSender(new RecordingSender(false))
+                .overflowPolicy(QueuedMessageSender.OverflowPolicy.SPILL).build();
+    }
+
+    @Test
+    public void testThatMessageWaitingForRetryKeepsItsSlot() throws Exception {
+        final AtomicInteger attempts = new AtomicInteger();
+        final CountDownLatch firstAttempt = new CountDownLatch(1);
+        final List<String> spilled = Collections.synchronizedList(new ArrayList<String>());
+        queue = new QueuedMessageSender.Builder().messageSender(new RecordingSender(false) {
+            @Override
+            public void send(SlackMessage message) throws IOException {
+                if (attempts.incrementAndGet() == 1) {
+                    firstAttempt.countDown();
+                    throw new RuntimeException("Slack is not available");
+                }
+                super.send(message);
+            }
+        }).senderThreads(1).capacity(1).maxAttempts(2).retryDelay(200)
+                .overflowPolicy(QueuedMessageSender.OverflowPolicy.SPILL)
+                .overflowSender(new MessageSender() {
+                    @Override
+                    public void send(SlackMessage message) {
+                        spilled.add(message.getSubject());
+                    }
+                })
+                .build();
+        queue.send(message("music", 1));
+        firstAttempt.await();
+        queue.send(message("music", 2));
+
+        assertThat(spilled.toString(), is("[2]"));
+        assertThat(queue.close(5000), is(true));
+        assertThat(sent.toString(), is("[music:1]"));
+        assertThat(queue.getRetried(), is(1L));
+    }
+
+    @Test
+    public void testThatQueuedMessagesOfChannelAreBatched() throws Exception {
+        final List<String> payloads = Collections.synchronizedList(new ArrayList<String>());
+        queue = new QueuedMessageSender.Builder().messageSender(new RecordingSender(true) {
+            @Override
+            public void send(SlackMessage message) throws IOException {
+                super.send(message);
+                payloads.add(message.getPayload());
+            }
+        }).senderThreads(1).capacity(100).maxBatchSize(4).build();
+        for (int i = 0; i < 10; i++) {
+            queue.send(message("vixlet", i));
+        }
+        releaseMessages.countDown();
+        assertThat(queue.close(5000), is(true));
+
+        //first message may be taken by the sender before the rest is queued
+        StringBuilder texts = new StringBuilder();
+        for (String payload : payloads) {
+            String text = new ObjectMapper().readTree(payload).get("text").asText();
+            assertThat(text.split("message").length - 1, lessThanOrEqualTo(4));
+            texts.append(text).append("\n");
+        }
+        assertThat(texts.toString(), is("message 0\nmessage 1\nmessage 2\nmessage 3\nmessage 4\n"
+                + "message 5\nmessage 6\nmessage 7\nmessage 8\nmessage 9\n"));
+        assertThat(payloads.size(), lessThanOrEqualTo(4));
+        assertThat(queue.getDelivered(), is(10L));
+        assertThat(queue.getRequests(), is((long) payloads.size()));
+        assertThat(queue.getMessagesPerRequest(), greaterThanOrEqualTo(2.5));
+    }
+
+    private static SlackMessage message(String channel, int id) {
+        return new SlackMessage(id, channel, String.valueOf(id), new SlackPayloadWriter.Content(null, "message " + id,
+                Collections.<SlackPayloadWriter.Image>emptyList()));
+    }
+
+    private class RecordingSender implements MessageSender {
+        private final boolean waitForRelease;
+
+        private RecordingSender(boolean waitForRelease) {
+            this.waitForRelease = waitForRelease;
+        }
+
+        @Override
+        public void send(SlackMessage message) throws IOException {
+            if (waitForRelease) {
+                try {
+                    releaseMessages.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+            sent.add(message.getChannel() + ":" + message.getSubject());
+        }
+    }
+}
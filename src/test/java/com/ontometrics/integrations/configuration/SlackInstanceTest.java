@@ -1,17 +1,31 @@
 package com.ontometrics.integrations.configuration;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.ontometrics.integrations.events.Comment;
 import com.ontometrics.integrations.events.Issue;
 import com.ontometrics.integrations.events.IssueEditSession;
 import com.ontometrics.integrations.events.TestDataFactory;
 import com.ontometrics.integrations.sources.ChannelMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.io.IOUtils;
 import org.junit.Before;
 import org.junit.Test;
 import org.slf4j.Logger;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 import static org.hamcrest.CoreMatchers.*;
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -129,4 +143,72 @@ public class SlackInstanceTest {
         assertThat(slackInstance.buildSessionMessage(session), containsString("*Noura* updated"));
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testThatMessagesArePostedOverSingleKeepAliveConnection() throws Exception {
+        final List<String> messages = Collections.synchronizedList(new ArrayList<String>());
+        final Set<Integer> clientPorts = Collections.synchronizedSet(new HashSet<Integer>());
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                clientPorts.add(exchange.getRemoteAddress().getPort());
+                messages.add(IOUtils.toString(exchange.getRequestBody(), "UTF-8"));
+                byte[] response = "ok".getBytes("UTF-8");
+                exchange.sendResponseHeaders(200, response.length);
+                try (OutputStream os = exchange.getResponseBody()) {
+                    os.write(response);
+                }
+            }
+        });
+        server.start();
+        SlackWebhookClient webhookClient = new SlackWebhookClient(
+                "http://localhost:" + server.getAddress().getPort() + "/services/hook");
+        SlackInstance slack = new SlackInstance.Builder().channelMapper(slackInstance.getChannelMapper())
+                .messageSender(webhookClient).build();
+        try {
+            for (int i = 1; i <= 5; i++) {
+                slack.postIssueCreation(new Issue.Builder().projectPrefix("DMIN").id(i).title("DMIN-" + i + ": Title")
+                        .created(new Date()).creator("Noura").link(new URL("http://ontometrics.com:8085/issue/DMIN-" + i))
+                        .build());
+            }
+        } finally {
+            webhookClient.close();
+            server.stop(0);
+        }
+
+        assertThat(messages.size(), is(5));
+        assertThat(messages.get(0), allOf(containsString("\"channel\":\"dminder\""), containsString("DMIN-1")));
+        assertThat(clientPorts.size(), is(1));
+        assertThat(webhookClient.getPostLatency().getCount(), is(5L));
+    }
+
+    @Test
+    public void testThatSessionPayloadIsValidJson() throws Exception {
+        final List<SlackMessage> messages = new ArrayList<>();
+        SlackInstance slack = new SlackInstance.Builder().channelMapper(slackInstance.getChannelMapper())
+                .icon(SlackInstance.DEFAULT_ICON_URL)
+                .messageSender(new MessageSender() {
+                    @Override
+                    public void send(SlackMessage message) {
+                        messages.add(message);
+                    }
+                }).build();
+        Issue issue = new Issue.Builder().projectPrefix("ASOC").id(492).title("Title with \"quotes\"")
+                .created(new Date()).creator("Noura").link(new URL("http://ontometrics.com:8085/issue/ASOC-492"))
+                .build();
+        Comment comment = new Comment.Builder().author("Noura").text("Use {braces}\tand\nnew lines")
+                .created(new Date()).build();
+        slack.post(new IssueEditSession.Builder().issue(issue).updater("Noura").updated(new Date()).comment(comment)
+                .build());
+
+        JsonNode payload = new ObjectMapper().readTree(messages.get(0).getPayload());
+        assertThat(payload.get("channel").asText(), is("vixlet"));
+        assertThat(payload.get("username").asText(), is("YouTrack"));
+        assertThat(payload.get("icon_url").asText(), is(SlackInstance.DEFAULT_ICON_URL));
+        assertThat(payload.get("link_names").asInt(), is(1));
+        assertThat(payload.get("text").asText(), is("*Noura* commented on  <http://ontometrics.com:8085/issue/ASOC-492|ASOC-492>: "
+                + "Title with \"quotes\"" + System.lineSeparator() + "Use [braces]\tand\nnew lines" + System.lineSeparator()));
+        assertThat(payload.has("attachments"), is(false));
+    }
+
+}
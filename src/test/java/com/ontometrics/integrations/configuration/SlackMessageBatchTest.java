@@ -0,0 +1,100 @@
+package com.ontometrics.integrations.configuration;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.lang.StringUtils;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class SlackMessageBatchTest {
+
+    @Test
+    public void testThatMessagesAreCombinedInOrder() throws Exception {
+        SlackMessageBatch batch = new SlackMessageBatch(10);
+        assertThat(batch.add(message(1, "first", images(1, "a.png"))), is(true));
+        assertThat(batch.add(message(2, "second \"quoted\"", images(0, null))), is(true));
+        assertThat(batch.add(message(3, "third", images(1, "b.png"))), is(true));
+
+        SlackMessage message = batch.toMessage();
+        JsonNode payload = new ObjectMapper().readTree(message.getPayload());
+        assertThat(payload.get("channel").asText(), is("vixlet"));
+        assertThat(payload.get("icon_url").asText(), is("icon.png"));
+        assertThat(payload.get("text").asText(), is("first\nsecond \"quoted\"\nthird"));
+        assertThat(payload.get("attachments").size(), is(2));
+        assertThat(payload.get("attachments").get(1).get("image_url").asText(), is("b.png"));
+        assertThat(message.getParts().size(), is(3));
+        assertThat(message.getParts().get(2).getId(), is(3L));
+    }
+
+    @Test
+    public void testThatBatchIsSplitAtLimits() throws Exception {
+        SlackMessageBatch batch = new SlackMessageBatch(2);
+        assertThat(batch.add(message(1, "one", images(0, null))), is(true));
+        assertThat(batch.add(new SlackMessage(2, "dminder", "DMIN-2", new SlackPayloadWriter.Content("icon.png",
+                "other channel", images(0, null)))), is(false));
+        assertThat(batch.add(message(3, "two", images(0, null))), is(true));
+        assertThat(batch.add(message(4, "three", images(0, null))), is(false));
+
+        batch = new SlackMessageBatch(10);
+        String text = StringUtils.repeat("x", SlackMessageBatch.MAX_TEXT_LENGTH / 2);
+        assertThat(batch.add(message(1, text, images(0, null))), is(true));
+        assertThat(batch.add(message(2, text, images(0, null))), is(false));
+        assertThat(batch.toMessage().getId(), is(1L));
+
+        batch = new SlackMessageBatch(10);
+        assertThat(batch.add(message(1, "", images(SlackMessageBatch.MAX_ATTACHMENTS / 2 + 1, "a.png"))), is(true));
+        assertThat(batch.add(message(2, "", images(SlackMessageBatch.MAX_ATTACHMENTS / 2 + 1, "a.png"))), is(false));
+    }
+
+    @Test
+    public void testThatMessageWithoutContentIsNotCombined() throws Exception {
+        SlackMessageBatch batch = new SlackMessageBatch(10);
+        SlackMessage stored = new SlackMessage(1, "vixlet", "ASOC-1", "{\"text\":\"stored\"}");
+        assertThat(batch.add(stored), is(true));
+        assertThat(batch.add(message(2, "second", images(0, null))), is(false));
+        assertThat(batch.toMessage(), is(stored));
+
+        batch = new SlackMessageBatch(10);
+        assertThat(batch.add(message(2, "second", images(0, null))), is(true));
+        assertThat(batch.add(stored), is(false));
+    }
+
+    @Test
+    public void testThatPayloadIsWrittenToStreamAsUtf8() throws Exception {
+        SlackMessageBatch batch = new SlackMessageBatch(10);
+        batch.add(message(1, "\u00dcn\u00efc\u00f6d\u00e9 \u2603", images(1, "a.png")));
+        batch.add(message(2, "second", images(0, null)));
+        SlackMessage message = batch.toMessage();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        message.writePayload(out);
+        assertThat(new String(out.toByteArray(), StandardCharsets.UTF_8), is(message.getPayload()));
+
+        SlackMessage stored = new SlackMessage(3, "vixlet", "ASOC-3", "{\"text\":\"\u2603\"}");
+        out.reset();
+        stored.writePayload(out);
+        assertThat(new String(out.toByteArray(), StandardCharsets.UTF_8), is(stored.getPayload()));
+    }
+
+    private static SlackMessage message(long id, String text, List<SlackPayloadWriter.Image> images) {
+        return new SlackMessage(id, "vixlet", "ASOC-" + id, new SlackPayloadWriter.Content("icon.png", text, images));
+    }
+
+    private static List<SlackPayloadWriter.Image> images(int count, String url) {
+        if (count == 0) {
+            return Collections.emptyList();
+        }
+        List<SlackPayloadWriter.Image> images = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            images.add(new SlackPayloadWriter.Image(url, "image " + i));
+        }
+        return images;
+    }
+}
@@ -0,0 +1,134 @@
+package com.ontometrics.integrations.configuration;
+
+import com.ontometrics.db.GroupCommitter;
+import org.apache.http.client.HttpResponseException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mapdb.DB;
+import org.mapdb.DBMaker;
+import org.mapdb.Serializer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+public class SlackOutboxTest {
+
+    private File dbFile;
+    private DB db;
+    private GroupCommitter committer;
+    private SlackOutbox outbox;
+
+    @Before
+    public void setUp() throws Exception {
+        dbFile = File.createTempFile("outbox", ".db");
+        dbFile.delete();
+        open();
+    }
+
+    @After
+    public void tearDown() {
+        close();
+        dbFile.delete();
+    }
+
+    @Test
+    public void testThatUndeliveredMessagesArePendingAfterReopen() throws Exception {
+        final List<String> delivered = new ArrayList<>();
+        MessageSender sender = outbox.removingDelivered(new MessageSender() {
+            @Override
+            public void send(SlackMessage message) throws IOException {
+                if (message.getSubject().equals("ASOC-2")) {
+                    throw new HttpResponseException(500, "Slack is not available");
+                }
+                delivered.add(message.getSubject());
+            }
+        });
+        for (int i = 1; i <= 3; i++) {
+            SlackMessage message = outbox.add("vixlet", "ASOC-" + i, content("message " + i));
+            try {
+                sender.send(message);
+            } catch (HttpResponseException ex) {
+                //left in the outbox
+            }
+        }
+        outbox.add("dminder", "DMIN-1", content("not sent"));
+        outbox.sync();
+
+        close();
+        open();
+
+        List<SlackMessage> pending = outbox.getPending();
+        assertThat(delivered.toString(), is("[ASOC-1, ASOC-3]"));
+        assertThat(pending.size(), is(2));
+        assertThat(pending.get(0).getSubject(), is("ASOC-2"));
+        assertThat(pending.get(0).getChannel(), is("vixlet"));
+        assertThat(pending.get(0).getContent().getText(), is("message 2"));
+        assertThat(pending.get(0).getContent().getImages().get(0).getUrl(), is("message-2.png"));
+        assertThat(pending.get(0).getPayload(), is(SlackPayloadWriter.write("vixlet", content("message 2"))));
+        assertThat(pending.get(1).getSubject(), is("DMIN-1"));
+        assertThat(outbox.add("vixlet", "ASOC-4", content("")).getId(), is(pending.get(1).getId() + 1));
+    }
+
+    @Test
+    public void testThatMessagesShareCommits() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            outbox.add("vixlet", "ASOC-" + i, content(""));
+        }
+        outbox.sync();
+        assertThat(outbox.size(), is(100));
+        assertThat(committer.getCommits() < 10, is(true));
+    }
+
+    @Test
+    public void testThatPartsOfDeliveredBatchAreRemoved() throws Exception {
+        SlackMessageBatch batch = new SlackMessageBatch(10);
+        for (int i = 1; i <= 3; i++) {
+            batch.add(outbox.add("vixlet", "ASOC-" + i, content("message " + i)));
+        }
+        outbox.add("vixlet", "ASOC-4", content(""));
+
+        outbox.removingDelivered(new MessageSender() {
+            @Override
+            public void send(SlackMessage message) {
+            }
+        }).send(batch.toMessage());
+
+        List<SlackMessage> pending = outbox.getPending();
+        assertThat(pending.size(), is(1));
+        assertThat(pending.get(0).getSubject(), is("ASOC-4"));
+    }
+
+    @Test
+    public void testThatMessageStoredWithPayloadIsRead() throws Exception {
+        SlackMessage message = SlackMessage.fromBytes(1,
+                new SlackMessage(1, "vixlet", "ASOC-1", "{\"text\":\"message 1\"}").toBytes());
+        assertThat(message.getPayload(), is("{\"text\":\"message 1\"}"));
+        assertThat(message.getContent(), is(nullValue()));
+    }
+
+    private static SlackPayloadWriter.Content content(String text) {
+        List<SlackPayloadWriter.Image> images = text.isEmpty() ? Collections.<SlackPayloadWriter.Image>emptyList()
+                : Collections.singletonList(new SlackPayloadWriter.Image(text.replace(' ', '-') + ".png", text));
+        return new SlackPayloadWriter.Content("icon.png", text, images);
+    }
+
+    private void open() {
+        db = DBMaker.fileDB(dbFile).make();
+        committer = new GroupCommitter(db, 20, "test-committer");
+        outbox = new SlackOutbox(db.treeMap("slack_outbox", Serializer.LONG, Serializer.BYTE_ARRAY).createOrOpen(),
+                committer);
+    }
+
+    private void close() {
+        committer.close();
+        db.close();
+    }
+}
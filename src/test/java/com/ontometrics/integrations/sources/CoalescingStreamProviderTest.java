@@ -0,0 +1,103 @@
+package com.ontometrics.integrations.sources;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.HttpStatus;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class CoalescingStreamProviderTest {
+
+    private static final InputStreamHandler<String> TO_STRING = new InputStreamHandler<String>() {
+        @Override
+        public String handleStream(InputStream is, int responseCode) throws Exception {
+            return IOUtils.toString(is, "UTF-8");
+        }
+    };
+
+    private AtomicInteger fetches;
+    private CountDownLatch fetchStarted;
+    private CountDownLatch releaseFetch;
+    private CoalescingStreamProvider streamProvider;
+
+    @Before
+    public void setUp() {
+        fetches = new AtomicInteger();
+        fetchStarted = new CountDownLatch(1);
+        releaseFetch = new CountDownLatch(0);
+        streamProvider = new CoalescingStreamProvider(new StreamProvider() {
+            @Override
+            public <RES> RES openResourceStream(URL resourceUrl, InputStreamHandler<RES> inputStreamHandler) throws Exception {
+                fetches.incrementAndGet();
+                fetchStarted.countDown();
+                releaseFetch.await();
+                return inputStreamHandler.handleStream(
+                        new ByteArrayInputStream(resourceUrl.getPath().getBytes("UTF-8")), HttpStatus.SC_OK);
+            }
+        }, null);
+    }
+
+    @Test
+    public void testThatResourceIsFetchedOncePerCycle() throws Exception {
+        URL url = new URL("http://youtrack/rest/issue/ASOC-1/attachment");
+        streamProvider.beginCycle();
+        for (int i = 0; i < 30; i++) {
+            assertThat(streamProvider.openResourceStream(url, TO_STRING), is("/rest/issue/ASOC-1/attachment"));
+        }
+        streamProvider.endCycle();
+
+        assertThat(fetches.get(), is(1));
+        assertThat(streamProvider.getMisses(), is(1L));
+        assertThat(streamProvider.getHits(), is(29L));
+
+        streamProvider.beginCycle();
+        streamProvider.openResourceStream(url, TO_STRING);
+        streamProvider.endCycle();
+        streamProvider.openResourceStream(url, TO_STRING);
+
+        assertThat(fetches.get(), is(3));
+    }
+
+    @Test
+    public void testThatConcurrentRequestsShareSingleFetch() throws Exception {
+        final URL url = new URL("http://youtrack/rest/issue/ASOC-1/changes");
+        releaseFetch = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        streamProvider.beginCycle();
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                results.add(executor.submit(new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        return streamProvider.openResourceStream(url, TO_STRING);
+                    }
+                }));
+            }
+            fetchStarted.await();
+            releaseFetch.countDown();
+            for (Future<String> result : results) {
+                assertThat(result.get(), is("/rest/issue/ASOC-1/changes"));
+            }
+        } finally {
+            streamProvider.endCycle();
+            executor.shutdownNow();
+        }
+        assertThat(fetches.get(), is(1));
+        assertThat(streamProvider.getHits(), is(3L));
+    }
+}
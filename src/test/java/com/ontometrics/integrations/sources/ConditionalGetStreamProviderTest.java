@@ -0,0 +1,120 @@
+package com.ontometrics.integrations.sources;
+
+import com.ontometrics.db.GroupCommitter;
+import com.ontometrics.util.HttpConnectionPool;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.io.IOUtils;
+import org.apache.http.HttpStatus;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mapdb.DB;
+import org.mapdb.DBMaker;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class ConditionalGetStreamProviderTest {
+
+    private static final InputStreamHandler<String> TO_STRING = new InputStreamHandler<String>() {
+        @Override
+        public String handleStream(InputStream is, int responseCode) throws Exception {
+            return responseCode + ":" + IOUtils.toString(is, "UTF-8");
+        }
+    };
+
+    private HttpServer server;
+    private HttpConnectionPool connectionPool;
+    private DB db;
+    private GroupCommitter committer;
+    private final AtomicInteger version = new AtomicInteger(1);
+    private final AtomicInteger transferred = new AtomicInteger();
+
+    @Before
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String etag = "\"v" + version.get() + "\"";
+                exchange.getResponseHeaders().add("ETag", etag);
+                if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                    exchange.sendResponseHeaders(HttpStatus.SC_NOT_MODIFIED, -1);
+                    exchange.close();
+                    return;
+                }
+                transferred.incrementAndGet();
+                byte[] response = (exchange.getRequestURI().getPath() + " " + etag).getBytes("UTF-8");
+                exchange.sendResponseHeaders(HttpStatus.SC_OK, response.length);
+                try (OutputStream os = exchange.getResponseBody()) {
+                    os.write(response);
+                }
+            }
+        });
+        server.start();
+        connectionPool = new HttpConnectionPool.Builder().name("test").build();
+        db = DBMaker.memoryDB().transactionEnable().make();
+        committer = new GroupCommitter(db, 10000, "test-committer");
+    }
+
+    @After
+    public void tearDown() {
+        committer.close();
+        db.close();
+        connectionPool.close();
+        server.stop(0);
+    }
+
+    @Test
+    public void testThatNotModifiedResourceIsTakenFromCache() throws Exception {
+        ConditionalGetStreamProvider streamProvider = new ConditionalGetStreamProvider(
+                new NonAuthenticatedHttpStreamProvider(connectionPool.getHttpClient()),
+                new HttpResponseCache(new HashMap<String, byte[]>(), committer, 1024), null);
+        URL url = new URL("http://localhost:" + server.getAddress().getPort() + "/rest/issue/ASOC-1/changes");
+
+        assertThat(streamProvider.openResourceStream(url, TO_STRING), is("200:/rest/issue/ASOC-1/changes \"v1\""));
+        assertThat(streamProvider.openResourceStream(url, TO_STRING), is("200:/rest/issue/ASOC-1/changes \"v1\""));
+        version.incrementAndGet();
+        assertThat(streamProvider.openResourceStream(url, TO_STRING), is("200:/rest/issue/ASOC-1/changes \"v2\""));
+
+        assertThat(transferred.get(), is(2));
+        assertThat(streamProvider.getNotModified(), is(1L));
+        assertThat(streamProvider.getModified(), is(2L));
+    }
+
+    @Test
+    public void testThatLeastRecentlyUsedResponsesAreEvicted() {
+        Map<String, byte[]> store = new HashMap<>();
+        HttpResponseCache cache = new HttpResponseCache(store, committer, 300);
+        for (String key : new String[]{"a", "b", "c"}) {
+            cache.put(key, new HttpResponseCache.CachedResponse("\"" + key + "\"", null, new byte[80]));
+        }
+        assertThat(cache.get("a"), notNullValue());
+        cache.put("d", new HttpResponseCache.CachedResponse(null, "Wed, 21 Oct 2015 07:28:00 GMT", new byte[80]));
+
+        assertThat(store.keySet(), containsInAnyOrder("a", "c", "d"));
+        assertThat(cache.getEntries(), is(3));
+        assertThat(cache.getSize(), lessThanOrEqualTo(300L));
+        assertThat(cache.get("d").getLastModified(), is("Wed, 21 Oct 2015 07:28:00 GMT"));
+
+        cache.put("e", new HttpResponseCache.CachedResponse(null, null, new byte[400]));
+        assertThat(store.containsKey("e"), is(false));
+
+        assertThat(new HttpResponseCache(store, committer, 250).getEntries(), is(2));
+        //pending changes are committed on close
+        assertThat(committer.getCommits(), is(0L));
+        committer.close();
+        assertThat(committer.getCommits(), is(1L));
+    }
+}
@@ -0,0 +1,120 @@
+package com.ontometrics.integrations.sources;
+
+import com.ontometrics.integrations.events.Comment;
+import com.ontometrics.integrations.events.Issue;
+import com.ontometrics.integrations.events.IssueEdit;
+import com.ontometrics.integrations.events.IssueEditSession;
+import org.junit.Test;
+
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class EditSessionCoalescerTest {
+
+    private static final long MINUTE = 60 * 1000;
+
+    private final EditSessionCoalescer coalescer = new EditSessionCoalescer(MINUTE);
+
+    @Test
+    public void testThatTransitionsOfFieldAreCollapsed() throws Exception {
+        Issue issue = issue(148);
+        List<IssueEditSession> sessions = coalescer.coalesce(Arrays.asList(
+                session(issue, "Noura", 0, edit(issue, "State", "Open", "In Progress")),
+                session(issue, "Noura", 10 * 1000, edit(issue, "State", "In Progress", "Fixed"),
+                        edit(issue, "Priority", "Normal", "Critical")),
+                session(issue, "Noura", 20 * 1000, edit(issue, "State", "Fixed", "Verified"))));
+
+        assertThat(sessions.size(), is(1));
+        assertThat(sessions.get(0).getChanges().toString(), is("[State: Open -> Verified, Priority: Normal -> Critical]"));
+        assertThat(sessions.get(0).getUpdated(), is(new Date(20 * 1000)));
+    }
+
+    @Test
+    public void testThatSessionsOutsideOfWindowOrOfOtherUpdaterAreNotMerged() throws Exception {
+        Issue issue = issue(148);
+        Issue otherIssue = issue(149);
+        List<IssueEditSession> sessions = coalescer.coalesce(Arrays.asList(
+                session(issue, "Noura", 0, edit(issue, "State", "Open", "In Progress")),
+                session(issue, "Rob", 1000, edit(issue, "State", "In Progress", "Fixed")),
+                session(otherIssue, "Noura", 2000, edit(otherIssue, "State", "Open", "Fixed")),
+                session(issue, "Noura", 2 * MINUTE, edit(issue, "State", "Fixed", "Verified"))));
+
+        assertThat(sessions.size(), is(4));
+    }
+
+    @Test
+    public void testThatMergedSessionTakesPlaceOfItsLastSession() throws Exception {
+        Issue issue = issue(148);
+        Issue otherIssue = issue(149);
+        List<IssueEditSession> sessions = coalescer.coalesce(Arrays.asList(
+                session(issue, "Noura", 0, edit(issue, "State", "Open", "In Progress")),
+                session(otherIssue, "Noura", 1000, edit(otherIssue, "State", "Open", "Fixed")),
+                session(issue, "Noura", 2000, edit(issue, "Assignee", "Rob", "Noura"))));
+
+        assertThat(sessions.size(), is(2));
+        assertThat(sessions.get(0).getIssue().getId(), is(149));
+        assertThat(sessions.get(1).getChanges().size(), is(2));
+    }
+
+    @Test
+    public void testThatRevertedChangesAreDropped() throws Exception {
+        Issue issue = issue(148);
+        List<IssueEditSession> sessions = coalescer.coalesce(Arrays.asList(
+                session(issue, "Noura", 0, edit(issue, "State", "Open", "Fixed")),
+                session(issue, "Noura", 1000, edit(issue, "State", "Fixed", "Open"))));
+
+        assertThat(sessions.size(), is(0));
+    }
+
+    @Test
+    public void testThatIssueCreationIsKeptWhenChangesAreReverted() throws Exception {
+        Issue issue = new Issue.Builder().projectPrefix("ASOC").id(148).title("Title").creator("Noura")
+                .created(new Date(0)).link(new URL("http://ontometrics.com:8085/issue/ASOC-148")).build();
+        List<IssueEditSession> sessions = coalescer.coalesce(Arrays.asList(
+                session(issue, "Noura", 0),
+                session(issue, "Noura", 1000, edit(issue, "State", "Open", "Fixed")),
+                session(issue, "Noura", 2000, edit(issue, "State", "Fixed", "Open"))));
+
+        assertThat(sessions.size(), is(1));
+        assertThat(sessions.get(0).isCreationEdit(), is(true));
+        assertThat(sessions.get(0).getChanges().size(), is(0));
+    }
+
+    @Test
+    public void testThatSessionsWithCommentsAreNotMergedTogether() throws Exception {
+        Issue issue = issue(148);
+        IssueEditSession first = new IssueEditSession.Builder().issue(issue).updater("Noura").updated(new Date(0))
+                .comment(new Comment.Builder().author("Noura").text("first").created(new Date(0)).build()).build();
+        IssueEditSession second = new IssueEditSession.Builder().issue(issue).updater("Noura").updated(new Date(1000))
+                .comment(new Comment.Builder().author("Noura").text("second").created(new Date(1000)).build()).build();
+        IssueEditSession third = session(issue, "Noura", 2000, edit(issue, "State", "Open", "Fixed"));
+
+        List<IssueEditSession> sessions = coalescer.coalesce(Arrays.asList(first, second, third));
+
+        assertThat(sessions.size(), is(2));
+        assertThat(sessions.get(0), is(first));
+        assertThat(sessions.get(1).getComment().getText(), is("second"));
+        assertThat(sessions.get(1).getChanges().size(), is(1));
+    }
+
+    private static Issue issue(int id) throws Exception {
+        return new Issue.Builder().projectPrefix("ASOC").id(id).title("Title")
+                .link(new URL("http://ontometrics.com:8085/issue/ASOC-" + id)).build();
+    }
+
+    private static IssueEditSession session(Issue issue, String updater, long updated, IssueEdit... edits) {
+        List<IssueEdit> changes = edits.length == 0 ? Collections.<IssueEdit>emptyList() : Arrays.asList(edits);
+        return new IssueEditSession.Builder().issue(issue).updater(updater).updated(new Date(updated))
+                .changes(changes).build();
+    }
+
+    private static IssueEdit edit(Issue issue, String field, String priorValue, String currentValue) {
+        return new IssueEdit.Builder().issue(issue).field(field).priorValue(priorValue).currentValue(currentValue).build();
+    }
+}
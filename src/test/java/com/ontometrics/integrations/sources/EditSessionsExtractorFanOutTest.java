@@ -0,0 +1,91 @@
+package com.ontometrics.integrations.sources;
+
+import com.ontometrics.integrations.configuration.EventProcessorConfiguration;
+import com.ontometrics.integrations.configuration.IssueTracker;
+import com.ontometrics.integrations.configuration.SimpleMockIssueTracker;
+import com.ontometrics.integrations.events.Issue;
+import com.ontometrics.integrations.events.IssueEditSession;
+import com.ontometrics.integrations.events.ProcessEvent;
+import ontometrics.test.util.TestUtil;
+import ontometrics.test.util.UrlStreamProvider;
+import org.apache.http.HttpStatus;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Tests that concurrent fetching of the issue changes produces the same sessions as sequential one
+ */
+public class EditSessionsExtractorFanOutTest {
+
+    private ExecutorService fetchExecutor;
+    private IssueTracker issueTracker;
+
+    @Before
+    public void setUp() throws Exception {
+        EventProcessorConfiguration.instance().clear();
+        TestUtil.setIssueHistoryWindowSettingToCoverAllIssues();
+        fetchExecutor = Executors.newFixedThreadPool(4);
+        issueTracker = new SimpleMockIssueTracker.Builder()
+                .changes("/feeds/issue-changes.xml")
+                .attachments("/feeds/issue-attachments.xml")
+                .build();
+    }
+
+    @After
+    public void tearDown() {
+        fetchExecutor.shutdownNow();
+    }
+
+    @Test
+    public void testThatConcurrentFetchProducesSameSessionsInSameOrder() throws Exception {
+        StreamProvider streamProvider = new HostConcurrencyLimitingStreamProvider(UrlStreamProvider.instance(), 2);
+        List<IssueEditSession> sequential = createExtractor(streamProvider, null).getLatestEdits("ASOC");
+        List<IssueEditSession> concurrent = createExtractor(streamProvider, fetchExecutor).getLatestEdits("ASOC");
+
+        assertThat(sequential, not(empty()));
+        assertThat(concurrent.size(), is(sequential.size()));
+        for (int i = 0; i < sequential.size(); i++) {
+            assertThat(concurrent.get(i).toString(), is(sequential.get(i).toString()));
+        }
+    }
+
+    @Test
+    public void testThatDeletedIssuesAreSkipped() throws Exception {
+        StreamProvider notFoundStreamProvider = new StreamProvider() {
+            @Override
+            public <RES> RES openResourceStream(URL resourceUrl, InputStreamHandler<RES> inputStreamHandler) throws Exception {
+                return inputStreamHandler.handleStream((InputStream) null, HttpStatus.SC_NOT_FOUND);
+            }
+        };
+
+        assertThat(createExtractor(notFoundStreamProvider, fetchExecutor).getLatestEdits("ASOC"), empty());
+    }
+
+    private EditSessionsExtractor createExtractor(StreamProvider streamProvider, ExecutorService executor) {
+        return new EditSessionsExtractor(issueTracker, streamProvider, executor) {
+            @Override
+            public List<ProcessEvent> getLatestEvents(String project, Date minDate) throws Exception {
+                List<ProcessEvent> events = new ArrayList<>();
+                for (int id = 1; id <= 5; id++) {
+                    events.add(new ProcessEvent.Builder()
+                            .issue(new Issue.Builder().projectPrefix(project).id(id % 4).title("Issue " + id).build())
+                            .published(new Date())
+                            .build());
+                }
+                return events;
+            }
+        };
+    }
+}
@@ -0,0 +1,93 @@
+package com.ontometrics.integrations.sources;
+
+import com.google.common.collect.ImmutableList;
+import com.ontometrics.integrations.events.Issue;
+import com.ontometrics.integrations.events.IssueEditSession;
+import com.ontometrics.integrations.events.ProcessEvent;
+import ontometrics.test.util.TestUtil;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Checks that {@link com.ontometrics.integrations.sources.IssueChangesParser} produces the same sessions as
+ * {@link com.ontometrics.integrations.sources.LegacyIssueChangesParser} for all the feeds we have
+ */
+public class IssueChangesParserTest {
+
+    private static final List<String> EXCLUDED_FIELDS = ImmutableList.of("Estimate Time", "Spent Time");
+    private static final List<Date> UP_TO_DATES = Arrays.asList(null, new Date(0), new Date(1404927516756L),
+            new Date(1409002338563L), new Date(Long.MAX_VALUE));
+
+    private final IssueChangesParser parser = new IssueChangesParser(EXCLUDED_FIELDS);
+    private final LegacyIssueChangesParser legacyParser = new LegacyIssueChangesParser(EXCLUDED_FIELDS);
+
+    @Test
+    public void testThatChangesAreParsedAsBefore() throws Exception {
+        ProcessEvent event = new ProcessEvent.Builder()
+                .issue(new Issue.Builder().projectPrefix("ASOC").id(148).title("New Embedding requirement")
+                        .link(new URL("http://ontometrics.com:8085/issue/ASOC-148")).build())
+                .published(new Date())
+                .build();
+        int comparedSessions = 0;
+        for (File feed : listFeeds()) {
+            for (Date upToDate : UP_TO_DATES) {
+                String expected = parseWithLegacyParser(feed, event, upToDate);
+                String actual;
+                try (InputStream is = new FileInputStream(feed)) {
+                    List<IssueEditSession> sessions = parser.parseChanges(is, event, upToDate);
+                    actual = sessions.toString();
+                    comparedSessions += sessions.size();
+                } catch (Exception ex) {
+                    actual = ex.getClass().getName();
+                }
+                assertThat(feed.getName() + " since " + upToDate, actual, is(expected));
+            }
+        }
+        assertThat(comparedSessions, greaterThan(0));
+    }
+
+    @Test
+    public void testThatAttachmentsAreParsedAsBefore() throws Exception {
+        for (File feed : listFeeds()) {
+            for (Date minDate : UP_TO_DATES) {
+                String expected, actual;
+                try (InputStream is = new FileInputStream(feed)) {
+                    expected = legacyParser.parseAttachments(is, minDate).toString();
+                } catch (Exception ex) {
+                    expected = ex.getClass().getName();
+                }
+                try (InputStream is = new FileInputStream(feed)) {
+                    actual = parser.parseAttachments(is, minDate).toString();
+                } catch (Exception ex) {
+                    actual = ex.getClass().getName();
+                }
+                assertThat(feed.getName() + " since " + minDate, actual, is(expected));
+            }
+        }
+    }
+
+    private String parseWithLegacyParser(File feed, ProcessEvent event, Date upToDate) throws Exception {
+        try (InputStream is = new FileInputStream(feed)) {
+            return legacyParser.parseChanges(is, event, upToDate).toString();
+        } catch (Exception ex) {
+            return ex.getClass().getName();
+        }
+    }
+
+    static File[] listFeeds() throws Exception {
+        File[] feeds = new File(TestUtil.getFileAsURL("/feeds").toURI()).listFiles();
+        assertThat(feeds, notNullValue());
+        Arrays.sort(feeds);
+        return feeds;
+    }
+}
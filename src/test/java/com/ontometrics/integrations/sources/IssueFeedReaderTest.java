@@ -0,0 +1,83 @@
+package com.ontometrics.integrations.sources;
+
+import com.ontometrics.integrations.model.Issue;
+import com.ontometrics.integrations.model.IssueField;
+import com.ontometrics.integrations.model.IssueFieldValue;
+import com.ontometrics.integrations.model.IssueList;
+import com.ontometrics.util.Mapper;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Checks that {@link com.ontometrics.integrations.sources.IssueFeedReader} reads the same issues as binding of the
+ * whole {@link com.ontometrics.integrations.model.IssueList}
+ */
+public class IssueFeedReaderTest {
+
+    @Test
+    public void testThatIssuesAreReadAsWithIssueList() throws Exception {
+        byte[] feed = createFeed(50).getBytes("UTF-8");
+
+        List<Issue> expected = Mapper.createXmlMapper().readValue(new ByteArrayInputStream(feed), IssueList.class)
+                .getIssues();
+        List<Issue> actual = readIssues(new ByteArrayInputStream(feed));
+
+        assertThat(actual.size(), is(50));
+        assertThat(actual.size(), is(expected.size()));
+        for (int i = 0; i < expected.size(); i++) {
+            assertThat(describe(actual.get(i)), is(describe(expected.get(i))));
+        }
+        assertThat(actual.get(1).getId(), is("draft-1"));
+        assertThat(actual.get(2).getFieldValue("summary"), is("Issue 2 & <friends>"));
+    }
+
+    @Test
+    public void testThatEmptyFeedHasNoIssues() throws Exception {
+        assertThat(readIssues(new ByteArrayInputStream("<issues/>".getBytes("UTF-8"))), empty());
+        assertThat(readIssues(new ByteArrayInputStream("<issues></issues>".getBytes("UTF-8"))), empty());
+    }
+
+    private List<Issue> readIssues(InputStream is) throws Exception {
+        IssueFeedReader reader = new IssueFeedReader(is);
+        List<Issue> issues = new ArrayList<>();
+        Issue issue;
+        while ((issue = reader.readIssue()) != null) {
+            issues.add(issue);
+        }
+        assertThat(reader.readIssue(), nullValue());
+        return issues;
+    }
+
+    private String describe(Issue issue) {
+        StringBuilder description = new StringBuilder(issue.getId());
+        for (IssueField field : issue.getFields()) {
+            description.append('|').append(field.getName()).append('=');
+            for (IssueFieldValue value : field.getValues()) {
+                description.append(value.getText()).append(',');
+            }
+        }
+        return description.toString();
+    }
+
+    private String createFeed(int issues) {
+        StringBuilder feed = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?><issues>");
+        for (int i = 0; i < issues; i++) {
+            feed.append("<issue id=\"").append(i % 7 == 1 ? "draft-" : "ASOC-").append(i).append("\">")
+                    .append("<field name=\"numberInProject\"><value>").append(i).append("</value></field>")
+                    .append("<field name=\"summary\"><value>Issue ").append(i).append(" &amp; &lt;friends&gt;</value></field>")
+                    .append("<field name=\"updated\"><value>").append(1404927516756L + i).append("</value></field>")
+                    .append("<field name=\"links\"><value type=\"Depend\" role=\"depends on\">ASOC-1</value>")
+                    .append("<value type=\"Relates\" role=\"relates to\">ASOC-2</value></field>")
+                    .append("<comment id=\"c").append(i).append("\" author=\"rob\" text=\"some text\"/>")
+                    .append("</issue>");
+        }
+        return feed.append("</issues>").toString();
+    }
+}
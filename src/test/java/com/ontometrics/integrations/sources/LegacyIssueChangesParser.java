@@ -0,0 +1,285 @@
+package com.ontometrics.integrations.sources;
+
+import com.ontometrics.integrations.events.*;
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.events.EndElement;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+import java.io.InputStream;
+import java.util.*;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Event reader based parser of issue changes and attachments as it was implemented in
+ * {@link com.ontometrics.integrations.sources.EditSessionsExtractor} before
+ * {@link com.ontometrics.integrations.sources.IssueChangesParser} was introduced.
+ * Used as a reference by tests and benchmarks.
+ */
+public class LegacyIssueChangesParser {
+
+    private Logger log = getLogger(LegacyIssueChangesParser.class);
+
+    private final List<String> excludedFields;
+
+    public LegacyIssueChangesParser(List<String> excludedFields) {
+        this.excludedFields = excludedFields;
+    }
+
+    public List<AttachmentEvent> parseAttachments(InputStream is, Date minDate) throws Exception {
+        XMLInputFactory inputFactory = XMLInputFactory.newInstance();
+        XMLEventReader eventReader = inputFactory.createXMLEventReader(is);
+        List<AttachmentEvent> attachmentEvents = new ArrayList<>();
+        while (eventReader.hasNext()){
+            XMLEvent nextEvent = eventReader.nextEvent();
+            switch (nextEvent.getEventType()){
+                case XMLStreamConstants.START_ELEMENT:
+                    if (nextEvent.asStartElement().getName().getLocalPart().equals("fileUrl")) {
+                        String url = nextEvent.asStartElement().getAttributeByName(new QName("", "url")).getValue();
+                        String name = nextEvent.asStartElement().getAttributeByName(new QName("", "name")).getValue();
+                        String author = nextEvent.asStartElement().getAttributeByName(new QName("", "authorLogin")).getValue();
+                        Date created = new Date(Long.parseLong(nextEvent.asStartElement().getAttributeByName(new QName("", "created")).getValue()));
+                        if (minDate==null || created.after(minDate)) {
+                            attachmentEvents.add(new AttachmentEvent.Builder().created(created).author(author).url(url).name(name).build());
+                        } else {
+                            log.debug("attachment from {} found, before {}", created, minDate);
+                        }
+                    }
+            }
+        }
+        log.debug("returning attachment events: {} since: {}", attachmentEvents, minDate);
+        return attachmentEvents;
+    }
+
+    public List<IssueEditSession> parseChanges(InputStream is, ProcessEvent e, Date upToDate) throws Exception {
+        XMLInputFactory inputFactory = XMLInputFactory.newInstance();
+        XMLEventReader eventReader = inputFactory.createXMLEventReader(is);
+        //String currentChangeType;
+        String currentFieldName = "";
+        String oldValue = "", newValue = "";
+        String updaterName = "";
+        Date updated = null;
+        Date created = null;
+        String creator = "";
+        String description = "";
+        List<IssueEditSession> extractedEdits = new ArrayList<>();
+        List<ProcessEventChange> currentChanges = new ArrayList<>();
+        LinkedHashSet<Comment> newComments = new LinkedHashSet<>();
+        List<IssueLink> links = new ArrayList<>();
+
+        while (eventReader.hasNext()) {
+            XMLEvent nextEvent = eventReader.nextEvent();
+            switch (nextEvent.getEventType()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    StartElement startElement = nextEvent.asStartElement();
+                    String elementName = startElement.getName().getLocalPart();
+                    switch (elementName) {
+                        case "change":
+                            break;
+                        case "field":
+                            currentFieldName = nextEvent.asStartElement().getAttributeByName(new QName("", "name")).getValue();
+                            //currentChangeType = nextEvent.asStartElement().getAttributes().next().toString();
+                            //log.info("found field named: {}: change type: {}", currentFieldName, currentChangeType);
+                            break;
+                        case "comment":
+                            Comment newComment = extractCommentFromStream(nextEvent.asStartElement());
+                            if (upToDate == null || newComment.getCreated().after(upToDate)) {
+                                newComments.add(newComment);
+                            }
+                            break;
+                        case "created":
+                            currentFieldName = "created";
+                            break;
+                        case "updaterFullName":
+                            currentFieldName = "creator";
+                            break;
+                        case "creator":
+                            currentFieldName = "creator";
+                            break;
+                        case "description":
+                            currentFieldName = "description";
+                            break;
+                        case "links":
+                            currentFieldName = "links";
+                            break;
+                        default:
+                            String elementText;
+                            try {
+                                elementText = eventReader.getElementText();
+                                switch (elementName) {
+                                    case "newValue":
+                                        newValue = elementText;
+                                        break;
+                                    case "oldValue":
+                                        oldValue = elementText;
+                                        break;
+                                    case "value":
+                                        switch (currentFieldName) {
+                                            case "updaterName":
+                                                updaterName = elementText;
+                                                break;
+                                            case "updated":
+                                                updated = new Date(Long.parseLong(elementText));
+                                                break;
+                                            case "created":
+                                                created = new Date(Long.parseLong(elementText));
+                                                break;
+                                            case "creator":
+                                                creator = elementText;
+                                                break;
+                                            case "description":
+                                                description = elementText;
+                                                break;
+                                            case "links":
+                                                log.debug("found links");
+                                                IssueLink link = new IssueLink.Builder()
+                                                        .type(startElement.getAttributeByName(new QName("", "type")).getValue())
+                                                        .role(startElement.getAttributeByName(new QName("", "role")).getValue())
+                                                        .relatedIssue(elementText)
+                                                        .build();
+                                                links.add(link);
+                                                log.debug("adding link: {}", link);
+                                                break;
+                                        }
+                                }
+                            } catch (Exception ex) {
+                                //no text..
+                            }
+                            break;
+                    }
+                    break;
+
+                case XMLStreamConstants.END_ELEMENT:
+                    EndElement endElement = nextEvent.asEndElement();
+                    String tagName = endElement.getName().getLocalPart();
+                    switch (tagName) {
+                        case "field":
+                            if (newValue.length() > 0) {
+                                //include only non-processed changes
+                                if (upToDate == null || updated.after(upToDate)) {
+                                    if (currentFieldName.equals("resolved")) {
+                                        newValue = new Date(Long.parseLong(newValue)).toString();
+                                    }
+                                    ProcessEventChange processEventChange = new ProcessEventChange.Builder()
+                                            .updater(updaterName)
+                                            .updated(updated)
+                                            .field(StringUtils.trim(currentFieldName))
+                                            .priorValue(StringUtils.trim(oldValue))
+                                            .currentValue(StringUtils.trim(newValue))
+                                            .build();
+
+                                    currentChanges.add(processEventChange);
+                                }
+                                currentFieldName = "";
+                                oldValue = "";
+                                newValue = "";
+
+                            }
+                            break;
+                        case "change":
+                            if (upToDate == null || updated.after(upToDate)) {
+                                log.debug("upToDate: {} updated: {}", upToDate, updated);
+                                List<IssueEdit> edits = buildIssueEdits(currentChanges);
+//                                        for (Comment comment : newComments){
+//                                            session = new IssueEditSession.Builder()
+//                                                    .updater(comment.getAuthor())
+//                                                    .updated(comment.getCreated())
+//                                                    .issue(e.getIssue())
+//                                                    .comment(comment)
+//                                                    .build();
+//                                            extractedEdits.add(session);
+//                                        }
+                                Issue issue = new Issue.Builder()
+                                        .projectPrefix(e.getIssue().getPrefix())
+                                        .id(e.getIssue().getId())
+                                        .title(e.getIssue().getTitle())
+                                        .created(created)
+                                        .creator(creator)
+                                        .link(e.getIssue().getLink())
+                                        .description(description).build();
+                                IssueEditSession session = new IssueEditSession.Builder()
+                                        .updater(updaterName)
+                                        .updated(updated)
+                                        .issue(issue)
+                                        .changes(edits)
+                                        .build();
+                                extractedEdits.add(session);
+                            } else {
+                                log.debug("skipped change dated: {}", updated);
+                            }
+                            currentChanges.clear();
+                            break;
+                    }
+                    break;
+
+            }
+        }
+        if (upToDate == null || created.after(upToDate)) {
+            Issue newIssue = new Issue.Builder()
+                    .projectPrefix(e.getIssue().getPrefix())
+                    .id(e.getIssue().getId())
+                    .created(created)
+                    .creator(updaterName)
+                    .description(description)
+                    .title(e.getIssue().getTitle())
+                    .link(e.getIssue().getLink())
+                    .build();
+            IssueEditSession session = new IssueEditSession.Builder()
+                    .updater(updaterName)
+                    .updated(updated)
+                    .issue(newIssue)
+                    .links(links)
+                    .build();
+            log.info("found new issue created on: {}: {}", created, newIssue);
+            extractedEdits.add(session);
+        }
+        for (Comment comment : newComments) {
+            if (upToDate == null || comment.getCreated().after(upToDate)) {
+                IssueEditSession session = new IssueEditSession.Builder()
+                        .updater(comment.getAuthor())
+                        .updated(comment.getCreated())
+                        .issue(e.getIssue())
+                        .comment(comment)
+                        .build();
+                extractedEdits.add(session);
+            }
+        }
+        return extractedEdits;
+    }
+
+    private Comment extractCommentFromStream(StartElement commentTag) {
+        return new Comment.Builder()
+                .id(commentTag.getAttributeByName(new QName("", "id")).getValue())
+                .author(commentTag.getAttributeByName(new QName("", "authorFullName")).getValue())
+                .text(commentTag.getAttributeByName(new QName("", "text")).getValue())
+                .deleted(Boolean.valueOf(commentTag.getAttributeByName(new QName("", "deleted")).getValue()))
+                .created(new Date(Long.parseLong(commentTag.getAttributeByName(new QName("", "created")).getValue())))
+                .build();
+    }
+
+    private List<IssueEdit> buildIssueEdits(List<ProcessEventChange> changes) {
+
+        List<IssueEdit> edits = new ArrayList<>(changes.size());
+        for (ProcessEventChange change : changes){
+            if (!isFieldExcluded(change)) {
+                edits.add(new IssueEdit.Builder()
+                        .issue(change.getIssue())
+                        .field(change.getField())
+                        .priorValue(change.getPriorValue())
+                        .currentValue(change.getCurrentValue())
+                        .build());
+            }
+        }
+        return edits;
+    }
+
+    private boolean isFieldExcluded(ProcessEventChange change) {
+        return change.getField() == null || excludedFields.contains(change.getField());
+    }
+}
@@ -0,0 +1,126 @@
+package com.ontometrics.integrations.sources;
+
+import com.ontometrics.db.GroupCommitter;
+import com.ontometrics.integrations.events.Comment;
+import com.ontometrics.integrations.events.Issue;
+import com.ontometrics.integrations.events.IssueEditSession;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mapdb.DB;
+import org.mapdb.DBMaker;
+import org.mapdb.Serializer;
+
+import java.io.File;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class SeenSessionIndexTest {
+
+    private File dbFile;
+    private DB db;
+    private GroupCommitter committer;
+
+    @Before
+    public void setUp() throws Exception {
+        dbFile = File.createTempFile("seen", ".db");
+        dbFile.delete();
+    }
+
+    @After
+    public void tearDown() {
+        close();
+        dbFile.delete();
+    }
+
+    @Test
+    public void testThatPostedSessionsAreSkippedAfterRestart() throws Exception {
+        Issue issue = issue(148);
+        IssueEditSession posted = session(issue, "Noura", 1000, null);
+        IssueEditSession commented = session(issue, "Noura", 1000, "comment-1");
+        IssueEditSession later = session(issue, "Noura", 2000, null);
+        SeenSessionIndex index = open();
+        assertThat(index.filterSeen(Arrays.asList(posted, commented)).size(), is(2));
+        index.seen(Collections.singletonList(posted));
+        committer.awaitCommit();
+        close();
+
+        index = open();
+        assertThat(index.size(), is(1L));
+        //the same session extracted again
+        assertThat(index.isSeen(session(issue, "Noura", 1000, null)), is(true));
+        assertThat(index.filterSeen(Arrays.asList(posted, commented, later)), is(Arrays.asList(commented, later)));
+        assertThat(index.isSeen(session(issue, "Rob", 1000, null)), is(false));
+        assertThat(index.isSeen(session(issue(149), "Noura", 1000, null)), is(false));
+        assertThat(index.getSkipped(), is(1L));
+    }
+
+    @Test
+    public void testThatSessionsUpdatedBeforeGivenTimeArePruned() throws Exception {
+        SeenSessionIndex index = open();
+        List<IssueEditSession> sessions = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            sessions.add(session(issue(i), "Noura", i * 1000L, null));
+        }
+        index.seen(sessions);
+
+        assertThat(index.prune(5000 * 1000L), is(5000));
+        assertThat(index.size(), is(5000L));
+        assertThat(index.isSeen(sessions.get(4999)), is(false));
+        assertThat(index.isSeen(sessions.get(5000)), is(true));
+        //pruned less than an hour ago
+        assertThat(index.pruneIfDue(Long.MAX_VALUE), is(0));
+    }
+
+    @Test
+    public void testThatUnseenSessionsAreMostlyRejectedByFilter() throws Exception {
+        SeenSessionIndex index = open();
+        List<IssueEditSession> sessions = new ArrayList<>();
+        for (int i = 0; i < 100000; i++) {
+            sessions.add(session(issue(i), "Noura", 1000, null));
+        }
+        index.seen(sessions);
+        for (int i = 0; i < 100000; i++) {
+            assertThat(index.isSeen(session(issue(i), "Rob", 1000, null)), is(false));
+        }
+        assertThat(index.getFalsePositives(), lessThan(2000L));
+    }
+
+    private SeenSessionIndex open() {
+        db = DBMaker.fileDB(dbFile).make();
+        committer = new GroupCommitter(db, 0, "test-committer");
+        Map<Long, Long> store = db.hashMap("seen_sessions", Serializer.LONG, Serializer.LONG).counterEnable()
+                .createOrOpen();
+        return new SeenSessionIndex(store, committer);
+    }
+
+    private void close() {
+        if (db != null && !db.isClosed()) {
+            committer.close();
+            db.close();
+        }
+    }
+
+    private static Issue issue(int id) throws Exception {
+        return new Issue.Builder().projectPrefix("ASOC").id(id).title("Title")
+                .link(new URL("http://ontometrics.com:8085/issue/ASOC-" + id)).build();
+    }
+
+    private static IssueEditSession session(Issue issue, String updater, long updated, String commentId) {
+        IssueEditSession.Builder builder = new IssueEditSession.Builder().issue(issue).updater(updater)
+                .updated(new Date(updated));
+        if (commentId != null) {
+            builder.comment(new Comment.Builder().id(commentId).author(updater).text("text").created(new Date(updated))
+                    .build());
+        }
+        return builder.build();
+    }
+}
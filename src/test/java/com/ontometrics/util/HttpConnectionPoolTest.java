@@ -0,0 +1,180 @@
+package com.ontometrics.util;
+
+import com.ontometrics.integrations.sources.InputStreamHandler;
+import com.ontometrics.integrations.sources.NonAuthenticatedHttpStreamProvider;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.pool.PoolStats;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.fail;
+
+public class HttpConnectionPoolTest {
+
+    private HttpServer server;
+    private HttpConnectionPool connectionPool;
+    private final Set<Integer> clientPorts = Collections.synchronizedSet(new HashSet<Integer>());
+    private final CountDownLatch slowRequestReceived = new CountDownLatch(1);
+    private final CountDownLatch releaseSlowRequests = new CountDownLatch(1);
+    private final ExecutorService serverExecutor = Executors.newCachedThreadPool();
+
+    @Before
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                clientPorts.add(exchange.getRemoteAddress().getPort());
+                String path = exchange.getRequestURI().getPath();
+                if (path.startsWith("/slow")) {
+                    slowRequestReceived.countDown();
+                    try {
+                        releaseSlowRequests.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                byte[] response = (path.startsWith("/feed") ? StringUtils.repeat(path, 1000) : path).getBytes("UTF-8");
+                String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+                if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+                    ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+                    try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+                        gzip.write(response);
+                    }
+                    response = compressed.toByteArray();
+                    exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+                }
+                exchange.sendResponseHeaders(200, response.length);
+                try (OutputStream os = exchange.getResponseBody()) {
+                    os.write(response);
+                }
+            }
+        });
+        server.setExecutor(serverExecutor);
+        server.start();
+        connectionPool = new HttpConnectionPool.Builder().name("test").maxConnectionsPerRoute(2).build();
+    }
+
+    @After
+    public void tearDown() {
+        releaseSlowRequests.countDown();
+        connectionPool.close();
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @Test
+    public void testThatConnectionIsReused() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            assertThat(request("/issue/" + i), is("/issue/" + i));
+        }
+
+        assertThat(clientPorts.size(), is(1));
+        PoolStats stats = connectionPool.getTotalStats();
+        assertThat(stats.getLeased(), is(0));
+        assertThat(stats.getAvailable(), is(1));
+        assertThat(stats.getPending(), is(0));
+    }
+
+    @Test
+    public void testThatCompressedResponseIsDecodedAndCounted() throws Exception {
+        String expected = StringUtils.repeat("/feed/ASOC-1", 1000);
+        assertThat(request("/feed/ASOC-1"), is(expected));
+        assertThat(request("/feed/ASOC-1?max=10"), is(expected));
+
+        HttpTrafficCounter.Traffic traffic = connectionPool.getTrafficCounter().getTraffic().get("/feed/{id}");
+        assertThat(traffic.getResponses(), is(2L));
+        assertThat(traffic.getDecodedBytes(), is(2L * expected.length()));
+        assertThat(traffic.getWireBytes(), lessThan(traffic.getDecodedBytes() / 10));
+    }
+
+    @Test
+    public void testThatEndpointIsResolvedFromRequestUri() {
+        assertThat(HttpTrafficCounter.toEndpoint("/rest/issue/ASOC-148/changes"), is("/rest/issue/{id}/changes"));
+        assertThat(HttpTrafficCounter.toEndpoint("http://host:8080/rest/issue/byproject/ASOC?updatedAfter=1404927516756"),
+                is("/rest/issue/byproject/ASOC"));
+    }
+
+    @Test
+    public void testThatPoolTimeoutAppliesToFluentRequests() throws Exception {
+        connectionPool.close();
+        connectionPool = new HttpConnectionPool.Builder().name("test").maxConnectionsPerRoute(1)
+                .connectionRequestTimeout(1000).build();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<String> slowRequest = executor.submit(new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    return request("/slow");
+                }
+            });
+            assertThat(slowRequestReceived.await(5, TimeUnit.SECONDS), is(true));
+
+            long startTime = System.currentTimeMillis();
+            try {
+                request("/issue/1");
+                fail("Connection should not be leased while the only one is in use");
+            } catch (ConnectionPoolTimeoutException expected) {
+                assertThat(System.currentTimeMillis() - startTime, lessThan(3000L));
+            }
+            releaseSlowRequests.countDown();
+            assertThat(slowRequest.get(5, TimeUnit.SECONDS), is("/slow"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testThatReadTimeoutAppliesToFluentRequests() throws Exception {
+        connectionPool.close();
+        connectionPool = new HttpConnectionPool.Builder().name("test").readTimeout(500).build();
+        long startTime = System.currentTimeMillis();
+        try {
+            request("/slow");
+            fail("Response should not be awaited longer than read timeout");
+        } catch (Exception ex) {
+            assertThat(ex, instanceOf(SocketTimeoutException.class));
+            assertThat(System.currentTimeMillis() - startTime, lessThan(3000L));
+        }
+    }
+
+    private String request(String path) throws Exception {
+        NonAuthenticatedHttpStreamProvider streamProvider =
+                new NonAuthenticatedHttpStreamProvider(connectionPool.getHttpClient());
+        URL url = new URL("http://localhost:" + server.getAddress().getPort() + path);
+        return streamProvider.openResourceStream(url, new InputStreamHandler<String>() {
+            @Override
+            public String handleStream(InputStream is, int responseCode) throws Exception {
+                return IOUtils.toString(is, "UTF-8");
+            }
+        });
+    }
+}
@@ -0,0 +1,53 @@
+package com.ontometrics.util;
+
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testThatSmallLatenciesAreCountedExactly() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 10; i++) {
+            histogram.record(i);
+        }
+        assertThat(histogram.getCount(), is(10L));
+        assertThat(histogram.getMax(), is(10L));
+        assertThat(histogram.getMean(), is(5L));
+        assertThat(histogram.getPercentile(50), is(5L));
+        assertThat(histogram.getPercentile(100), is(10L));
+    }
+
+    @Test
+    public void testThatPercentilesAreWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 10000; i++) {
+            histogram.record(i);
+        }
+        assertThat(histogram.getPercentile(50), allOf(greaterThanOrEqualTo(5000L), lessThanOrEqualTo(5625L)));
+        assertThat(histogram.getPercentile(99), allOf(greaterThanOrEqualTo(9900L), lessThanOrEqualTo(11138L)));
+        assertThat(histogram.getMax(), is(10000L));
+    }
+
+    @Test
+    public void testThatEveryValueFallsIntoBucketCoveringIt() {
+        for (long value : new long[]{0, 1, 15, 16, 17, 31, 32, 1000, 123456789, Long.MAX_VALUE}) {
+            int bucket = LatencyHistogram.bucketOf(value);
+            assertThat(String.valueOf(value), LatencyHistogram.upperBoundOf(bucket), greaterThanOrEqualTo(value));
+            if (bucket > 0) {
+                assertThat(String.valueOf(value), LatencyHistogram.upperBoundOf(bucket - 1), lessThan(value));
+            }
+        }
+    }
+
+    @Test
+    public void testThatResetClearsRecordedValues() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(100);
+        histogram.reset();
+        assertThat(histogram.getCount(), is(0L));
+        assertThat(histogram.getPercentile(99), is(0L));
+    }
+}
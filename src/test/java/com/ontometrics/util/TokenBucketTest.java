@@ -0,0 +1,31 @@
+package com.ontometrics.util;
+
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class TokenBucketTest {
+
+    @Test
+    public void testThatActionsArePacedAfterBurst() {
+        TokenBucket bucket = new TokenBucket(2, 3, 0);
+        for (int i = 0; i < 3; i++) {
+            assertThat(bucket.tryAcquire(0), is(0L));
+        }
+        assertThat(bucket.tryAcquire(0), is(500L));
+        assertThat(bucket.tryAcquire(200), is(300L));
+        assertThat(bucket.tryAcquire(500), is(0L));
+        assertThat(bucket.tryAcquire(500), is(500L));
+    }
+
+    @Test
+    public void testThatIdleBucketIsRefilledUpToBurst() {
+        TokenBucket bucket = new TokenBucket(1, 2, 0);
+        bucket.tryAcquire(0);
+        bucket.tryAcquire(0);
+        assertThat(bucket.tryAcquire(60000), is(0L));
+        assertThat(bucket.tryAcquire(60000), is(0L));
+        assertThat(bucket.tryAcquire(60000), is(1000L));
+    }
+}
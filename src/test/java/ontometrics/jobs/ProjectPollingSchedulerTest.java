@@ -0,0 +1,46 @@
+package ontometrics.jobs;
+
+import com.ontometrics.integrations.jobs.ProjectPollingScheduler;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class ProjectPollingSchedulerTest {
+
+    @Test
+    public void testThatIdleProjectIsPolledLessOften() {
+        ProjectPollingScheduler scheduler = new ProjectPollingScheduler(30, 100);
+        assertThat(scheduler.isDue("ASOC", 0), is(true));
+
+        scheduler.polled("ASOC", false, 0);
+        assertThat(scheduler.getPollingInterval("ASOC"), is(30L));
+        assertThat(scheduler.isDue("ASOC", 29), is(false));
+        assertThat(scheduler.isDue("ASOC", 30), is(true));
+
+        scheduler.polled("ASOC", false, 30);
+        assertThat(scheduler.getPollingInterval("ASOC"), is(60L));
+        assertThat(scheduler.isDue("ASOC", 60), is(false));
+        assertThat(scheduler.isDue("ASOC", 90), is(true));
+
+        scheduler.polled("ASOC", false, 90);
+        scheduler.polled("ASOC", false, 190);
+        assertThat(scheduler.getPollingInterval("ASOC"), is(100L));
+    }
+
+    @Test
+    public void testThatActiveProjectIsPolledWithMinInterval() {
+        ProjectPollingScheduler scheduler = new ProjectPollingScheduler(30, 100);
+        scheduler.polled("ASOC", false, 0);
+        scheduler.polled("ASOC", false, 30);
+        scheduler.polled("ASOC", true, 90);
+        assertThat(scheduler.getPollingInterval("ASOC"), is(30L));
+        assertThat(scheduler.isDue("ASOC", 120), is(true));
+
+        scheduler.polled("HA", false, 0);
+        scheduler.retainProjects(Arrays.asList("HA"));
+        assertThat(scheduler.getPollingIntervals().keySet().toString(), is("[HA]"));
+    }
+}